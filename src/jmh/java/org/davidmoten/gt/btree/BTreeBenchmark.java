@@ -0,0 +1,188 @@
+package org.davidmoten.gt.btree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Measures {@link BTree#put}, {@link BTree#bulkLoad}, {@link BTree#get},
+ * {@link BTree#range}, {@link BTree#rangeParallel} and {@link BTree#ranges} on
+ * in-memory trees of various sizes and fanouts.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BTreeBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "4", "16", "64", "256" })
+    public int maxChildren;
+
+    private BTree<Integer, Integer> tree;
+    private int[] keys;
+    private int index;
+    // 100 narrow ranges spread over the keys
+    private List<Range<Integer>> ranges;
+
+    @Setup
+    public void setup() {
+        keys = shuffledKeys(size);
+        tree = createTree(maxChildren);
+        for (int key : keys) {
+            tree.put(key, key);
+        }
+        ranges = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int lower = i * (size / 100);
+            ranges.add(Range.create(lower, lower + 5));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTree<Integer, Integer> putAscending() {
+        BTree<Integer, Integer> t = createTree(maxChildren);
+        for (int i = 0; i < size; i++) {
+            t.put(i, i);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTree<Integer, Integer> bulkLoad() {
+        BTree<Integer, Integer> t = createTree(maxChildren);
+        t.bulkLoad(IntStream.range(0, size) //
+                .mapToObj(i -> new Entry<Integer, Integer>(i, i)) //
+                .iterator(), 1.0);
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTree<Integer, Integer> putRandom() {
+        BTree<Integer, Integer> t = createTree(maxChildren);
+        for (int key : keys) {
+            t.put(key, key);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer get() {
+        return tree.get(nextKey());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer getMissing() {
+        return tree.get(-1 - nextKey());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long rangeNarrow() {
+        int lower = nextKey();
+        return tree.range(lower, lower + 10).count().blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long rangeAll() {
+        return tree.range(0, size).count().blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long rangeAllParallel() {
+        return tree.rangeParallel(0, size, Runtime.getRuntime().availableProcessors(), Schedulers.computation()) //
+                .count() //
+                .blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long rangeAllParallelUnordered() {
+        return tree
+                .rangeParallelUnordered(0, size, Runtime.getRuntime().availableProcessors(),
+                        Schedulers.computation()) //
+                .sequential() //
+                .count() //
+                .blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long rangesOneAtATime() {
+        return Flowable.fromIterable(ranges) //
+                .concatMap(r -> tree.range(r.lowerInclusive(), r.upperExclusive())) //
+                .count() //
+                .blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long rangesMerged() {
+        return tree.ranges(ranges).count().blockingGet();
+    }
+
+    private int nextKey() {
+        int key = keys[index];
+        index = (index + 1) % keys.length;
+        return key;
+    }
+
+    static BTree<Integer, Integer> createTree(int maxChildren) {
+        return new BTree<Integer, Integer>(Context.<Integer, Integer> create(Comparator.naturalOrder(),
+                maxChildren, new NodeFactoryMemory<>()));
+    }
+
+    static int[] shuffledKeys(int size) {
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i;
+        }
+        Random random = new Random(123456789);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = temp;
+        }
+        return keys;
+    }
+
+}
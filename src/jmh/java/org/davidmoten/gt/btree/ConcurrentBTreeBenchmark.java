@@ -0,0 +1,107 @@
+package org.davidmoten.gt.btree;
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link ConcurrentBTree} with a {@link BTree} guarded by a single
+ * lock when several threads read and write at once. Run with {@code -t} to
+ * vary the thread count of the {@code get} and {@code put} benchmarks, the
+ * {@code mixed} group runs three readers against one writer.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentBTreeBenchmark {
+
+    @Param({ "1000000" })
+    public int size;
+
+    @Param({ "64" })
+    public int maxChildren;
+
+    @Param({ "locked", "concurrent" })
+    public String tree;
+
+    private BTree<Integer, Integer> locked;
+    private ConcurrentBTree<Integer, Integer> concurrent;
+
+    @Setup
+    public void setup() {
+        if (tree.equals("locked")) {
+            locked = new BTree<Integer, Integer>(Context.<Integer, Integer> create(Comparator.naturalOrder(),
+                    maxChildren, new NodeFactoryMemory<>()));
+        } else {
+            concurrent = new ConcurrentBTree<Integer, Integer>(Comparator.naturalOrder(), maxChildren);
+        }
+        for (int key : BTreeBenchmark.shuffledKeys(size)) {
+            put(key);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer get() {
+        return get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void put() {
+        put(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Integer mixedGet() {
+        return get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedPut() {
+        put(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    private Integer get(int key) {
+        if (locked != null) {
+            synchronized (locked) {
+                return locked.get(key);
+            }
+        } else {
+            return concurrent.get(key);
+        }
+    }
+
+    private void put(int key) {
+        if (locked != null) {
+            synchronized (locked) {
+                locked.put(key, key);
+            }
+        } else {
+            concurrent.put(key, key);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.davidmoten.gt.btree;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures durable puts into a file-backed {@link DurableBTree} from several
+ * threads under each {@link SyncPolicy}. With {@code everyWrite} the threads
+ * share the forces of the log so throughput grows with the thread count.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DurableBTreeBenchmark {
+
+    @Param({ "everyWrite", "interval", "os" })
+    public String policy;
+
+    private File directory;
+    private Storage storage;
+    private DurableBTree<Long, Long> tree;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = new File("target/durable-btree-benchmark/" + System.nanoTime());
+        directory.mkdirs();
+        storage = new Storage(new File(directory, "pages"));
+        NodeFactoryFile<Long, Long> factory = new NodeFactoryFile<>(storage, Serializers.longKey(),
+                Serializers.longValue());
+        tree = new DurableBTree<Long, Long>(Comparator.naturalOrder(), 64, factory, Serializers.longKey(),
+                Serializers.longValue(), new File(directory, "log"), syncPolicy());
+    }
+
+    private SyncPolicy syncPolicy() {
+        if (policy.equals("everyWrite")) {
+            return SyncPolicy.everyWrite();
+        } else if (policy.equals("interval")) {
+            return SyncPolicy.interval(10, TimeUnit.MILLISECONDS);
+        } else {
+            return SyncPolicy.os();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tree.close();
+        storage.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void put() {
+        long key = ThreadLocalRandom.current().nextLong(1000000);
+        tree.put(key, key);
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.davidmoten.gt.btree;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the primitive {@link LongBTree} and {@link LongLongBTree} with a
+ * generic {@code BTree<Long, Long>} holding the same timestamp-like keys.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LongBTreeBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    @Param({ "16", "64" })
+    public int maxChildren;
+
+    private long[] keys;
+    private int index;
+    private BTree<Long, Long> boxed;
+    private LongBTree<Long> longTree;
+    private LongLongBTree longLongTree;
+
+    @Setup
+    public void setup() {
+        int[] shuffled = BTreeBenchmark.shuffledKeys(size);
+        keys = new long[size];
+        long start = 1500000000000L;
+        boxed = createBoxed(maxChildren);
+        longTree = new LongBTree<Long>(maxChildren);
+        longLongTree = new LongLongBTree(maxChildren);
+        for (int i = 0; i < size; i++) {
+            keys[i] = start + shuffled[i];
+            boxed.put(keys[i], keys[i]);
+            longTree.put(keys[i], keys[i]);
+            longLongTree.put(keys[i], keys[i]);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTree<Long, Long> putBoxed() {
+        BTree<Long, Long> t = createBoxed(maxChildren);
+        for (long key : keys) {
+            t.put(key, key);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LongBTree<Long> putLong() {
+        LongBTree<Long> t = new LongBTree<Long>(maxChildren);
+        for (long key : keys) {
+            t.put(key, key);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LongLongBTree putLongLong() {
+        LongLongBTree t = new LongLongBTree(maxChildren);
+        for (long key : keys) {
+            t.put(key, key);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long getBoxed() {
+        return boxed.get(nextKey());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Long getLong() {
+        return longTree.get(nextKey());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long getLongLong() {
+        return longLongTree.get(nextKey(), -1);
+    }
+
+    private long nextKey() {
+        long key = keys[index];
+        index = (index + 1) % keys.length;
+        return key;
+    }
+
+    private static BTree<Long, Long> createBoxed(int maxChildren) {
+        return new BTree<Long, Long>(
+                Context.<Long, Long> create(Comparator.naturalOrder(), maxChildren, new NodeFactoryMemory<>()));
+    }
+
+}
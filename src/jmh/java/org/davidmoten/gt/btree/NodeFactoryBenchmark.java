@@ -0,0 +1,94 @@
+package org.davidmoten.gt.btree;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link NodeFactory} implementations by running the same
+ * workload against a {@link BTree} built with each.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NodeFactoryBenchmark {
+
+    @Param({ "memory", "offheap", "file" })
+    public String factory;
+
+    @Param({ "10000" })
+    public int size;
+
+    @Param({ "16" })
+    public int maxChildren;
+
+    private BTree<Integer, Integer> tree;
+    private int[] keys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        keys = BTreeBenchmark.shuffledKeys(size);
+        tree = createTree();
+        for (int key : keys) {
+            tree.put(key, key);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTree<Integer, Integer> put() {
+        BTree<Integer, Integer> t = createTree();
+        for (int key : keys) {
+            t.put(key, key);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer get() {
+        int key = keys[index];
+        index = (index + 1) % keys.length;
+        return tree.get(key);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long rangeAll() {
+        return tree.range(0, size).count().blockingGet();
+    }
+
+    private BTree<Integer, Integer> createTree() {
+        final NodeFactory<Integer, Integer> nodeFactory;
+        if ("file".equals(factory)) {
+            nodeFactory = new NodeFactoryFile<>(
+                    new Storage(new File("target/node-factory-benchmark/" + System.nanoTime())),
+                    Serializers.intKey(), Serializers.intValue());
+        } else if ("offheap".equals(factory)) {
+            nodeFactory = new NodeFactoryOffHeap<>(new Arena(), Serializers.intKey(), Serializers.intValue());
+        } else {
+            nodeFactory = new NodeFactoryMemory<>();
+        }
+        return new BTree<Integer, Integer>(
+                Context.<Integer, Integer> create(Comparator.naturalOrder(), maxChildren, nodeFactory));
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.Flowable;
+
+/**
+ * Measures {@link Creator#persist(Flowable)}. Alongside persists per second
+ * the {@link Throughput} counter reports the serialized entry bytes written in
+ * MB/s.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CreatorBenchmark {
+
+    @Param({ "100000" })
+    public int size;
+
+    @Param({ "64" })
+    public int entrySizeBytes;
+
+    @Param({ "4096", "65536" })
+    public int maxPageSizeBytes;
+
+    @Param({ "false", "true" })
+    public boolean compressed;
+
+    private File directory;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = new File("target/creator-benchmark");
+        directory.mkdirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object persist(Throughput throughput) {
+        Creator<byte[], Long> creator = new Creator<byte[], Long>(new LongKeySerializer(),
+                new FixedSizeSerializer(entrySizeBytes), maxPageSizeBytes, 0, bytes -> ByteBuffer.wrap(bytes).getLong(),
+                directory, "persist" + counter++);
+        if (compressed) {
+            creator = creator.compressed();
+        }
+        Object result = creator.persist(entries(size, entrySizeBytes));
+        throughput.megabytes += (double) size * entrySizeBytes / (1024 * 1024);
+        return result;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    private static Flowable<byte[]> entries(int size, int entrySizeBytes) {
+        return Flowable.range(0, size) //
+                .map(i -> {
+                    byte[] bytes = new byte[entrySizeBytes];
+                    ByteBuffer.wrap(bytes).putLong(i);
+                    return bytes;
+                });
+    }
+
+    private static final class LongKeySerializer implements KeySerializer<Long> {
+
+        @Override
+        public byte[] serialize(Long t) {
+            return ByteBuffer.allocate(8).putLong(t).array();
+        }
+
+        @Override
+        public Long deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        @Override
+        public int size() {
+            return 8;
+        }
+    }
+
+    private static final class FixedSizeSerializer implements Serializer<byte[]> {
+
+        private final int size;
+
+        FixedSizeSerializer(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public byte[] serialize(byte[] t) {
+            return t;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public Optional<Integer> size() {
+            return Optional.of(size);
+        }
+    }
+
+}
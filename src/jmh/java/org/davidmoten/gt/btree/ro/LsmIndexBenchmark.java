@@ -0,0 +1,80 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.davidmoten.gt.btree.SyncPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Measures adds of random keys to an {@link LsmIndex} from several threads
+ * (compare with the puts of {@code DurableBTreeBenchmark}) and gets of random
+ * keys once runs have been written.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LsmIndexBenchmark {
+
+    private static final long KEYS = 1000000;
+
+    @Param({ "10000", "100000" })
+    public int memtableMaxEntries;
+
+    private File directory;
+    private LsmIndex<Long, Long> index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = new File("target/lsm-index-benchmark/" + System.nanoTime());
+        directory.mkdirs();
+        index = new LsmIndex<Long, Long>(Serializers.longKey(), Serializers.longValue(), Comparator.naturalOrder(),
+                x -> x, memtableMaxEntries, 4096, SyncPolicy.interval(10, TimeUnit.MILLISECONDS),
+                Schedulers.single(), directory, "index");
+        for (long i = 0; i < KEYS; i += 2) {
+            index.add(i);
+        }
+        index.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void add() {
+        index.add(ThreadLocalRandom.current().nextLong(KEYS));
+    }
+
+    @Benchmark
+    public Long get() {
+        return index.get(ThreadLocalRandom.current().nextLong(KEYS));
+    }
+
+}
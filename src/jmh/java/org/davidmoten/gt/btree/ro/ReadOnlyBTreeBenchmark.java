@@ -0,0 +1,83 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.Flowable;
+
+/**
+ * Measures {@link ReadOnlyBTree#get(Object)} of present and absent keys with
+ * and without bloom filters ({@code bitsPerKey} 0 means none). Keys are even
+ * so odd keys are absent.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadOnlyBTreeBenchmark {
+
+    @Param({ "1000000" })
+    public int size;
+
+    @Param({ "0", "10" })
+    public int bitsPerKey;
+
+    @Param({ "false", "true" })
+    public boolean compressed;
+
+    private File directory;
+    private ReadOnlyBTree<Long, Long> tree;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = new File("target/read-only-btree-benchmark/" + System.nanoTime());
+        directory.mkdirs();
+        Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 4096,
+                0, x -> x, directory, "tree");
+        if (bitsPerKey > 0) {
+            creator = creator.bloomFilter(bitsPerKey);
+        }
+        if (compressed) {
+            creator = creator.compressed();
+        }
+        creator.persist(Flowable.rangeLong(0, size).map(x -> x * 2));
+        tree = new ReadOnlyBTree<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                Comparator.naturalOrder(), directory, "tree");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tree.close();
+        new File(directory, "tree").delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public Long getPresent() {
+        return tree.get(2L * ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public Long getAbsent() {
+        return tree.get(2L * ThreadLocalRandom.current().nextInt(size) + 1);
+    }
+
+}
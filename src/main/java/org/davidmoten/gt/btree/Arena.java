@@ -0,0 +1,127 @@
+package org.davidmoten.gt.btree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Fixed size pages held off-heap in direct {@link ByteBuffer} slabs of
+ * {@code pagesPerSlab} pages. Slabs are added as pages are allocated and are
+ * never returned, freed pages form a linked list through their first 8 bytes
+ * and are reused by {@link #allocate()} before a new slab is added. Only the
+ * slab list and a few counters live on the heap so heap use does not grow
+ * with the number of pages.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public final class Arena implements PageStore {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGES_PER_SLAB = 1024;
+
+    private static final long NO_PAGE = -1;
+
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    // mutable
+    private long numPages;
+    private long freeList = NO_PAGE;
+    private long numFree;
+
+    public Arena() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_PAGES_PER_SLAB);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pageSize
+     *            size in bytes of each page
+     * @param pagesPerSlab
+     *            number of pages in each direct buffer allocation
+     */
+    public Arena(int pageSize, int pagesPerSlab) {
+        Preconditions.checkArgument(pageSize >= 8, "pageSize must be at least 8");
+        Preconditions.checkArgument(pagesPerSlab > 0, "pagesPerSlab must be positive");
+        Preconditions.checkArgument((long) pageSize * pagesPerSlab <= Integer.MAX_VALUE,
+                "slab size must be less than 2GB");
+        this.pageSize = pageSize;
+        this.pagesPerSlab = pagesPerSlab;
+    }
+
+    @Override
+    public int pageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public long allocate() {
+        if (freeList != NO_PAGE) {
+            long pageId = freeList;
+            freeList = pin(pageId).getLong(0);
+            numFree--;
+            return pageId;
+        } else {
+            if (numPages == (long) slabs.size() * pagesPerSlab) {
+                slabs.add(ByteBuffer.allocateDirect(pageSize * pagesPerSlab));
+            }
+            return numPages++;
+        }
+    }
+
+    @Override
+    public void free(long pageId) {
+        Preconditions.checkArgument(pageId >= 0 && pageId < numPages, "invalid pageId");
+        pin(pageId).putLong(0, freeList);
+        freeList = pageId;
+        numFree++;
+    }
+
+    @Override
+    public ByteBuffer pin(long pageId) {
+        int offset = (int) (pageId % pagesPerSlab) * pageSize;
+        ByteBuffer b = slabs.get((int) (pageId / pagesPerSlab)).duplicate();
+        b.position(offset);
+        b.limit(offset + pageSize);
+        return b.slice();
+    }
+
+    @Override
+    public void unpin(long pageId, boolean dirty) {
+        // writes go straight to the slab
+    }
+
+    @Override
+    public void flush() {
+        // nothing to persist
+    }
+
+    /**
+     * Returns the number of pages in use (allocated and not freed).
+     *
+     * @return number of pages in use
+     */
+    public long pagesInUse() {
+        return numPages - numFree;
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the slabs.
+     *
+     * @return bytes reserved
+     */
+    public long bytesReserved() {
+        return (long) slabs.size() * pagesPerSlab * pageSize;
+    }
+
+    @Override
+    public String toString() {
+        return "Arena [pageSize=" + pageSize + ", slabs=" + slabs.size() + ", pagesInUse=" + pagesInUse() + "]";
+    }
+
+}
@@ -1,14 +1,25 @@
 package org.davidmoten.gt.btree;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
 import com.github.davidmoten.guavamini.Preconditions;
 import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
 
-import io.reactivex.Observable;
-import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Function;
+import io.reactivex.parallel.ParallelFlowable;
 
 public final class BTree<Key, Value> {
 
+    // pieces a parallel range is split into per rail so that uneven pieces
+    // balance out
+    private static final int PIECES_PER_RAIL = 4;
+
     private final Context<Key, Value> context;
 
     // mutable
@@ -18,79 +29,396 @@ public final class BTree<Key, Value> {
 
     public BTree(Context<Key, Value> context) {
         this.context = context;
-        root = context.nodeFactory().create(0);
+        root = context.nodeFactory().createLeaf(context.maxChildren());
     }
 
     public Value get(Key key) {
         Preconditions.checkNotNull(key, "key cannot be null");
-        return search(root, key, height);
+        Cursor<Key, Value> cursor = seek(key);
+        if (cursor.hasCurrent() && eq(key, cursor.key())) {
+            return cursor.value();
+        } else {
+            return null;
+        }
     }
 
-    private Value search(Node<Key, Value> x, Key key, int ht) {
-        // external node
-        if (ht == 0) {
-            for (int j = 0; j < x.numEntries(); j++) {
-                if (eq(key, x.key(j))) {
-                    return x.value(j);
-                }
+    /**
+     * Returns the number of entries with keys less than the given key. Each
+     * non-leaf node holds the number of entries under each of its children so
+     * this is one descent from the root, summing the counts of the children
+     * to the left of the path.
+     * 
+     * @param key
+     *            key
+     * @return number of entries with keys less than key
+     */
+    public long rank(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        Node<Key, Value> x = root;
+        long rank = 0;
+        // descend as seek does, every entry in the children to the left is
+        // less than key
+        for (int ht = height; ht > 0; ht--) {
+            int c = Math.max(0, lowerBound(x, key) - 1);
+            for (int j = 0; j < c; j++) {
+                rank += x.count(j);
             }
+            x = x.child(c);
+        }
+        return rank + lowerBound(x, key);
+    }
+
+    /**
+     * Returns the number of entries with keys in the given range without
+     * reading the entries.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return number of entries with keys in the range
+     */
+    public long count(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        if (!less(lowerInclusive, upperExclusive)) {
+            return 0;
         }
+        return rank(upperExclusive) - rank(lowerInclusive);
+    }
 
-        // internal node
-        else {
-            for (int j = 0; j < x.numEntries(); j++) {
-                if (j + 1 == x.numEntries() || less(key, x.key(j + 1)))
-                    return search(x.next(j), key, ht - 1);
+    /**
+     * Returns the entry at the given position in key order (entries with
+     * equal keys in the order they were added), for example the median is
+     * {@code select(size() / 2)}.
+     * 
+     * @param index
+     *            position in key order starting at 0
+     * @return entry at the position
+     * @throws IllegalArgumentException
+     *             if index is negative or not less than {@link #size()}
+     */
+    public Entry<Key, Value> select(long index) {
+        Preconditions.checkArgument(index >= 0 && index < size, "index out of range: " + index);
+        Node<Key, Value> x = root;
+        long i = index;
+        for (int ht = height; ht > 0; ht--) {
+            int j = 0;
+            while (i >= x.count(j)) {
+                i -= x.count(j);
+                j++;
             }
+            x = x.child(j);
         }
-        return null;
+        return new Entry<Key, Value>(x.key((int) i), x.value((int) i));
     }
 
-    public Observable<Value> range(Key lowerInclusive, Key upperExclusive) {
-        return range(root, lowerInclusive, upperExclusive, height);
+    /**
+     * Returns a cursor positioned at the first entry of the tree.
+     * 
+     * @return cursor positioned at the first entry
+     */
+    Cursor<Key, Value> first() {
+        return new Cursor<Key, Value>(leftmostLeaf(root, height), 0);
     }
 
-    private Observable<Value> range(Node<Key, Value> x, Key lowerInclusive, Key upperExclusive,
-            int height) {
-        return Observable.create(new ObservableOnSubscribe<Value>() {
+    /**
+     * Returns a cursor positioned at the first entry with key greater than or
+     * equal to the given key.
+     * 
+     * @param key
+     *            lower bound (inclusive)
+     * @return cursor positioned at the first entry &gt;= key
+     */
+    Cursor<Key, Value> seek(Key key) {
+        Node<Key, Value> x = root;
+        // internal nodes, descend to the last child with smallest key strictly
+        // less than the given key so that duplicates of key that straddle a
+        // split are not missed
+        for (int ht = height; ht > 0; ht--) {
+            x = x.child(Math.max(0, lowerBound(x, key) - 1));
+        }
+        // external node
+        return new Cursor<Key, Value>(x, lowerBound(x, key));
+    }
 
-            @Override
-            public void subscribe(ObservableEmitter<Value> emitter) throws Exception {
-                range(x, lowerInclusive, upperExclusive, height, emitter);
-                if (!emitter.isDisposed()) {
-                    emitter.onComplete();
-                }
-            }
-        });
+    /**
+     * Returns the values with keys in the given range in key order. Items are
+     * only read from the tree as they are requested so the stream supports
+     * backpressure and can be moved to another thread with
+     * {@code subscribeOn}. The tree must not be modified while a subscription
+     * is active.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<Value> range(Key lowerInclusive, Key upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> cursor.value());
     }
 
-    private boolean range(Node<Key, Value> x, Key lower, Key upper, int ht,
-            ObservableEmitter<Value> emitter) {
+    /**
+     * Returns the entries with keys in the given range in key order. Like
+     * {@link #range(Object, Object)} the stream supports backpressure.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry<Key, Value>> rangeEntries(Key lowerInclusive, Key upperExclusive) {
+        return range(lowerInclusive, upperExclusive,
+                cursor -> new Entry<Key, Value>(cursor.key(), cursor.value()));
+    }
 
-        if (ht == 0) {
-            // external node
-            for (int j = 0; j < x.numEntries(); j++) {
-                if (emitter.isDisposed()) {
-                    return false;
-                }
-                if (geq(x.key(j), lower) && less(x.key(j), upper)) {
-                    emitter.onNext(x.value(j));
+    /**
+     * Returns the values with keys in any of the given ranges in key order.
+     * The ranges are sorted and overlapping or adjacent ranges are coalesced
+     * so each value is emitted once. All ranges are served by one left to
+     * right traversal that moves forward from one range to the next only
+     * climbing as far as the lowest internal node that holds the next range,
+     * rather than descending from the root for each range. Supports
+     * backpressure like {@link #range(Object, Object)}.
+     *
+     * @param ranges
+     *            key ranges
+     * @return values with keys in any of the ranges in key order
+     */
+    public Flowable<Value> ranges(List<Range<Key>> ranges) {
+        return ranges(ranges, (cursor, tag) -> cursor.value());
+    }
+
+    /**
+     * Returns the entries with keys in any of the given ranges in key order.
+     * Like {@link #ranges(List)}.
+     *
+     * @param ranges
+     *            key ranges
+     * @return entries with keys in any of the ranges in key order
+     */
+    public Flowable<Entry<Key, Value>> rangesEntries(List<Range<Key>> ranges) {
+        return ranges(ranges, (cursor, tag) -> new Entry<Key, Value>(cursor.key(), cursor.value()));
+    }
+
+    /**
+     * Returns the values with keys in any of the given ranges in key order
+     * tagged with the range they were found by. The key of each emitted entry
+     * is the index in {@code ranges} of the first range that contains the key
+     * of the value. Like {@link #ranges(List)} each value is emitted once even
+     * if ranges overlap.
+     *
+     * @param ranges
+     *            key ranges
+     * @return values tagged with the index of their range in key order
+     */
+    public Flowable<Entry<Integer, Value>> rangesTagged(List<Range<Key>> ranges) {
+        return ranges(ranges, (cursor, tag) -> new Entry<Integer, Value>(tag.tag(cursor.key()), cursor.value()));
+    }
+
+    private <T> Flowable<T> ranges(List<Range<Key>> ranges,
+            BiFunction<PathCursor<Key, Value>, RangeTagger<Key>, T> mapper) {
+        Preconditions.checkNotNull(ranges, "ranges cannot be null");
+        List<Range<Key>> merged = coalesce(ranges);
+        if (merged.isEmpty()) {
+            return Flowable.empty();
+        }
+        return Flowable.generate( //
+                () -> new RangesState<Key, Value>(
+                        new PathCursor<Key, Value>(root, height, context.comparator(),
+                                merged.get(0).lowerInclusive()),
+                        new RangeTagger<Key>(ranges, context.comparator())), //
+                (state, emitter) -> {
+                    PathCursor<Key, Value> cursor = state.cursor;
+                    while (true) {
+                        if (state.range == merged.size() || !cursor.hasCurrent()) {
+                            emitter.onComplete();
+                            return state;
+                        } else if (less(cursor.key(), merged.get(state.range).upperExclusive())) {
+                            emitter.onNext(mapper.apply(cursor, state.tagger));
+                            cursor.advance();
+                            return state;
+                        } else {
+                            state.range++;
+                            if (state.range < merged.size()) {
+                                cursor.seek(merged.get(state.range).lowerInclusive());
+                            }
+                        }
+                    }
+                });
+    }
+
+    private static final class RangesState<Key, Value> {
+        final PathCursor<Key, Value> cursor;
+        final RangeTagger<Key> tagger;
+        // index of the current coalesced range
+        int range;
+
+        RangesState(PathCursor<Key, Value> cursor, RangeTagger<Key> tagger) {
+            this.cursor = cursor;
+            this.tagger = tagger;
+        }
+    }
+
+    // sorted by lower bound with overlapping or adjacent ranges merged and
+    // empty ranges dropped
+    private List<Range<Key>> coalesce(List<Range<Key>> ranges) {
+        List<Range<Key>> sorted = new ArrayList<>();
+        for (Range<Key> r : ranges) {
+            if (less(r.lowerInclusive(), r.upperExclusive())) {
+                sorted.add(r);
+            }
+        }
+        Collections.sort(sorted, (a, b) -> context.comparator().compare(a.lowerInclusive(), b.lowerInclusive()));
+        List<Range<Key>> merged = new ArrayList<>();
+        for (Range<Key> r : sorted) {
+            int last = merged.size() - 1;
+            if (last >= 0 && !less(merged.get(last).upperExclusive(), r.lowerInclusive())) {
+                if (less(merged.get(last).upperExclusive(), r.upperExclusive())) {
+                    merged.set(last, new Range<Key>(merged.get(last).lowerInclusive(), r.upperExclusive()));
                 }
+            } else {
+                merged.add(r);
             }
-        } else {
-            // internal node
-            for (int j = 0; j < x.numEntries(); j++) {
-                if (j + 1 == x.numEntries() || (less(lower, x.key(j + 1)))) {
-                    if (emitter.isDisposed()) {
-                        return false;
+        }
+        return merged;
+    }
+
+    /**
+     * Splits the range into at most {@code maxParts} contiguous ranges at the
+     * keys of internal nodes. Separator keys are gathered a level at a time
+     * from the root down until there are enough of them, so only the internal
+     * nodes overlapping the range near the top of the tree are read. Fewer
+     * ranges are returned if the tree does not have enough separators in the
+     * range.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param maxParts
+     *            maximum number of ranges
+     * @return contiguous ranges in key order that together cover the range
+     */
+    public List<Range<Key>> split(Key lowerInclusive, Key upperExclusive, int maxParts) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        Preconditions.checkArgument(maxParts > 0, "maxParts must be positive");
+        List<Key> keys = new ArrayList<>();
+        List<Node<Key, Value>> nodes = Collections.singletonList(root);
+        for (int ht = height; ht > 0 && keys.size() < maxParts - 1; ht--) {
+            // separators of this level and the levels above
+            List<Key> levelKeys = new ArrayList<>(keys);
+            List<Node<Key, Value>> children = new ArrayList<>();
+            for (Node<Key, Value> x : nodes) {
+                int n = x.numEntries();
+                for (int j = 0; j < n; j++) {
+                    if (j > 0 && less(lowerInclusive, x.key(j)) && less(x.key(j), upperExclusive)) {
+                        levelKeys.add(x.key(j));
                     }
-                    if (!range(x.next(j), lower, upper, ht - 1, emitter)) {
-                        return false;
+                    boolean endsAfterLower = j + 1 == n || !less(x.key(j + 1), lowerInclusive);
+                    boolean startsBeforeUpper = j == 0 || less(x.key(j), upperExclusive);
+                    if (endsAfterLower && startsBeforeUpper) {
+                        children.add(x.child(j));
                     }
                 }
             }
+            levelKeys.sort(context.comparator());
+            keys = levelKeys;
+            nodes = children;
+        }
+        // drop duplicate separators then take evenly spaced ones
+        List<Key> distinct = new ArrayList<>();
+        for (Key key : keys) {
+            if (distinct.isEmpty() || less(distinct.get(distinct.size() - 1), key)) {
+                distinct.add(key);
+            }
         }
-        return true;
+        int parts = Math.min(maxParts, distinct.size() + 1);
+        List<Range<Key>> ranges = new ArrayList<>(parts);
+        Key lower = lowerInclusive;
+        for (int i = 1; i < parts; i++) {
+            Key upper = distinct.get((int) ((long) i * distinct.size() / parts));
+            ranges.add(new Range<Key>(lower, upper));
+            lower = upper;
+        }
+        ranges.add(new Range<Key>(lower, upperExclusive));
+        return ranges;
+    }
+
+    /**
+     * Returns the values with keys in the given range in key order like
+     * {@link #range(Object, Object)} but the range is {@link #split} into
+     * pieces that are scanned concurrently on the given scheduler, at most
+     * {@code parallelism} at a time. Values of later pieces are buffered until
+     * the earlier pieces have been emitted. The tree must not be modified
+     * while a subscription is active.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param parallelism
+     *            maximum number of pieces scanned at once
+     * @param scheduler
+     *            scheduler the pieces are scanned on
+     * @return values with keys in the range in key order
+     */
+    public Flowable<Value> rangeParallel(Key lowerInclusive, Key upperExclusive, int parallelism,
+            Scheduler scheduler) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        return Flowable.fromIterable(split(lowerInclusive, upperExclusive, parallelism * PIECES_PER_RAIL)) //
+                .concatMapEager(r -> range(r.lowerInclusive(), r.upperExclusive()) //
+                        .subscribeOn(scheduler), parallelism, Flowable.bufferSize());
+    }
+
+    /**
+     * Returns the values with keys in the given range on {@code parallelism}
+     * rails that scan the pieces the range is {@link #split} into on the
+     * given scheduler. Within a piece values are in key order but there is no
+     * order between rails. Use {@code sequential()} to merge the rails when
+     * order does not matter, this avoids the buffering of
+     * {@link #rangeParallel}. The tree must not be modified while a
+     * subscription is active.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param parallelism
+     *            number of rails
+     * @param scheduler
+     *            scheduler the pieces are scanned on
+     * @return values with keys in the range on parallel rails
+     */
+    public ParallelFlowable<Value> rangeParallelUnordered(Key lowerInclusive, Key upperExclusive,
+            int parallelism, Scheduler scheduler) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        return Flowable.fromIterable(split(lowerInclusive, upperExclusive, parallelism * PIECES_PER_RAIL)) //
+                .parallel(parallelism, 1) //
+                .runOn(scheduler, 1) //
+                .flatMap(r -> range(r.lowerInclusive(), r.upperExclusive()));
+    }
+
+    private <T> Flowable<T> range(Key lowerInclusive, Key upperExclusive,
+            Function<Cursor<Key, Value>, T> mapper) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return Flowable.generate( //
+                () -> seek(lowerInclusive), //
+                (cursor, emitter) -> {
+                    if (cursor.hasCurrent() && less(cursor.key(), upperExclusive)) {
+                        emitter.onNext(mapper.apply(cursor));
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
     }
 
     public void put(Key key, Value val) {
@@ -101,44 +429,545 @@ public final class BTree<Key, Value> {
             return;
 
         // need to give root a new parent
+        Node<Key, Value> old = root;
         root = root.makeParentWith(u);
+        root.setCount(0, subtreeCount(old, height));
+        root.setCount(1, subtreeCount(u, height));
         height++;
     }
 
     private Node<Key, Value> insert(Node<Key, Value> h, Key key, Value val, int height) {
-        int j;
-        Entry<Key, Value> t = new Entry<Key, Value>(key, val, null);
-
-        // external node
         if (height == 0) {
-            for (j = 0; j < h.numEntries(); j++) {
-                if (less(key, h.key(j)))
-                    break;
-            }
-        }
-
-        // internal node
-        else {
-            for (j = 0; j < h.numEntries(); j++) {
-                if ((j + 1 == h.numEntries()) || less(key, h.key(j + 1))) {
-                    Node<Key, Value> u = insert(h.next(j++), key, val, height - 1);
-                    if (u == null)
-                        return null;
-                    t.setKey(u.key(0));
-                    t.setNext(u);
-                    break;
-                }
+            // external node, insert after any entries with an equal key
+            h.insert(upperBound(h, key), key, val);
+        } else {
+            // internal node
+            int j = childIndex(h, key);
+            Node<Key, Value> u = insert(h.child(j), key, val, height - 1);
+            if (u == null) {
+                h.setCount(j, h.count(j) + 1);
+                return null;
             }
+            h.setCount(j, subtreeCount(h.child(j), height - 1));
+            h.insertChild(j + 1, u.key(0), u);
+            h.setCount(j + 1, subtreeCount(u, height - 1));
         }
 
-        h.insert(j, t);
-
         if (h.isFull())
             return h.split();
         else
             return null;
     }
 
+    /**
+     * Loads entries sorted by key into this empty tree. Leaves are filled from
+     * left to right and each internal level is built as its children are
+     * completed, so the load is O(n) with no descents from the root and only
+     * the rightmost node of each level is being written to at any time.
+     * 
+     * <p>
+     * Each node gets {@code fillFactor * (maxChildren - 1)} entries (at least
+     * one entry per leaf and two children per non-leaf). A fill factor of 1
+     * gives the smallest tree and suits a tree that will only be read or
+     * appended to, a smaller fill factor leaves room for later random inserts
+     * without immediate splits.
+     * 
+     * @param entries
+     *            entries in ascending key order (equal keys are kept in the
+     *            order given)
+     * @param fillFactor
+     *            proportion of each node to fill, greater than 0 and at most 1
+     * @throws IllegalArgumentException
+     *             if the tree is not empty or the entries are not sorted
+     */
+    public void bulkLoad(Iterator<Entry<Key, Value>> entries, double fillFactor) {
+        Preconditions.checkNotNull(entries, "entries cannot be null");
+        Preconditions.checkArgument(fillFactor > 0 && fillFactor <= 1, "fillFactor must be in (0, 1]");
+        Preconditions.checkArgument(isEmpty(), "tree must be empty");
+        int maxEntries = context.maxChildren() - 1;
+        int leafEntries = Math.max(1, (int) Math.round(fillFactor * maxEntries));
+        int nonLeafEntries = Math.max(2, (int) Math.round(fillFactor * maxEntries));
+        // rightmost node of each level, leaf level first
+        List<Node<Key, Value>> spine = new ArrayList<>();
+        spine.add(root);
+        Key previous = null;
+        while (entries.hasNext()) {
+            Entry<Key, Value> entry = entries.next();
+            Preconditions.checkNotNull(entry.key(), "key cannot be null");
+            Preconditions.checkArgument(previous == null || !less(entry.key(), previous),
+                    "entries must be in ascending key order");
+            previous = entry.key();
+            Node<Key, Value> leaf = spine.get(0);
+            if (leaf.numEntries() == leafEntries) {
+                Node<Key, Value> t = leaf.createSibling();
+                t.insert(0, entry.key(), entry.value());
+                addToSpine(spine, 1, leaf, t, nonLeafEntries);
+            } else {
+                leaf.insert(leaf.numEntries(), entry.key(), entry.value());
+                if (leaf.isFull()) {
+                    // only happens when a node is full by bytes before count
+                    addToSpine(spine, 1, leaf, leaf.split(), nonLeafEntries);
+                }
+            }
+            size++;
+        }
+        root = spine.get(spine.size() - 1);
+        height = spine.size() - 1;
+        // the spine is built bottom up so set the counts once at the end
+        recount(root, height);
+    }
+
+    /**
+     * Loads entries sorted by key into this empty tree. See
+     * {@link #bulkLoad(Iterator, double)}. The entries are requested in
+     * batches as the tree is built and the call blocks until the stream
+     * completes.
+     * 
+     * @param entries
+     *            entries in ascending key order
+     * @param fillFactor
+     *            proportion of each node to fill, greater than 0 and at most 1
+     */
+    public void bulkLoad(Flowable<Entry<Key, Value>> entries, double fillFactor) {
+        Preconditions.checkNotNull(entries, "entries cannot be null");
+        bulkLoad(entries.blockingIterable().iterator(), fillFactor);
+    }
+
+    /**
+     * Sets the counts of every non-leaf node of the subtree h (at height ht)
+     * and returns the number of entries in the subtree.
+     */
+    private static <Key, Value> long recount(Node<Key, Value> h, int ht) {
+        if (ht == 0) {
+            return h.numEntries();
+        }
+        long count = 0;
+        for (int j = 0; j < h.numEntries(); j++) {
+            long c = recount(h.child(j), ht - 1);
+            h.setCount(j, c);
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of entries in the subtree h (at height ht) from the
+     * counts held in h.
+     */
+    private static <Key, Value> long subtreeCount(Node<Key, Value> h, int ht) {
+        if (ht == 0) {
+            return h.numEntries();
+        }
+        long count = 0;
+        for (int j = 0; j < h.numEntries(); j++) {
+            count += h.count(j);
+        }
+        return count;
+    }
+
+    /**
+     * Records that {@code right} has been added to the right of {@code left}
+     * at the level below {@code level}, creating nodes on the spine as needed.
+     */
+    private static <Key, Value> void addToSpine(List<Node<Key, Value>> spine, int level, Node<Key, Value> left,
+            Node<Key, Value> right, int nonLeafEntries) {
+        spine.set(level - 1, right);
+        if (level == spine.size()) {
+            spine.add(left.makeParentWith(right));
+        } else {
+            Node<Key, Value> parent = spine.get(level);
+            if (parent.numEntries() == nonLeafEntries) {
+                Node<Key, Value> t = parent.createSibling();
+                t.insertChild(0, right.key(0), right);
+                addToSpine(spine, level + 1, parent, t, nonLeafEntries);
+            } else {
+                parent.insertChild(parent.numEntries(), right.key(0), right);
+                if (parent.isFull()) {
+                    addToSpine(spine, level + 1, parent, parent.split(), nonLeafEntries);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the first entry with the given key (the entry that
+     * {@link #get(Object)} returns). Nodes left with fewer than half of
+     * {@code maxChildren} entries are merged with or take entries from a
+     * sibling and the pages of nodes removed from the tree are freed.
+     * 
+     * @param key
+     *            key
+     * @return true if an entry was removed
+     */
+    public boolean remove(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        boolean removed = removeFirst(root, key, height);
+        if (removed) {
+            size--;
+            shrinkRoot();
+        }
+        return removed;
+    }
+
+    private boolean removeFirst(Node<Key, Value> h, Key key, int ht) {
+        if (ht == 0) {
+            int j = lowerBound(h, key);
+            if (j < h.numEntries() && eq(h.key(j), key)) {
+                h.remove(j, j + 1);
+                return true;
+            } else {
+                return false;
+            }
+        } else {
+            // the first entry with the key is in the child that a seek
+            // descends to unless that child has none and a following child
+            // starts with the key
+            int c = Math.max(0, lowerBound(h, key) - 1);
+            for (int j = c; j < h.numEntries() && (j == c || !less(key, h.key(j))); j++) {
+                if (removeFirst(h.child(j), key, ht - 1)) {
+                    h.setCount(j, h.count(j) - 1);
+                    fixChildren(h, j, j, ht);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Removes all entries with keys in the given range. Subtrees that lie
+     * wholly within the range are detached from the tree in one step rather
+     * than entry by entry so the cost is proportional to the number of nodes
+     * removed (each of which is visited once to free its page) plus the height
+     * of the tree.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return number of entries removed
+     */
+    public long removeRange(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        if (!less(lowerInclusive, upperExclusive)) {
+            return 0;
+        }
+        return removeBelow(lowerInclusive, upperExclusive);
+    }
+
+    /**
+     * Removes all entries with keys less than the given key, for example to
+     * drop positions older than a retention period. Like
+     * {@link #removeRange(Object, Object)} whole subtrees are detached.
+     * 
+     * @param upperExclusive
+     *            entries with keys less than this are removed
+     * @return number of entries removed
+     */
+    public long expireBefore(Key upperExclusive) {
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return removeBelow(null, upperExclusive);
+    }
+
+    private long removeBelow(Key lowerInclusive, Key upperExclusive) {
+        long count = removeRange(root, lowerInclusive, upperExclusive, height);
+        size -= count;
+        shrinkRoot();
+        return count;
+    }
+
+    /**
+     * Removes the entries of the subtree h with keys in the range where a null
+     * lower bound means no lower bound. Returns the number removed.
+     */
+    private long removeRange(Node<Key, Value> h, Key lowerInclusive, Key upperExclusive, int ht) {
+        if (ht == 0) {
+            int from = lowerInclusive == null ? 0 : lowerBound(h, lowerInclusive);
+            int to = lowerBound(h, upperExclusive);
+            if (from < to) {
+                h.remove(from, to);
+                return to - from;
+            } else {
+                return 0;
+            }
+        }
+        // every key in child j is at most key(j + 1) so the children strictly
+        // between first and last hold only keys in the range
+        int last = Math.max(0, lowerBound(h, upperExclusive) - 1);
+        long count = 0;
+        if (lowerInclusive == null) {
+            // nothing to the left to relink
+            for (int j = 0; j < last; j++) {
+                count += detach(h.child(j), ht - 1);
+            }
+            h.remove(0, last);
+            long n = removeRange(h.child(0), null, upperExclusive, ht - 1);
+            h.setCount(0, h.count(0) - n);
+            count += n;
+            fixChildren(h, 0, 0, ht);
+        } else {
+            int first = Math.max(0, lowerBound(h, lowerInclusive) - 1);
+            if (first < last) {
+                if (first + 1 < last) {
+                    rightmostLeaf(h.child(first), ht - 1).setNextLeaf(leftmostLeaf(h.child(last), ht - 1));
+                    for (int j = first + 1; j < last; j++) {
+                        count += detach(h.child(j), ht - 1);
+                    }
+                    h.remove(first + 1, last);
+                }
+                count += removeChildRange(h, first, lowerInclusive, upperExclusive, ht);
+                count += removeChildRange(h, first + 1, lowerInclusive, upperExclusive, ht);
+                fixChildren(h, first, first + 1, ht);
+            } else {
+                count += removeChildRange(h, first, lowerInclusive, upperExclusive, ht);
+                fixChildren(h, first, first, ht);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the entries with keys in the range from child j of h (at height
+     * ht), updating the count of the child. Returns the number removed.
+     */
+    private long removeChildRange(Node<Key, Value> h, int j, Key lowerInclusive, Key upperExclusive, int ht) {
+        long n = removeRange(h.child(j), lowerInclusive, upperExclusive, ht - 1);
+        h.setCount(j, h.count(j) - n);
+        return n;
+    }
+
+    /**
+     * Frees every node of the subtree and returns the number of entries it
+     * held.
+     */
+    private static <Key, Value> long detach(Node<Key, Value> h, int ht) {
+        long count = 0;
+        if (ht == 0) {
+            count = h.numEntries();
+        } else {
+            for (int j = 0; j < h.numEntries(); j++) {
+                count += detach(h.child(j), ht - 1);
+            }
+        }
+        h.free();
+        return count;
+    }
+
+    private static <Key, Value> Node<Key, Value> leftmostLeaf(Node<Key, Value> h, int ht) {
+        for (; ht > 0; ht--) {
+            h = h.child(0);
+        }
+        return h;
+    }
+
+    private static <Key, Value> Node<Key, Value> rightmostLeaf(Node<Key, Value> h, int ht) {
+        for (; ht > 0; ht--) {
+            h = h.child(h.numEntries() - 1);
+        }
+        return h;
+    }
+
+    /**
+     * Rebalances the children of the non-leaf node h (at height ht) with
+     * indexes from {@code from} to {@code to} that have too few entries.
+     */
+    private void fixChildren(Node<Key, Value> h, int from, int to, int ht) {
+        int j = from;
+        while (j <= to && j < h.numEntries() && h.numEntries() > 1) {
+            if (h.child(j).numEntries() < minEntries()) {
+                // pair with the right sibling if there is one
+                int left = j + 1 < h.numEntries() ? j : j - 1;
+                if (rebalance(h, left, ht)) {
+                    // check the merged node again
+                    j = left;
+                    to--;
+                    continue;
+                } else if (ht > 1 && (h.child(left).numEntries() < minEntries()
+                        || h.child(left + 1).numEntries() < minEntries())) {
+                    // fixing the grandchildren at the junction merged two of
+                    // them so check both nodes again
+                    j = left;
+                    to = Math.max(to, left + 1);
+                    continue;
+                }
+            }
+            j++;
+        }
+    }
+
+    /**
+     * Moves entries between the children at {@code left} and
+     * {@code left + 1} of the non-leaf node h (at height ht). If they fit in
+     * one node the right child is merged into the left child, removed and
+     * freed and true is returned, otherwise the entries are shared evenly and
+     * false is returned. Either way the grandchildren either side of the
+     * junction are rebalanced too.
+     */
+    private boolean rebalance(Node<Key, Value> h, int left, int ht) {
+        Node<Key, Value> a = h.child(left);
+        Node<Key, Value> b = h.child(left + 1);
+        boolean leaves = ht == 1;
+        // all keys in a are <= separator <= all keys in b
+        Key separator = h.key(left + 1);
+        int total = a.numEntries() + b.numEntries();
+        int junction = a.numEntries();
+        if (total < context.maxChildren()) {
+            moveToLeft(b, a, b.numEntries(), separator, leaves);
+            if (b.numEntries() == 0) {
+                if (leaves) {
+                    a.setNextLeaf(b.nextLeaf());
+                }
+                h.remove(left + 1, left + 2);
+                h.setCount(left, subtreeCount(a, ht - 1));
+                b.free();
+                if (!leaves) {
+                    // the children either side of the join may be too small
+                    fixChildren(a, junction - 1, junction, ht - 1);
+                }
+                return true;
+            }
+        } else if (a.numEntries() < b.numEntries()) {
+            moveToLeft(b, a, total / 2 - a.numEntries(), separator, leaves);
+            if (!leaves) {
+                // an underfull child left in a when a had one child is now
+                // beside the children taken from b
+                fixChildren(a, junction - 1, junction, ht - 1);
+            }
+        } else {
+            int before = b.numEntries();
+            moveToRight(a, b, total / 2 - b.numEntries(), separator, leaves);
+            if (!leaves) {
+                int moved = b.numEntries() - before;
+                fixChildren(b, moved - 1, moved, ht - 1);
+            }
+        }
+        // the smallest key of b has changed so replace its separator
+        h.remove(left + 1, left + 2);
+        h.insertChild(left + 1, b.key(0), b);
+        h.setCount(left, subtreeCount(a, ht - 1));
+        h.setCount(left + 1, subtreeCount(b, ht - 1));
+        return false;
+    }
+
+    /**
+     * Moves up to n entries from the start of b to the end of its left
+     * sibling a. Stops early if a leaf becomes full by bytes.
+     */
+    private static <Key, Value> void moveToLeft(Node<Key, Value> b, Node<Key, Value> a, int n, Key separator,
+            boolean leaves) {
+        for (int i = 0; i < n; i++) {
+            int j = a.numEntries();
+            if (leaves) {
+                a.insert(j, b.key(0), b.value(0));
+                if (a.isFull()) {
+                    a.remove(j, j + 1);
+                    return;
+                }
+            } else {
+                // key(0) of a non-leaf is not a bound so the first child moved
+                // is keyed by the separator
+                a.insertChild(j, i == 0 ? separator : b.key(0), b.child(0));
+                a.setCount(j, b.count(0));
+            }
+            b.remove(0, 1);
+        }
+    }
+
+    /**
+     * Moves up to n entries from the end of a to the start of its right
+     * sibling b. Stops early if a leaf becomes full by bytes.
+     */
+    private static <Key, Value> void moveToRight(Node<Key, Value> a, Node<Key, Value> b, int n, Key separator,
+            boolean leaves) {
+        if (!leaves && n > 0) {
+            // the first child of b will no longer be first so key it by the
+            // separator
+            Node<Key, Value> first = b.child(0);
+            long count = b.count(0);
+            b.remove(0, 1);
+            b.insertChild(0, separator, first);
+            b.setCount(0, count);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = a.numEntries() - 1;
+            if (leaves) {
+                b.insert(0, a.key(j), a.value(j));
+                if (b.isFull()) {
+                    b.remove(0, 1);
+                    return;
+                }
+            } else {
+                b.insertChild(0, a.key(j), a.child(j));
+                b.setCount(0, a.count(j));
+            }
+            a.remove(j, j + 1);
+        }
+    }
+
+    private int minEntries() {
+        return context.maxChildren() / 2;
+    }
+
+    /**
+     * Replaces a non-leaf root with a single child by that child as many times
+     * as needed.
+     */
+    private void shrinkRoot() {
+        while (height > 0 && root.numEntries() == 1) {
+            Node<Key, Value> old = root;
+            root = root.child(0);
+            old.free();
+            height--;
+        }
+    }
+
+    /**
+     * Returns the index of the child of the internal node x whose subtree
+     * should hold the given key. That is the index of the last child with
+     * smallest key less than or equal to the given key, or 0 if there is no
+     * such child.
+     */
+    private int childIndex(Node<Key, Value> x, Key key) {
+        return Math.max(0, upperBound(x, key) - 1);
+    }
+
+    /**
+     * Returns the index of the first key in x that is greater than or equal to
+     * the given key, or x.numEntries() if there is no such key.
+     */
+    private int lowerBound(Node<Key, Value> x, Key key) {
+        int lo = 0;
+        int hi = x.numEntries();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (less(x.key(mid), key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first key in x that is greater than the given
+     * key, or x.numEntries() if there is no such key.
+     */
+    private int upperBound(Node<Key, Value> x, Key key) {
+        int lo = 0;
+        int hi = x.numEntries();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (less(key, x.key(mid))) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
     public boolean isEmpty() {
         return size() == 0;
     }
@@ -152,6 +981,26 @@ public final class BTree<Key, Value> {
         return height;
     }
 
+    /**
+     * Returns the least number of entries of a node other than the root or
+     * {@link Integer#MAX_VALUE} if the root is the only node.
+     */
+    @VisibleForTesting
+    int minEntriesBelowRoot() {
+        return minEntriesBelow(root, height);
+    }
+
+    private static <Key, Value> int minEntriesBelow(Node<Key, Value> h, int ht) {
+        int min = Integer.MAX_VALUE;
+        if (ht > 0) {
+            for (int j = 0; j < h.numEntries(); j++) {
+                Node<Key, Value> child = h.child(j);
+                min = Math.min(min, Math.min(child.numEntries(), minEntriesBelow(child, ht - 1)));
+            }
+        }
+        return min;
+    }
+
     private boolean less(Key a, Key b) {
         return context.comparator().compare(a, b) < 0;
     }
@@ -160,10 +1009,6 @@ public final class BTree<Key, Value> {
         return context.comparator().compare(a, b) == 0;
     }
 
-    private boolean geq(Key a, Key b) {
-        return context.comparator().compare(a, b) >= 0;
-    };
-
     private String toString(Node<Key, Value> h, int ht, String indent) {
         StringBuilder s = new StringBuilder();
 
@@ -176,7 +1021,7 @@ public final class BTree<Key, Value> {
                 if (j > 0) {
                     s.append(indent + "(" + h.key(j) + ")\n");
                 }
-                s.append(toString(h.next(j), ht - 1, indent + "     "));
+                s.append(toString(h.child(j), ht - 1, indent + "     "));
             }
         }
         return s.toString();
@@ -0,0 +1,568 @@
+package org.davidmoten.gt.btree;
+
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * Thread-safe in-memory B-tree with the same semantics as {@link BTree}:
+ * duplicate keys are kept in insertion order, {@link #get(Object)} returns the
+ * first value for a key and ranges are lower inclusive, upper exclusive.
+ *
+ * <p>
+ * Uses optimistic lock coupling. Every node has a {@link StampedLock} whose
+ * stamp acts as a version number. Readers take no locks: a node is read
+ * optimistically and its version validated afterwards (as a search descends
+ * the parent is validated after the version of the child has been read) and
+ * the operation restarts from the root if a writer got in the way, so readers
+ * never block writers. Writers descend in the same way and only write lock
+ * the leaf they insert into. A full node met on the way down is split eagerly
+ * by write locking it and its parent, so a split never propagates upwards and
+ * at most two nodes are locked at any time.
+ *
+ * <p>
+ * Range scans copy one leaf at a time under a validated optimistic read and
+ * move on through the leaf links. Each leaf is seen as a consistent snapshot,
+ * entries added to a leaf after it has been copied are not seen by that scan.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+public final class ConcurrentBTree<Key, Value> {
+
+    // yield to the writer holding a lock after this many restarts
+    private static final int RESTARTS_BEFORE_YIELD = 16;
+
+    private final Comparator<Key> comparator;
+    private final int maxChildren;
+    private final LongAdder size = new LongAdder();
+
+    // only replaced while the old root is write locked
+    private volatile Node root;
+
+    public ConcurrentBTree(Comparator<Key> comparator, int maxChildren) {
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkArgument(maxChildren >= 4, "maxChildren must be at least 4");
+        this.comparator = comparator;
+        this.maxChildren = maxChildren;
+        this.root = new Leaf(maxChildren);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Value get(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        Search search = new Search();
+        for (int attempt = 0;; attempt++) {
+            backoff(attempt);
+            if (!seekLeaf(key, search)) {
+                continue;
+            }
+            Leaf leaf = search.leaf;
+            int j = lowerBound(leaf.keys, leaf.m, key);
+            if (j == -1) {
+                continue;
+            }
+            Object k;
+            Object v;
+            if (j < leaf.m) {
+                k = leaf.keys[j];
+                v = leaf.values[j];
+                if (!leaf.lock.validate(search.stamp)) {
+                    continue;
+                }
+            } else {
+                // first key >= key is at the start of the next leaf
+                Leaf next = leaf.next;
+                if (!leaf.lock.validate(search.stamp)) {
+                    continue;
+                }
+                if (next == null) {
+                    return null;
+                }
+                long stamp = next.lock.tryOptimisticRead();
+                if (stamp == 0) {
+                    continue;
+                }
+                k = next.keys[0];
+                v = next.values[0];
+                if (!next.lock.validate(stamp)) {
+                    continue;
+                }
+            }
+            if (k != null && eq(key, (Key) k)) {
+                return (Value) v;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Finds the leaf where a search for the first entry &gt;= key (or the
+     * first entry if key is null) should start and its version. Returns false
+     * if a concurrent write was detected and the search should be restarted.
+     */
+    private boolean seekLeaf(Key key, Search search) {
+        Node node = root;
+        long stamp = node.lock.tryOptimisticRead();
+        if (stamp == 0 || node != root) {
+            return false;
+        }
+        // descend to the last child with smallest key strictly less than the
+        // given key so that duplicates of key that straddle a split are not
+        // missed
+        while (node instanceof NonLeaf) {
+            NonLeaf t = (NonLeaf) node;
+            int j = key == null ? 0 : lowerBound(t.keys, t.m, key);
+            if (j == -1) {
+                return false;
+            }
+            Node child = t.children[Math.max(0, j - 1)];
+            if (child == null) {
+                return false;
+            }
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0 || !t.lock.validate(stamp)) {
+                return false;
+            }
+            node = child;
+            stamp = childStamp;
+        }
+        search.leaf = (Leaf) node;
+        search.stamp = stamp;
+        return true;
+    }
+
+    /**
+     * Returns the values with keys in the given range in key order. Supports
+     * backpressure in the same way as {@link BTree#range(Object, Object)} and
+     * unlike {@link BTree} the tree may be modified while a subscription is
+     * active.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<Value> range(Key lowerInclusive, Key upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> cursor.value());
+    }
+
+    public Flowable<Entry<Key, Value>> rangeEntries(Key lowerInclusive, Key upperExclusive) {
+        return range(lowerInclusive, upperExclusive,
+                cursor -> new Entry<Key, Value>(cursor.key(), cursor.value()));
+    }
+
+    /**
+     * Returns all entries in key order. Supports backpressure and concurrent
+     * modification in the same way as {@link #range(Object, Object)}.
+     *
+     * @return all entries in key order
+     */
+    public Flowable<Entry<Key, Value>> entries() {
+        return scan(null, null, cursor -> new Entry<Key, Value>(cursor.key(), cursor.value()));
+    }
+
+    private <T> Flowable<T> range(Key lowerInclusive, Key upperExclusive, Function<ScanCursor, T> mapper) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return scan(lowerInclusive, upperExclusive, mapper);
+    }
+
+    // a null bound is unbounded
+    private <T> Flowable<T> scan(Key lowerInclusive, Key upperExclusive, Function<ScanCursor, T> mapper) {
+        return Flowable.generate( //
+                () -> seek(lowerInclusive), //
+                (cursor, emitter) -> {
+                    if (cursor.hasCurrent()
+                            && (upperExclusive == null || less(cursor.key(), upperExclusive))) {
+                        emitter.onNext(mapper.apply(cursor));
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    private ScanCursor seek(Key key) {
+        ScanCursor cursor = new ScanCursor(maxChildren);
+        Search search = new Search();
+        for (int attempt = 0;; attempt++) {
+            backoff(attempt);
+            if (seekLeaf(key, search) && cursor.load(search.leaf, search.stamp)) {
+                break;
+            }
+        }
+        cursor.index = key == null ? 0 : lowerBound(cursor.keys, cursor.count, key);
+        cursor.skipExhaustedLeaves();
+        return cursor;
+    }
+
+    public void put(Key key, Value value) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        for (int attempt = 0; !tryPut(key, value); attempt++) {
+            backoff(attempt);
+        }
+        size.increment();
+    }
+
+    /**
+     * Makes one attempt at inserting the entry. Returns false if a concurrent
+     * write was detected or a full node was split on the way down, in which
+     * case the insert should be restarted from the root.
+     */
+    private boolean tryPut(Key key, Value value) {
+        Node node = root;
+        long stamp = node.lock.tryOptimisticRead();
+        if (stamp == 0 || node != root) {
+            return false;
+        }
+        NonLeaf parent = null;
+        long parentStamp = 0;
+        int parentIndex = 0;
+        while (true) {
+            if (node.isFull()) {
+                split(parent, parentStamp, parentIndex, node, stamp);
+                return false;
+            }
+            if (node instanceof Leaf) {
+                break;
+            }
+            NonLeaf t = (NonLeaf) node;
+            int j = upperBound(t.keys, t.m, key);
+            if (j == -1) {
+                return false;
+            }
+            j = Math.max(0, j - 1);
+            Node child = t.children[j];
+            if (child == null) {
+                return false;
+            }
+            long childStamp = child.lock.tryOptimisticRead();
+            if (childStamp == 0 || !t.lock.validate(stamp)) {
+                return false;
+            }
+            parent = t;
+            parentStamp = stamp;
+            parentIndex = j;
+            node = child;
+            stamp = childStamp;
+        }
+        Leaf leaf = (Leaf) node;
+        long writeStamp = leaf.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            return false;
+        }
+        try {
+            // insert after any entries with an equal key
+            leaf.insert(upperBound(leaf.keys, leaf.m, key), key, value);
+        } finally {
+            leaf.lock.unlockWrite(writeStamp);
+        }
+        return true;
+    }
+
+    /**
+     * Splits the full node if neither it nor its parent has changed since
+     * their versions were read. The parent is known not to be full.
+     */
+    private void split(NonLeaf parent, long parentStamp, int parentIndex, Node node, long stamp) {
+        long parentWriteStamp = 0;
+        if (parent != null) {
+            parentWriteStamp = parent.lock.tryConvertToWriteLock(parentStamp);
+            if (parentWriteStamp == 0) {
+                return;
+            }
+        }
+        long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            if (parent != null) {
+                parent.lock.unlockWrite(parentWriteStamp);
+            }
+            return;
+        }
+        try {
+            if (parent != null) {
+                Node u = node.split();
+                parent.insertChild(parentIndex + 1, u.keys[0], u);
+            } else if (node == root) {
+                // need to give root a new parent
+                Node u = node.split();
+                root = new NonLeaf(maxChildren, node, u);
+            }
+        } finally {
+            node.lock.unlockWrite(writeStamp);
+            if (parent != null) {
+                parent.lock.unlockWrite(parentWriteStamp);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    /**
+     * Returns the height of the tree. Only accurate if no writes are in
+     * progress.
+     *
+     * @return height of the tree
+     */
+    @VisibleForTesting
+    int height() {
+        int height = 0;
+        Node node = root;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf) node).children[0];
+            height++;
+        }
+        return height;
+    }
+
+    private static void backoff(int attempt) {
+        if (attempt > RESTARTS_BEFORE_YIELD) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the index of the first key in keys[0..n) that is greater than or
+     * equal to the given key, n if there is no such key or -1 if an
+     * unpopulated slot was read (only possible in an optimistic read that will
+     * fail validation).
+     */
+    @SuppressWarnings("unchecked")
+    private int lowerBound(Object[] keys, int n, Key key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Object k = keys[mid];
+            if (k == null) {
+                return -1;
+            } else if (less((Key) k, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first key in keys[0..n) that is greater than
+     * the given key, n if there is no such key or -1 if an unpopulated slot
+     * was read.
+     */
+    @SuppressWarnings("unchecked")
+    private int upperBound(Object[] keys, int n, Key key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Object k = keys[mid];
+            if (k == null) {
+                return -1;
+            } else if (less(key, (Key) k)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private boolean less(Key a, Key b) {
+        return comparator.compare(a, b) < 0;
+    }
+
+    private boolean eq(Key a, Key b) {
+        return comparator.compare(a, b) == 0;
+    }
+
+    // fields are written only while the node is write locked and may be read
+    // at any time by optimistic readers
+    private abstract static class Node {
+
+        final StampedLock lock = new StampedLock();
+        final Object[] keys;
+        int m; // number of entries
+
+        Node(int maxChildren) {
+            this.keys = new Object[maxChildren];
+        }
+
+        final boolean isFull() {
+            return m == keys.length;
+        }
+
+        /**
+         * Moves the upper half of the entries into a new node and returns it.
+         */
+        abstract Node split();
+    }
+
+    private static final class Leaf extends Node {
+
+        final Object[] values;
+        Leaf next;
+
+        Leaf(int maxChildren) {
+            super(maxChildren);
+            this.values = new Object[maxChildren];
+        }
+
+        void insert(int j, Object key, Object value) {
+            System.arraycopy(keys, j, keys, j + 1, m - j);
+            System.arraycopy(values, j, values, j + 1, m - j);
+            keys[j] = key;
+            values[j] = value;
+            m++;
+        }
+
+        @Override
+        Leaf split() {
+            int half = m / 2;
+            Leaf t = new Leaf(keys.length);
+            t.m = m - half;
+            System.arraycopy(keys, half, t.keys, 0, t.m);
+            System.arraycopy(values, half, t.values, 0, t.m);
+            // clear references so they can be garbage collected
+            for (int j = half; j < m; j++) {
+                keys[j] = null;
+                values[j] = null;
+            }
+            t.next = next;
+            m = half;
+            next = t;
+            return t;
+        }
+    }
+
+    private static final class NonLeaf extends Node {
+
+        final Node[] children;
+
+        NonLeaf(int maxChildren) {
+            super(maxChildren);
+            this.children = new Node[maxChildren];
+        }
+
+        NonLeaf(int maxChildren, Node a, Node b) {
+            this(maxChildren);
+            keys[0] = a.keys[0];
+            children[0] = a;
+            keys[1] = b.keys[0];
+            children[1] = b;
+            m = 2;
+        }
+
+        void insertChild(int j, Object key, Node child) {
+            System.arraycopy(keys, j, keys, j + 1, m - j);
+            System.arraycopy(children, j, children, j + 1, m - j);
+            keys[j] = key;
+            children[j] = child;
+            m++;
+        }
+
+        @Override
+        NonLeaf split() {
+            int half = m / 2;
+            NonLeaf t = new NonLeaf(keys.length);
+            t.m = m - half;
+            System.arraycopy(keys, half, t.keys, 0, t.m);
+            System.arraycopy(children, half, t.children, 0, t.m);
+            for (int j = half; j < m; j++) {
+                keys[j] = null;
+                children[j] = null;
+            }
+            m = half;
+            return t;
+        }
+    }
+
+    private static final class Search {
+        Leaf leaf;
+        long stamp;
+    }
+
+    /**
+     * Position in a copy of the current leaf of a range scan.
+     */
+    private final class ScanCursor {
+
+        final Object[] keys;
+        final Object[] values;
+        int count;
+        int index;
+        Leaf next;
+
+        ScanCursor(int maxChildren) {
+            this.keys = new Object[maxChildren];
+            this.values = new Object[maxChildren];
+        }
+
+        /**
+         * Copies the leaf if it has not changed since the stamp was read.
+         */
+        boolean load(Leaf leaf, long stamp) {
+            if (stamp == 0) {
+                return false;
+            }
+            int m = leaf.m;
+            System.arraycopy(leaf.keys, 0, keys, 0, m);
+            System.arraycopy(leaf.values, 0, values, 0, m);
+            Leaf nextLeaf = leaf.next;
+            if (!leaf.lock.validate(stamp)) {
+                return false;
+            }
+            count = m;
+            next = nextLeaf;
+            return true;
+        }
+
+        boolean hasCurrent() {
+            return index < count;
+        }
+
+        @SuppressWarnings("unchecked")
+        Key key() {
+            return (Key) keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        Value value() {
+            return (Value) values[index];
+        }
+
+        void advance() {
+            index++;
+            skipExhaustedLeaves();
+        }
+
+        void skipExhaustedLeaves() {
+            while (index >= count && next != null) {
+                Leaf leaf = next;
+                for (int attempt = 0; !load(leaf, leaf.lock.tryOptimisticRead()); attempt++) {
+                    backoff(attempt);
+                }
+                index = 0;
+            }
+        }
+    }
+
+}
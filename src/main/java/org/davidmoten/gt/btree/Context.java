@@ -2,6 +2,8 @@ package org.davidmoten.gt.btree;
 
 import java.util.Comparator;
 
+import com.github.davidmoten.guavamini.Preconditions;
+
 final class Context<Key, Value> {
 
     private final Comparator<Key> comparator;
@@ -15,6 +17,9 @@ final class Context<Key, Value> {
     }
     
     public static <Key,Value> Context<Key,Value> create(Comparator<Key> comparator, int maxChildren, NodeFactory<Key,Value> nodeFactory) {
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkArgument(maxChildren >= 4, "maxChildren must be at least 4");
+        Preconditions.checkNotNull(nodeFactory, "nodeFactory cannot be null");
         return new Context<Key,Value>(comparator, maxChildren, nodeFactory);
     }
 
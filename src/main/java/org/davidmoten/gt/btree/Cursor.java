@@ -0,0 +1,48 @@
+package org.davidmoten.gt.btree;
+
+/**
+ * Position in the linked list of leaves of a {@link BTree}. A cursor is
+ * created by seeking from the root once and thereafter only moves right along
+ * the leaves so a scan of k entries costs O(log n + k).
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+final class Cursor<Key, Value> {
+
+    private Node<Key, Value> leaf;
+    private int index;
+
+    Cursor(Node<Key, Value> leaf, int index) {
+        this.leaf = leaf;
+        this.index = index;
+        skipExhaustedLeaves();
+    }
+
+    boolean hasCurrent() {
+        return leaf != null;
+    }
+
+    Key key() {
+        return leaf.key(index);
+    }
+
+    Value value() {
+        return leaf.value(index);
+    }
+
+    void advance() {
+        index++;
+        skipExhaustedLeaves();
+    }
+
+    private void skipExhaustedLeaves() {
+        while (leaf != null && index >= leaf.numEntries()) {
+            leaf = leaf.nextLeaf();
+            index = 0;
+        }
+    }
+
+}
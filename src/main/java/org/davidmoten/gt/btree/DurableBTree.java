@@ -0,0 +1,320 @@
+package org.davidmoten.gt.btree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.davidmoten.gt.btree.ro.KeySerializer;
+import org.davidmoten.gt.btree.ro.Serializer;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import io.reactivex.Flowable;
+
+/**
+ * Thread-safe {@link BTree} whose changes are recorded in a
+ * {@link WriteAheadLog} before they are acknowledged. The pages of a
+ * file-backed tree (see {@link NodeFactoryFile}) are written in place and may
+ * be torn by a crash, so the tree is always rebuilt from the log when
+ * constructed and the node factory should start empty (for example on a new
+ * {@link Storage} file). {@link #checkpoint()} rewrites the log as the
+ * current entries so that the log and the time to recover stay proportional
+ * to the size of the tree.
+ *
+ * <p>
+ * A change is applied to the tree and appended to the log under one lock, so
+ * the log holds changes in the order they were applied, then the lock is
+ * released and the change committed. Concurrent writers therefore share the
+ * writes and forces of the log (group commit) and a reader may see a change
+ * before its writer has returned.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+public final class DurableBTree<Key, Value> implements Closeable {
+
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    private static final byte REMOVE_RANGE = 2;
+    private static final byte EXPIRE_BEFORE = 3;
+
+    private final KeySerializer<Key> keySerializer;
+    private final Serializer<Value> valueSerializer;
+    private final BTree<Key, Value> tree;
+    private final WriteAheadLog log;
+
+    /**
+     * Constructor. The log file is created if it does not exist, otherwise
+     * its records are replayed into the new tree.
+     *
+     * @param comparator
+     *            key comparator
+     * @param maxChildren
+     *            max children of a node
+     * @param nodeFactory
+     *            creates the nodes of the tree, should hold no nodes yet
+     * @param keySerializer
+     *            serializes keys in log records
+     * @param valueSerializer
+     *            serializes values in log records
+     * @param logFile
+     *            log file
+     * @param syncPolicy
+     *            when the log is forced to the storage device
+     */
+    public DurableBTree(Comparator<Key> comparator, int maxChildren, NodeFactory<Key, Value> nodeFactory,
+            KeySerializer<Key> keySerializer, Serializer<Value> valueSerializer, File logFile,
+            SyncPolicy syncPolicy) {
+        Preconditions.checkNotNull(keySerializer, "keySerializer cannot be null");
+        Preconditions.checkNotNull(valueSerializer, "valueSerializer cannot be null");
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.tree = new BTree<Key, Value>(Context.create(comparator, maxChildren, nodeFactory));
+        this.log = new WriteAheadLog(logFile, syncPolicy);
+        log.replay(this::apply);
+    }
+
+    /**
+     * Adds the entry after any entries with an equal key and returns once the
+     * change is in the log (see {@link SyncPolicy}).
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value
+     */
+    public void put(Key key, Value value) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        // serialize outside the lock
+        byte[] record = putRecord(key, value);
+        long sequence;
+        synchronized (tree) {
+            tree.put(key, value);
+            sequence = log.append(record);
+        }
+        log.commit(sequence);
+    }
+
+    /**
+     * Removes the first entry with the given key and returns once the change
+     * is in the log.
+     *
+     * @param key
+     *            key
+     * @return true if an entry was removed
+     */
+    public boolean remove(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        byte[] record = record(REMOVE, key, null);
+        long sequence;
+        synchronized (tree) {
+            if (!tree.remove(key)) {
+                return false;
+            }
+            sequence = log.append(record);
+        }
+        log.commit(sequence);
+        return true;
+    }
+
+    /**
+     * Removes all entries with keys in the given range and returns once the
+     * change is in the log.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return number of entries removed
+     */
+    public long removeRange(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return removeLogged(record(REMOVE_RANGE, lowerInclusive, upperExclusive));
+    }
+
+    /**
+     * Removes all entries with keys less than the given key and returns once
+     * the change is in the log.
+     *
+     * @param upperExclusive
+     *            entries with keys less than this are removed
+     * @return number of entries removed
+     */
+    public long expireBefore(Key upperExclusive) {
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return removeLogged(record(EXPIRE_BEFORE, upperExclusive, null));
+    }
+
+    private long removeLogged(byte[] record) {
+        long count;
+        long sequence;
+        synchronized (tree) {
+            count = apply(record);
+            if (count == 0) {
+                return 0;
+            }
+            sequence = log.append(record);
+        }
+        log.commit(sequence);
+        return count;
+    }
+
+    public Value get(Key key) {
+        synchronized (tree) {
+            return tree.get(key);
+        }
+    }
+
+    /**
+     * Returns the entries with keys in the given range in key order. The
+     * entries are copied under the lock when the stream is subscribed to.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry<Key, Value>> rangeEntries(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return Flowable.defer(() -> {
+            List<Entry<Key, Value>> list;
+            synchronized (tree) {
+                list = tree.rangeEntries(lowerInclusive, upperExclusive).toList().blockingGet();
+            }
+            return Flowable.fromIterable(list);
+        });
+    }
+
+    public int size() {
+        synchronized (tree) {
+            return tree.size();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Rewrites the log as one put per entry of the tree in key order. Writers
+     * are blocked while the log is rewritten.
+     */
+    public void checkpoint() {
+        synchronized (tree) {
+            Cursor<Key, Value> cursor = tree.first();
+            log.rewrite(new Iterator<byte[]>() {
+
+                @Override
+                public boolean hasNext() {
+                    return cursor.hasCurrent();
+                }
+
+                @Override
+                public byte[] next() {
+                    if (!cursor.hasCurrent()) {
+                        throw new NoSuchElementException();
+                    }
+                    byte[] record = putRecord(cursor.key(), cursor.value());
+                    cursor.advance();
+                    return record;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the size of the log file in bytes.
+     *
+     * @return log size in bytes
+     */
+    public long logSize() {
+        return log.size();
+    }
+
+    /**
+     * Closes the log. The node factory is not closed.
+     */
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    /**
+     * Applies the change in the record to the tree without logging it and
+     * returns the number of entries added or removed.
+     */
+    private long apply(byte[] record) {
+        byte type = record[0];
+        int keySize = keySerializer.size();
+        Key key = deserializeKey(record, 1);
+        if (type == PUT) {
+            tree.put(key, deserializeValue(Arrays.copyOfRange(record, 1 + keySize, record.length)));
+            return 1;
+        } else if (type == REMOVE) {
+            return tree.remove(key) ? 1 : 0;
+        } else if (type == REMOVE_RANGE) {
+            return tree.removeRange(key, deserializeKey(record, 1 + keySize));
+        } else if (type == EXPIRE_BEFORE) {
+            return tree.expireBefore(key);
+        } else {
+            throw new IllegalStateException("unknown log record type " + type);
+        }
+    }
+
+    private byte[] putRecord(Key key, Value value) {
+        try {
+            byte[] v = valueSerializer.serialize(value);
+            return ByteBuffer.allocate(1 + keySerializer.size() + v.length) //
+                    .put(PUT) //
+                    .put(keySerializer.serialize(key)) //
+                    .put(v) //
+                    .array();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // type then one or two keys
+    private byte[] record(byte type, Key key, Key key2) {
+        int keySize = keySerializer.size();
+        ByteBuffer bb = ByteBuffer.allocate(1 + (key2 == null ? 1 : 2) * keySize);
+        try {
+            bb.put(type);
+            bb.put(keySerializer.serialize(key));
+            if (key2 != null) {
+                bb.put(keySerializer.serialize(key2));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bb.array();
+    }
+
+    private Key deserializeKey(byte[] record, int offset) {
+        try {
+            return keySerializer.deserialize(Arrays.copyOfRange(record, offset, offset + keySerializer.size()));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Value deserializeValue(byte[] bytes) {
+        try {
+            return valueSerializer.deserialize(bytes);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
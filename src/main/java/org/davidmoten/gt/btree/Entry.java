@@ -1,36 +1,26 @@
 package org.davidmoten.gt.btree;
 
-// internal nodes: only use key and next
-// external nodes: only use key and value
-final class Entry<Key, Value> {
+public final class Entry<Key, Value> {
 
-    private Key key;
-    private final Value val;
-    private Node<Key, Value> next; // helper field to iterate over array entries
+    private final Key key;
+    private final Value value;
 
-    Entry(Key key, Value val, Node<Key, Value> next) {
+    public Entry(Key key, Value value) {
         this.key = key;
-        this.val = val;
-        this.next = next;
+        this.value = value;
     }
 
-    void setKey(Key key) {
-        this.key = key;
+    public Key key() {
+        return key;
     }
 
-    void setNext(Node<Key, Value> node) {
-        this.next = node;
+    public Value value() {
+        return value;
     }
 
-    Key key() {
-        return key;
+    @Override
+    public String toString() {
+        return "Entry [key=" + key + ", value=" + value + "]";
     }
 
-    Node<Key, Value> next() {
-        return next;
-    }
-    
-    Value value() {
-        return val;
-    }
-}
\ No newline at end of file
+}
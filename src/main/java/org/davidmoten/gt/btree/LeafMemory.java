@@ -0,0 +1,130 @@
+package org.davidmoten.gt.btree;
+
+// keys and values are held in parallel arrays sized to the max children
+public final class LeafMemory<Key, Value> implements Node<Key, Value> {
+
+    private final Key[] keys;
+    private final Value[] values;
+    private int m; // number of entries
+    private LeafMemory<Key, Value> nextLeaf;
+
+    @SuppressWarnings("unchecked")
+    public LeafMemory(int maxChildren) {
+        this.keys = (Key[]) new Object[maxChildren];
+        this.values = (Value[]) new Object[maxChildren];
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return true;
+    }
+
+    @Override
+    public int numEntries() {
+        return m;
+    }
+
+    @Override
+    public Key key(int j) {
+        return keys[j];
+    }
+
+    @Override
+    public Value value(int j) {
+        return values[j];
+    }
+
+    @Override
+    public Node<Key, Value> child(int j) {
+        throw new UnsupportedOperationException("leaf node has no children");
+    }
+
+    @Override
+    public long count(int j) {
+        throw new UnsupportedOperationException("leaf node has no children");
+    }
+
+    @Override
+    public void setCount(int j, long count) {
+        throw new UnsupportedOperationException("leaf node has no children");
+    }
+
+    @Override
+    public Node<Key, Value> nextLeaf() {
+        return nextLeaf;
+    }
+
+    @Override
+    public void insert(int j, Key key, Value value) {
+        System.arraycopy(keys, j, keys, j + 1, m - j);
+        System.arraycopy(values, j, values, j + 1, m - j);
+        keys[j] = key;
+        values[j] = value;
+        m++;
+    }
+
+    @Override
+    public void insertChild(int j, Key key, Node<Key, Value> child) {
+        throw new UnsupportedOperationException("leaf node has no children");
+    }
+
+    @Override
+    public void remove(int from, int to) {
+        System.arraycopy(keys, to, keys, from, m - to);
+        System.arraycopy(values, to, values, from, m - to);
+        int m2 = m - (to - from);
+        // clear references so they can be garbage collected
+        for (int j = m2; j < m; j++) {
+            keys[j] = null;
+            values[j] = null;
+        }
+        m = m2;
+    }
+
+    @Override
+    public void setNextLeaf(Node<Key, Value> next) {
+        nextLeaf = (LeafMemory<Key, Value>) next;
+    }
+
+    @Override
+    public void free() {
+        // nothing to release, the node is garbage collected
+    }
+
+    @Override
+    public boolean isFull() {
+        return m == keys.length;
+    }
+
+    @Override
+    public Node<Key, Value> split() {
+        int half = m / 2;
+        LeafMemory<Key, Value> t = new LeafMemory<Key, Value>(keys.length);
+        t.m = m - half;
+        System.arraycopy(keys, half, t.keys, 0, t.m);
+        System.arraycopy(values, half, t.values, 0, t.m);
+        // clear references so they can be garbage collected
+        for (int j = half; j < m; j++) {
+            keys[j] = null;
+            values[j] = null;
+        }
+        m = half;
+        t.nextLeaf = nextLeaf;
+        nextLeaf = t;
+        return t;
+    }
+
+    @Override
+    public Node<Key, Value> createSibling() {
+        LeafMemory<Key, Value> t = new LeafMemory<Key, Value>(keys.length);
+        t.nextLeaf = nextLeaf;
+        nextLeaf = t;
+        return t;
+    }
+
+    @Override
+    public Node<Key, Value> makeParentWith(Node<Key, Value> u) {
+        return NonLeafMemory.parentOf(this, u, keys.length);
+    }
+
+}
@@ -0,0 +1,219 @@
+package org.davidmoten.gt.btree;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * In-memory B-tree with primitive {@code long} keys (for example epoch
+ * millisecond timestamps). Keys are held in {@code long[]} arrays in each node
+ * and compared without boxing. Has the same semantics as {@link BTree}:
+ * duplicate keys are kept in insertion order, {@link #get(long)} returns the
+ * first value for a key and ranges are lower inclusive, upper exclusive.
+ *
+ * <p>
+ * Not thread-safe.
+ *
+ * @param <Value>
+ *            value type
+ */
+public final class LongBTree<Value> {
+
+    private final int maxChildren;
+
+    // mutable
+    private Object root;
+    private int height;
+    private int size;
+
+    public LongBTree(int maxChildren) {
+        Preconditions.checkArgument(maxChildren >= 4, "maxChildren must be at least 4");
+        this.maxChildren = maxChildren;
+        this.root = new Leaf<Value>(maxChildren);
+    }
+
+    public Value get(long key) {
+        Leaf<Value> leaf = seekLeaf(key);
+        int j = LongNonLeaf.lowerBound(leaf.keys, leaf.m, key);
+        if (j == leaf.m) {
+            // first key >= key is at the start of the next leaf
+            leaf = leaf.next;
+            j = 0;
+        }
+        if (leaf != null && j < leaf.m && leaf.keys[j] == key) {
+            return leaf.value(j);
+        } else {
+            return null;
+        }
+    }
+
+    private Cursor<Value> seek(long key) {
+        Leaf<Value> leaf = seekLeaf(key);
+        return new Cursor<Value>(leaf, LongNonLeaf.lowerBound(leaf.keys, leaf.m, key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Leaf<Value> seekLeaf(long key) {
+        Object x = root;
+        for (int ht = height; ht > 0; ht--) {
+            LongNonLeaf t = (LongNonLeaf) x;
+            x = t.children[t.seekIndex(key)];
+        }
+        return (Leaf<Value>) x;
+    }
+
+    /**
+     * Returns the values with keys in the given range in key order. Supports
+     * backpressure in the same way as {@link BTree#range(Object, Object)}.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<Value> range(long lowerInclusive, long upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> cursor.leaf.value(cursor.index));
+    }
+
+    public Flowable<Entry<Long, Value>> rangeEntries(long lowerInclusive, long upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> new Entry<Long, Value>(
+                cursor.leaf.keys[cursor.index], cursor.leaf.value(cursor.index)));
+    }
+
+    private <T> Flowable<T> range(long lowerInclusive, long upperExclusive, Function<Cursor<Value>, T> mapper) {
+        return Flowable.generate( //
+                () -> seek(lowerInclusive), //
+                (cursor, emitter) -> {
+                    if (cursor.leaf != null && cursor.leaf.keys[cursor.index] < upperExclusive) {
+                        emitter.onNext(mapper.apply(cursor));
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    public void put(long key, Value value) {
+        Object u = insert(root, key, value, height);
+        size++;
+        if (u != null) {
+            // need to give root a new parent
+            root = LongNonLeaf.parentOf(firstKey(root), root, firstKey(u), u, maxChildren);
+            height++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object insert(Object h, long key, Value value, int ht) {
+        if (ht == 0) {
+            Leaf<Value> leaf = (Leaf<Value>) h;
+            // insert after any entries with an equal key
+            leaf.insert(LongNonLeaf.upperBound(leaf.keys, leaf.m, key), key, value);
+            return leaf.isFull() ? leaf.split() : null;
+        } else {
+            LongNonLeaf t = (LongNonLeaf) h;
+            int j = t.insertIndex(key);
+            Object u = insert(t.children[j], key, value, ht - 1);
+            if (u == null) {
+                return null;
+            }
+            t.insertChild(j + 1, firstKey(u), u);
+            return t.isFull() ? t.split() : null;
+        }
+    }
+
+    private static long firstKey(Object node) {
+        if (node instanceof LongNonLeaf) {
+            return ((LongNonLeaf) node).keys[0];
+        } else {
+            return ((Leaf<?>) node).keys[0];
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @VisibleForTesting
+    int height() {
+        return height;
+    }
+
+    private static final class Leaf<Value> {
+
+        final long[] keys;
+        final Object[] values;
+        int m; // number of entries
+        Leaf<Value> next;
+
+        Leaf(int maxChildren) {
+            this.keys = new long[maxChildren];
+            this.values = new Object[maxChildren];
+        }
+
+        @SuppressWarnings("unchecked")
+        Value value(int j) {
+            return (Value) values[j];
+        }
+
+        void insert(int j, long key, Value value) {
+            System.arraycopy(keys, j, keys, j + 1, m - j);
+            System.arraycopy(values, j, values, j + 1, m - j);
+            keys[j] = key;
+            values[j] = value;
+            m++;
+        }
+
+        boolean isFull() {
+            return m == keys.length;
+        }
+
+        Leaf<Value> split() {
+            int half = m / 2;
+            Leaf<Value> t = new Leaf<Value>(keys.length);
+            t.m = m - half;
+            System.arraycopy(keys, half, t.keys, 0, t.m);
+            System.arraycopy(values, half, t.values, 0, t.m);
+            for (int j = half; j < m; j++) {
+                values[j] = null;
+            }
+            m = half;
+            t.next = next;
+            next = t;
+            return t;
+        }
+    }
+
+    private static final class Cursor<Value> {
+
+        Leaf<Value> leaf;
+        int index;
+
+        Cursor(Leaf<Value> leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+            skipExhaustedLeaves();
+        }
+
+        void advance() {
+            index++;
+            skipExhaustedLeaves();
+        }
+
+        private void skipExhaustedLeaves() {
+            while (leaf != null && index >= leaf.m) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+    }
+
+}
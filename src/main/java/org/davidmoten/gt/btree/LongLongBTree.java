@@ -0,0 +1,226 @@
+package org.davidmoten.gt.btree;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * In-memory B-tree with primitive {@code long} keys and {@code long} values
+ * (for example timestamp to record offset). Like {@link LongBTree} but values
+ * are also held in {@code long[]} arrays so that {@link #put(long, long)} and
+ * {@link #get(long, long)} do not box. Values are only boxed when emitted by
+ * {@link #range(long, long)}.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public final class LongLongBTree {
+
+    private final int maxChildren;
+
+    // mutable
+    private Object root;
+    private int height;
+    private int size;
+
+    public LongLongBTree(int maxChildren) {
+        Preconditions.checkArgument(maxChildren >= 4, "maxChildren must be at least 4");
+        this.maxChildren = maxChildren;
+        this.root = new Leaf(maxChildren);
+    }
+
+    /**
+     * Returns the first value with the given key or {@code defaultValue} if
+     * the key is not present.
+     *
+     * @param key
+     *            key
+     * @param defaultValue
+     *            value returned if the key is not present
+     * @return first value for the key or {@code defaultValue}
+     */
+    public long get(long key, long defaultValue) {
+        Leaf leaf = seekLeaf(key);
+        int j = LongNonLeaf.lowerBound(leaf.keys, leaf.m, key);
+        if (j == leaf.m) {
+            // first key >= key is at the start of the next leaf
+            leaf = leaf.next;
+            j = 0;
+        }
+        if (leaf != null && j < leaf.m && leaf.keys[j] == key) {
+            return leaf.values[j];
+        } else {
+            return defaultValue;
+        }
+    }
+
+    public boolean contains(long key) {
+        Leaf leaf = seekLeaf(key);
+        int j = LongNonLeaf.lowerBound(leaf.keys, leaf.m, key);
+        if (j == leaf.m) {
+            leaf = leaf.next;
+            j = 0;
+        }
+        return leaf != null && j < leaf.m && leaf.keys[j] == key;
+    }
+
+    private Cursor seek(long key) {
+        Leaf leaf = seekLeaf(key);
+        return new Cursor(leaf, LongNonLeaf.lowerBound(leaf.keys, leaf.m, key));
+    }
+
+    private Leaf seekLeaf(long key) {
+        Object x = root;
+        for (int ht = height; ht > 0; ht--) {
+            LongNonLeaf t = (LongNonLeaf) x;
+            x = t.children[t.seekIndex(key)];
+        }
+        return (Leaf) x;
+    }
+
+    /**
+     * Returns the values with keys in the given range in key order. Supports
+     * backpressure in the same way as {@link BTree#range(Object, Object)}.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<Long> range(long lowerInclusive, long upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> cursor.leaf.values[cursor.index]);
+    }
+
+    public Flowable<Entry<Long, Long>> rangeEntries(long lowerInclusive, long upperExclusive) {
+        return range(lowerInclusive, upperExclusive, cursor -> new Entry<Long, Long>(
+                cursor.leaf.keys[cursor.index], cursor.leaf.values[cursor.index]));
+    }
+
+    private <T> Flowable<T> range(long lowerInclusive, long upperExclusive, Function<Cursor, T> mapper) {
+        return Flowable.generate( //
+                () -> seek(lowerInclusive), //
+                (cursor, emitter) -> {
+                    if (cursor.leaf != null && cursor.leaf.keys[cursor.index] < upperExclusive) {
+                        emitter.onNext(mapper.apply(cursor));
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    public void put(long key, long value) {
+        Object u = insert(root, key, value, height);
+        size++;
+        if (u != null) {
+            // need to give root a new parent
+            root = LongNonLeaf.parentOf(firstKey(root), root, firstKey(u), u, maxChildren);
+            height++;
+        }
+    }
+
+    private Object insert(Object h, long key, long value, int ht) {
+        if (ht == 0) {
+            Leaf leaf = (Leaf) h;
+            // insert after any entries with an equal key
+            leaf.insert(LongNonLeaf.upperBound(leaf.keys, leaf.m, key), key, value);
+            return leaf.isFull() ? leaf.split() : null;
+        } else {
+            LongNonLeaf t = (LongNonLeaf) h;
+            int j = t.insertIndex(key);
+            Object u = insert(t.children[j], key, value, ht - 1);
+            if (u == null) {
+                return null;
+            }
+            t.insertChild(j + 1, firstKey(u), u);
+            return t.isFull() ? t.split() : null;
+        }
+    }
+
+    private static long firstKey(Object node) {
+        if (node instanceof LongNonLeaf) {
+            return ((LongNonLeaf) node).keys[0];
+        } else {
+            return ((Leaf) node).keys[0];
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @VisibleForTesting
+    int height() {
+        return height;
+    }
+
+    private static final class Leaf {
+
+        final long[] keys;
+        final long[] values;
+        int m; // number of entries
+        Leaf next;
+
+        Leaf(int maxChildren) {
+            this.keys = new long[maxChildren];
+            this.values = new long[maxChildren];
+        }
+
+        void insert(int j, long key, long value) {
+            System.arraycopy(keys, j, keys, j + 1, m - j);
+            System.arraycopy(values, j, values, j + 1, m - j);
+            keys[j] = key;
+            values[j] = value;
+            m++;
+        }
+
+        boolean isFull() {
+            return m == keys.length;
+        }
+
+        Leaf split() {
+            int half = m / 2;
+            Leaf t = new Leaf(keys.length);
+            t.m = m - half;
+            System.arraycopy(keys, half, t.keys, 0, t.m);
+            System.arraycopy(values, half, t.values, 0, t.m);
+            m = half;
+            t.next = next;
+            next = t;
+            return t;
+        }
+    }
+
+    private static final class Cursor {
+
+        Leaf leaf;
+        int index;
+
+        Cursor(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+            skipExhaustedLeaves();
+        }
+
+        void advance() {
+            index++;
+            skipExhaustedLeaves();
+        }
+
+        private void skipExhaustedLeaves() {
+            while (leaf != null && index >= leaf.m) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.davidmoten.gt.btree;
+
+// non-leaf node shared by the primitive long keyed trees, children are the
+// leaf type of the owning tree or LongNonLeaf
+final class LongNonLeaf {
+
+    final long[] keys;
+    final Object[] children;
+    int m; // number of children
+
+    LongNonLeaf(int maxChildren) {
+        this.keys = new long[maxChildren];
+        this.children = new Object[maxChildren];
+    }
+
+    static LongNonLeaf parentOf(long keyA, Object a, long keyB, Object b, int maxChildren) {
+        LongNonLeaf t = new LongNonLeaf(maxChildren);
+        t.keys[0] = keyA;
+        t.children[0] = a;
+        t.keys[1] = keyB;
+        t.children[1] = b;
+        t.m = 2;
+        return t;
+    }
+
+    /**
+     * Returns the index of the child whose subtree should hold the key on
+     * insert (the last child with smallest key &lt;= key).
+     */
+    int insertIndex(long key) {
+        return Math.max(0, upperBound(keys, m, key) - 1);
+    }
+
+    /**
+     * Returns the index of the child to descend to when seeking the first
+     * entry &gt;= key (the last child with smallest key &lt; key).
+     */
+    int seekIndex(long key) {
+        return Math.max(0, lowerBound(keys, m, key) - 1);
+    }
+
+    void insertChild(int j, long key, Object child) {
+        System.arraycopy(keys, j, keys, j + 1, m - j);
+        System.arraycopy(children, j, children, j + 1, m - j);
+        keys[j] = key;
+        children[j] = child;
+        m++;
+    }
+
+    boolean isFull() {
+        return m == keys.length;
+    }
+
+    LongNonLeaf split() {
+        int half = m / 2;
+        LongNonLeaf t = new LongNonLeaf(keys.length);
+        t.m = m - half;
+        System.arraycopy(keys, half, t.keys, 0, t.m);
+        System.arraycopy(children, half, t.children, 0, t.m);
+        for (int j = half; j < m; j++) {
+            children[j] = null;
+        }
+        m = half;
+        return t;
+    }
+
+    /**
+     * Returns the index of the first key in keys[0..n) that is greater than or
+     * equal to the given key, or n if there is no such key.
+     */
+    static int lowerBound(long[] keys, int n, long key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first key in keys[0..n) that is greater than
+     * the given key, or n if there is no such key.
+     */
+    static int upperBound(long[] keys, int n, long key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key < keys[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+}
@@ -1,25 +1,161 @@
 package org.davidmoten.gt.btree;
 
+/**
+ * A B-tree node. Leaf nodes hold keys and values, non-leaf nodes hold keys
+ * and children where {@code key(j)} is the smallest key in the subtree rooted
+ * at {@code child(j)}. Keys within a node are in ascending order.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
 public interface Node<Key, Value> {
 
+    boolean isLeaf();
+
+    int numEntries();
+
     Key key(int j);
 
+    /**
+     * Returns the j-th value of a leaf node.
+     * 
+     * @param j
+     *            index
+     * @return value at index j
+     * @throws UnsupportedOperationException
+     *             if this is a non-leaf node
+     */
     Value value(int j);
 
-    Node<Key, Value> next(int j);
+    /**
+     * Returns the j-th child of a non-leaf node.
+     * 
+     * @param j
+     *            index
+     * @return child at index j
+     * @throws UnsupportedOperationException
+     *             if this is a leaf node
+     */
+    Node<Key, Value> child(int j);
 
-    void setEntry(int i, Entry<Key, Value> entry);
+    /**
+     * Returns the number of entries in the subtree rooted at the j-th child of
+     * a non-leaf node. Counts are maintained by {@link BTree}, a child added
+     * with {@link #insertChild(int, Object, Node)} has a count of zero until it
+     * is set.
+     * 
+     * @param j
+     *            index
+     * @return number of entries in the subtree of child j
+     * @throws UnsupportedOperationException
+     *             if this is a leaf node
+     */
+    long count(int j);
 
-    void insert(int j, Entry<Key, Value> t);
+    /**
+     * Sets the number of entries in the subtree rooted at the j-th child of a
+     * non-leaf node.
+     * 
+     * @param j
+     *            index
+     * @param count
+     *            number of entries in the subtree of child j
+     * @throws UnsupportedOperationException
+     *             if this is a leaf node
+     */
+    void setCount(int j, long count);
 
-    Entry<Key, Value> entry(int i);
+    /**
+     * Returns the leaf node immediately to the right of this leaf node or null
+     * if this is the last leaf node.
+     * 
+     * @return next leaf node or null
+     * @throws UnsupportedOperationException
+     *             if this is a non-leaf node
+     */
+    Node<Key, Value> nextLeaf();
 
-    int numEntries();
+    /**
+     * Inserts the key and value into a leaf node at index j shifting the
+     * entries at j and above to the right.
+     * 
+     * @param j
+     *            index
+     * @param key
+     *            key
+     * @param value
+     *            value
+     * @throws UnsupportedOperationException
+     *             if this is a non-leaf node
+     */
+    void insert(int j, Key key, Value value);
+
+    /**
+     * Inserts the key and child into a non-leaf node at index j shifting the
+     * entries at j and above to the right.
+     * 
+     * @param j
+     *            index
+     * @param key
+     *            smallest key in the child subtree
+     * @param child
+     *            child node
+     * @throws UnsupportedOperationException
+     *             if this is a leaf node
+     */
+    void insertChild(int j, Key key, Node<Key, Value> child);
+
+    /**
+     * Removes the entries (or children) at indexes {@code from} inclusive to
+     * {@code to} exclusive shifting the entries above to the left. Removed
+     * children are not freed.
+     * 
+     * @param from
+     *            first index to remove
+     * @param to
+     *            index after the last index to remove
+     */
+    void remove(int from, int to);
+
+    /**
+     * Sets the leaf node immediately to the right of this leaf node. Used to
+     * unlink leaves that are removed from the tree.
+     * 
+     * @param next
+     *            next leaf node or null if this is the last leaf node
+     * @throws UnsupportedOperationException
+     *             if this is a non-leaf node
+     */
+    void setNextLeaf(Node<Key, Value> next);
+
+    /**
+     * Releases the storage held by this node once it has been removed from
+     * the tree. The node must not be used afterwards.
+     */
+    void free();
 
     boolean isFull();
 
+    /**
+     * Moves the upper half of the entries of this node into a new node of the
+     * same type and returns the new node. If this is a leaf node then the new
+     * node is linked in as its next leaf.
+     * 
+     * @return new node holding the upper half of the entries
+     */
     Node<Key, Value> split();
 
+    /**
+     * Returns a new empty node of the same type as this node. If this is a
+     * leaf node then the new node is linked in as its next leaf. Used to build
+     * a tree from left to right without splitting.
+     * 
+     * @return new empty node
+     */
+    Node<Key, Value> createSibling();
+
     Node<Key, Value> makeParentWith(Node<Key, Value> u);
 
-}
\ No newline at end of file
+}
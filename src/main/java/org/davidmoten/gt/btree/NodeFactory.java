@@ -1,6 +1,14 @@
 package org.davidmoten.gt.btree;
 
-public interface NodeFactory<Key,Value> {
+public interface NodeFactory<Key, Value> {
 
-    Node<Key, Value> create(int size);
+    /**
+     * Returns a new empty leaf node that can hold up to
+     * {@code maxChildren - 1} entries before it must be split.
+     * 
+     * @param maxChildren
+     *            maximum number of entries in a node
+     * @return new empty leaf node
+     */
+    Node<Key, Value> createLeaf(int maxChildren);
 }
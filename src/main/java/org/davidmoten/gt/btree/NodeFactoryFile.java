@@ -1,17 +1,103 @@
 package org.davidmoten.gt.btree;
 
-import java.io.File;
-import java.io.Serializable;
+import org.davidmoten.gt.btree.ro.KeySerializer;
+import org.davidmoten.gt.btree.ro.Serializer;
 
-public class NodeFactoryFile<Key extends Serializable, Value extends Serializable>
-        implements NodeFactory<Key, Value> {
+import com.github.davidmoten.guavamini.Preconditions;
 
-    int fileNo = 0;
+/**
+ * Creates {@link NodeFile} nodes, one node per page of the given
+ * {@link PageStore}. Wrap the store in a {@link PageCache} to bound the memory
+ * used by pages.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+public final class NodeFactoryFile<Key, Value> implements NodeFactory<Key, Value> {
+
+    private final PageStore pages;
+    private final KeySerializer<Key> keySerializer;
+    private final Serializer<Value> valueSerializer;
+    private final int maxValueBytes;
+
+    // mutable
+    private int maxChildren;
+
+    /**
+     * Constructor.
+     *
+     * @param pages
+     *            page store
+     * @param keySerializer
+     *            key serializer
+     * @param valueSerializer
+     *            value serializer
+     * @param maxValueBytes
+     *            maximum length of a serialized value
+     */
+    public NodeFactoryFile(PageStore pages, KeySerializer<Key> keySerializer,
+            Serializer<Value> valueSerializer, int maxValueBytes) {
+        Preconditions.checkNotNull(pages, "pages cannot be null");
+        Preconditions.checkNotNull(keySerializer, "keySerializer cannot be null");
+        Preconditions.checkNotNull(valueSerializer, "valueSerializer cannot be null");
+        Preconditions.checkArgument(maxValueBytes > 0, "maxValueBytes must be positive");
+        this.pages = pages;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.maxValueBytes = maxValueBytes;
+    }
+
+    /**
+     * Constructor for values serialized to a fixed size.
+     *
+     * @param pages
+     *            page store
+     * @param keySerializer
+     *            key serializer
+     * @param valueSerializer
+     *            value serializer with a fixed size
+     */
+    public NodeFactoryFile(PageStore pages, KeySerializer<Key> keySerializer,
+            Serializer<Value> valueSerializer) {
+        this(pages, keySerializer, valueSerializer,
+                valueSerializer.size().orElseThrow(() -> new IllegalArgumentException(
+                        "valueSerializer must have a fixed size or maxValueBytes must be specified")));
+    }
 
     @Override
-    public Node<Key, Value> create(int size) {
-        fileNo++;
-        return new NodeFile<>(new File("target/" + fileNo + ".db"), 0);
+    public Node<Key, Value> createLeaf(int maxChildren) {
+        Preconditions.checkArgument(this.maxChildren == 0 || this.maxChildren == maxChildren,
+                "factory already in use with a different maxChildren");
+        int heapCapacity = pages.pageSize() - NodeFile.HEADER_SIZE
+                - maxChildren * (keySerializer.size() + NodeFile.SLOT_SIZE);
+        Preconditions.checkArgument(heapCapacity >= 4 * maxValueBytes,
+                "pageSize is too small for maxChildren and maxValueBytes");
+        Preconditions.checkArgument(heapCapacity >= maxChildren * NodeFile.COUNT_SIZE,
+                "pageSize is too small for maxChildren");
+        this.maxChildren = maxChildren;
+        return NodeFile.createLeaf(this);
+    }
+
+    PageStore pages() {
+        return pages;
+    }
+
+    int maxChildren() {
+        return maxChildren;
+    }
+
+    int maxValueBytes() {
+        return maxValueBytes;
+    }
+
+    KeySerializer<Key> keySerializer() {
+        return keySerializer;
+    }
+
+    Serializer<Value> valueSerializer() {
+        return valueSerializer;
     }
 
 }
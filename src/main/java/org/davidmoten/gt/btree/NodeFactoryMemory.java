@@ -1,10 +1,10 @@
 package org.davidmoten.gt.btree;
 
-public class NodeFactoryMemory<Key,Value> implements NodeFactory<Key,Value> {
+public class NodeFactoryMemory<Key, Value> implements NodeFactory<Key, Value> {
 
     @Override
-    public Node<Key, Value> create(int size) {
-        return new NodeMemory<>(size);
+    public Node<Key, Value> createLeaf(int maxChildren) {
+        return new LeafMemory<>(maxChildren);
     }
 
 }
@@ -0,0 +1,65 @@
+package org.davidmoten.gt.btree;
+
+import org.davidmoten.gt.btree.ro.KeySerializer;
+import org.davidmoten.gt.btree.ro.Serializer;
+
+/**
+ * Creates nodes stored off-heap in the pages of an {@link Arena}. Nodes use
+ * the fixed page layout of {@link NodeFile} with keys encoded by a fixed size
+ * {@link KeySerializer}, so a {@link BTree} using this factory holds no
+ * per-entry objects on the heap: node handles are created on demand while
+ * descending and are garbage as soon as the operation completes.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+public final class NodeFactoryOffHeap<Key, Value> implements NodeFactory<Key, Value> {
+
+    private final Arena arena;
+    private final NodeFactoryFile<Key, Value> factory;
+
+    /**
+     * Constructor.
+     *
+     * @param arena
+     *            arena holding the pages
+     * @param keySerializer
+     *            key serializer
+     * @param valueSerializer
+     *            value serializer
+     * @param maxValueBytes
+     *            maximum length of a serialized value
+     */
+    public NodeFactoryOffHeap(Arena arena, KeySerializer<Key> keySerializer, Serializer<Value> valueSerializer,
+            int maxValueBytes) {
+        this.arena = arena;
+        this.factory = new NodeFactoryFile<Key, Value>(arena, keySerializer, valueSerializer, maxValueBytes);
+    }
+
+    /**
+     * Constructor for values serialized to a fixed size.
+     *
+     * @param arena
+     *            arena holding the pages
+     * @param keySerializer
+     *            key serializer
+     * @param valueSerializer
+     *            value serializer with a fixed size
+     */
+    public NodeFactoryOffHeap(Arena arena, KeySerializer<Key> keySerializer, Serializer<Value> valueSerializer) {
+        this.arena = arena;
+        this.factory = new NodeFactoryFile<Key, Value>(arena, keySerializer, valueSerializer);
+    }
+
+    @Override
+    public Node<Key, Value> createLeaf(int maxChildren) {
+        return factory.createLeaf(maxChildren);
+    }
+
+    public Arena arena() {
+        return arena;
+    }
+
+}
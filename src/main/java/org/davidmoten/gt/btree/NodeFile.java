@@ -1,108 +1,494 @@
 package org.davidmoten.gt.btree;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
 import java.nio.ByteBuffer;
 
-public class NodeFile<Key extends Serializable, Value extends Serializable>
-        implements Node<Key, Value> {
+import com.github.davidmoten.guavamini.Preconditions;
 
-    private final File file;
-    private final int position;
+/**
+ * A node stored in a fixed layout page of the {@link PageStore} of a
+ * {@link NodeFactoryFile}. The page is pinned only for the duration of each
+ * method call. Keys have a fixed size so the j-th key (and the j-th child or
+ * value slot) is read in O(1) without reading the rest of the node. The page
+ * layout is:
+ *
+ * <pre>
+ * offset           size                    content
+ * 0                1                       type (0 = leaf, 1 = non-leaf)
+ * 4                4                       number of entries
+ * 8                8                       page id of next leaf (-1 if none)
+ * 16               4                       heap bytes used (including garbage)
+ * 20               4                       heap bytes live
+ * 24               maxChildren * keySize   keys
+ * slotsStart       maxChildren * 8         slots, for a leaf the int offset and int
+ *                                          length of the value in the heap, for a
+ *                                          non-leaf the long page id of the child
+ * heapStart        pageSize - heapStart    serialized values (leaf), int subtree
+ *                                          count of each child (non-leaf)
+ * </pre>
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+public final class NodeFile<Key, Value> implements Node<Key, Value> {
 
-    public NodeFile(File file, int position) {
-        this.file = file;
-        this.position = position;
+    private static final byte TYPE_LEAF = 0;
+    private static final byte TYPE_NON_LEAF = 1;
+    private static final long NO_PAGE = -1;
+
+    private static final int TYPE_OFFSET = 0;
+    private static final int NUM_ENTRIES_OFFSET = 4;
+    private static final int NEXT_LEAF_OFFSET = 8;
+    private static final int HEAP_USED_OFFSET = 16;
+    private static final int HEAP_LIVE_OFFSET = 20;
+    static final int HEADER_SIZE = 24;
+    static final int SLOT_SIZE = 8;
+    // the size of a BTree is an int so subtree counts are too
+    static final int COUNT_SIZE = 4;
+
+    private final NodeFactoryFile<Key, Value> factory;
+    private final long pageId;
+
+    NodeFile(NodeFactoryFile<Key, Value> factory, long pageId) {
+        this.factory = factory;
+        this.pageId = pageId;
+    }
+
+    static <Key, Value> NodeFile<Key, Value> createLeaf(NodeFactoryFile<Key, Value> factory) {
+        return create(factory, TYPE_LEAF);
+    }
+
+    private static <Key, Value> NodeFile<Key, Value> create(NodeFactoryFile<Key, Value> factory,
+            byte type) {
+        NodeFile<Key, Value> node = new NodeFile<Key, Value>(factory, factory.pages().allocate());
+        ByteBuffer b = node.pin();
+        try {
+            b.put(TYPE_OFFSET, type);
+            b.putInt(NUM_ENTRIES_OFFSET, 0);
+            b.putLong(NEXT_LEAF_OFFSET, NO_PAGE);
+            b.putInt(HEAP_USED_OFFSET, 0);
+            b.putInt(HEAP_LIVE_OFFSET, 0);
+        } finally {
+            node.unpin(true);
+        }
+        return node;
+    }
+
+    long pageId() {
+        return pageId;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Key key(int j) {
-        return (Key) readObject(j);
+    public boolean isLeaf() {
+        ByteBuffer b = pin();
+        try {
+            return b.get(TYPE_OFFSET) == TYPE_LEAF;
+        } finally {
+            unpin(false);
+        }
     }
 
-    private Object readObject(int j) {
+    @Override
+    public int numEntries() {
+        ByteBuffer b = pin();
         try {
-            try (FileInputStream fis = new FileInputStream(file)) {
-                fis.skip(position + 8);
-                ObjectInputStream ois = new ObjectInputStream(fis);
-                Object o = null;
-                for (int i = 0; i <= j; i++) {
-                    o = ois.readObject();
-                }
-                return o;
-            }
+            return b.getInt(NUM_ENTRIES_OFFSET);
+        } finally {
+            unpin(false);
+        }
+    }
+
+    @Override
+    public Key key(int j) {
+        final byte[] bytes;
+        ByteBuffer b = pin();
+        try {
+            bytes = read(b, keyOffset(j), factory.keySerializer().size());
+        } finally {
+            unpin(false);
+        }
+        try {
+            return factory.keySerializer().deserialize(bytes);
         } catch (IOException | ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Value value(int j) {
-        return (Value) readObject(j);
+        final byte[] bytes;
+        ByteBuffer b = pin();
+        try {
+            checkLeaf(b);
+            int slot = slotOffset(j);
+            bytes = read(b, heapStart() + b.getInt(slot), b.getInt(slot + 4));
+        } finally {
+            unpin(false);
+        }
+        try {
+            return factory.valueSerializer().deserialize(bytes);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Node<Key, Value> child(int j) {
+        ByteBuffer b = pin();
+        try {
+            checkNonLeaf(b);
+            return new NodeFile<Key, Value>(factory, b.getLong(slotOffset(j)));
+        } finally {
+            unpin(false);
+        }
+    }
+
+    @Override
+    public long count(int j) {
+        ByteBuffer b = pin();
+        try {
+            checkNonLeaf(b);
+            return b.getInt(countOffset(j));
+        } finally {
+            unpin(false);
+        }
+    }
+
+    @Override
+    public void setCount(int j, long count) {
+        ByteBuffer b = pin();
+        try {
+            checkNonLeaf(b);
+            b.putInt(countOffset(j), (int) count);
+        } finally {
+            unpin(true);
+        }
     }
 
     @Override
-    public Node<Key, Value> next(int j) {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            fis.skip(position);
-            byte[] a = new byte[8];
-            fis.read(a);
-            ByteBuffer b = ByteBuffer.wrap(a);
-            b.position(0);
-            int nextFileNo = b.getInt();
-            int nextPosition = b.getInt();
-            File nextFile = new File("target/" + nextFileNo + ".db");
-            return new NodeFile<Key, Value>(nextFile, nextPosition);
+    public Node<Key, Value> nextLeaf() {
+        ByteBuffer b = pin();
+        try {
+            checkLeaf(b);
+            long next = b.getLong(NEXT_LEAF_OFFSET);
+            if (next == NO_PAGE) {
+                return null;
+            } else {
+                return new NodeFile<Key, Value>(factory, next);
+            }
+        } finally {
+            unpin(false);
+        }
+    }
+
+    @Override
+    public void insert(int j, Key key, Value value) {
+        byte[] bytes;
+        try {
+            bytes = factory.valueSerializer().serialize(value);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        Preconditions.checkArgument(bytes.length <= factory.maxValueBytes(),
+                "serialized value is longer than maxValueBytes");
+        ByteBuffer b = pin();
+        try {
+            checkLeaf(b);
+            if (b.getInt(HEAP_USED_OFFSET) + bytes.length > heapCapacity()) {
+                compact(b);
+            }
+            int heapUsed = b.getInt(HEAP_USED_OFFSET);
+            write(b, heapStart() + heapUsed, bytes);
+            b.putInt(HEAP_USED_OFFSET, heapUsed + bytes.length);
+            b.putInt(HEAP_LIVE_OFFSET, b.getInt(HEAP_LIVE_OFFSET) + bytes.length);
+            int slot = openGap(b, j, key);
+            b.putInt(slot, heapUsed);
+            b.putInt(slot + 4, bytes.length);
+        } finally {
+            unpin(true);
+        }
     }
 
     @Override
-    public void setEntry(int i, Entry<Key, Value> entry) {
-        // TODO Auto-generated method stub
+    public void insertChild(int j, Key key, Node<Key, Value> child) {
+        ByteBuffer b = pin();
+        try {
+            checkNonLeaf(b);
+            int slot = openGap(b, j, key);
+            b.putLong(slot, ((NodeFile<Key, Value>) child).pageId);
+            b.putInt(countOffset(j), 0);
+        } finally {
+            unpin(true);
+        }
+    }
 
+    /**
+     * Shifts the keys, slots (and counts of a non-leaf) at j and above one
+     * place to the right, writes the key at j and increments the number of
+     * entries.
+     *
+     * @return offset of the slot at j
+     */
+    private int openGap(ByteBuffer b, int j, Key key) {
+        int m = b.getInt(NUM_ENTRIES_OFFSET);
+        int keySize = factory.keySerializer().size();
+        move(b, keyOffset(j), keyOffset(j + 1), (m - j) * keySize);
+        move(b, slotOffset(j), slotOffset(j + 1), (m - j) * SLOT_SIZE);
+        if (b.get(TYPE_OFFSET) != TYPE_LEAF) {
+            move(b, countOffset(j), countOffset(j + 1), (m - j) * COUNT_SIZE);
+        }
+        try {
+            write(b, keyOffset(j), factory.keySerializer().serialize(key));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        b.putInt(NUM_ENTRIES_OFFSET, m + 1);
+        return slotOffset(j);
     }
 
     @Override
-    public void insert(int j, Entry<Key, Value> t) {
-        // TODO Auto-generated method stub
-
+    public void remove(int from, int to) {
+        ByteBuffer b = pin();
+        try {
+            int m = b.getInt(NUM_ENTRIES_OFFSET);
+            if (b.get(TYPE_OFFSET) == TYPE_LEAF) {
+                // the values become garbage in the heap until the next compaction
+                int removed = 0;
+                for (int j = from; j < to; j++) {
+                    removed += b.getInt(slotOffset(j) + 4);
+                }
+                b.putInt(HEAP_LIVE_OFFSET, b.getInt(HEAP_LIVE_OFFSET) - removed);
+            } else {
+                move(b, countOffset(to), countOffset(from), (m - to) * COUNT_SIZE);
+            }
+            int keySize = factory.keySerializer().size();
+            move(b, keyOffset(to), keyOffset(from), (m - to) * keySize);
+            move(b, slotOffset(to), slotOffset(from), (m - to) * SLOT_SIZE);
+            b.putInt(NUM_ENTRIES_OFFSET, m - (to - from));
+        } finally {
+            unpin(true);
+        }
     }
 
     @Override
-    public Entry<Key, Value> entry(int i) {
-        // TODO Auto-generated method stub
-        return null;
+    public void setNextLeaf(Node<Key, Value> next) {
+        ByteBuffer b = pin();
+        try {
+            checkLeaf(b);
+            b.putLong(NEXT_LEAF_OFFSET, next == null ? NO_PAGE : ((NodeFile<Key, Value>) next).pageId);
+        } finally {
+            unpin(true);
+        }
     }
 
+    /**
+     * Returns the page of this node to the page store.
+     */
     @Override
-    public int numEntries() {
-        // TODO Auto-generated method stub
-        return 0;
+    public void free() {
+        factory.pages().free(pageId);
     }
 
     @Override
     public boolean isFull() {
-        // TODO Auto-generated method stub
-        return false;
+        ByteBuffer b = pin();
+        try {
+            if (b.getInt(NUM_ENTRIES_OFFSET) == factory.maxChildren()) {
+                return true;
+            } else if (b.get(TYPE_OFFSET) == TYPE_LEAF) {
+                // must always have room for another value after compaction
+                return heapCapacity() - b.getInt(HEAP_LIVE_OFFSET) < factory.maxValueBytes();
+            } else {
+                return false;
+            }
+        } finally {
+            unpin(false);
+        }
     }
 
     @Override
     public Node<Key, Value> split() {
-        // TODO Auto-generated method stub
-        return null;
+        ByteBuffer b = pin();
+        try {
+            boolean leaf = b.get(TYPE_OFFSET) == TYPE_LEAF;
+            NodeFile<Key, Value> t = create(factory, leaf ? TYPE_LEAF : TYPE_NON_LEAF);
+            ByteBuffer tb = t.pin();
+            try {
+                int m = b.getInt(NUM_ENTRIES_OFFSET);
+                int half = leaf ? leafSplitIndex(b, m) : m / 2;
+                int keySize = factory.keySerializer().size();
+                write(tb, keyOffset(0), read(b, keyOffset(half), (m - half) * keySize));
+                if (leaf) {
+                    int heapUsed = 0;
+                    for (int j = half; j < m; j++) {
+                        int slot = slotOffset(j);
+                        int length = b.getInt(slot + 4);
+                        write(tb, heapStart() + heapUsed,
+                                read(b, heapStart() + b.getInt(slot), length));
+                        tb.putInt(slotOffset(j - half), heapUsed);
+                        tb.putInt(slotOffset(j - half) + 4, length);
+                        heapUsed += length;
+                    }
+                    tb.putInt(HEAP_USED_OFFSET, heapUsed);
+                    tb.putInt(HEAP_LIVE_OFFSET, heapUsed);
+                    tb.putLong(NEXT_LEAF_OFFSET, b.getLong(NEXT_LEAF_OFFSET));
+                    b.putLong(NEXT_LEAF_OFFSET, t.pageId);
+                    b.putInt(NUM_ENTRIES_OFFSET, half);
+                    compact(b);
+                } else {
+                    write(tb, slotOffset(0), read(b, slotOffset(half), (m - half) * SLOT_SIZE));
+                    write(tb, countOffset(0), read(b, countOffset(half), (m - half) * COUNT_SIZE));
+                    b.putInt(NUM_ENTRIES_OFFSET, half);
+                }
+                tb.putInt(NUM_ENTRIES_OFFSET, m - half);
+            } finally {
+                t.unpin(true);
+            }
+            return t;
+        } finally {
+            unpin(true);
+        }
+    }
+
+    /**
+     * Returns the index at which to split a leaf with m entries. That is the
+     * middle entry unless a half would still be full by bytes (values vary in
+     * length) and the next insert into it would overflow the heap, in which
+     * case it is the index that divides the live heap bytes most evenly.
+     * Because the heap holds at least four maximum length values neither half
+     * is then full.
+     */
+    private int leafSplitIndex(ByteBuffer b, int m) {
+        int[] prefix = new int[m + 1];
+        for (int j = 0; j < m; j++) {
+            prefix[j + 1] = prefix[j] + b.getInt(slotOffset(j) + 4);
+        }
+        int total = prefix[m];
+        int limit = heapCapacity() - factory.maxValueBytes();
+        int half = m / 2;
+        if (prefix[half] <= limit && total - prefix[half] <= limit) {
+            return half;
+        }
+        int best = 1;
+        for (int j = 2; j < m; j++) {
+            if (Math.max(prefix[j], total - prefix[j]) < Math.max(prefix[best], total - prefix[best])) {
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Node<Key, Value> createSibling() {
+        ByteBuffer b = pin();
+        try {
+            byte type = b.get(TYPE_OFFSET);
+            NodeFile<Key, Value> t = create(factory, type);
+            if (type == TYPE_LEAF) {
+                ByteBuffer tb = t.pin();
+                try {
+                    tb.putLong(NEXT_LEAF_OFFSET, b.getLong(NEXT_LEAF_OFFSET));
+                } finally {
+                    t.unpin(true);
+                }
+                b.putLong(NEXT_LEAF_OFFSET, t.pageId);
+            }
+            return t;
+        } finally {
+            unpin(true);
+        }
     }
 
     @Override
     public Node<Key, Value> makeParentWith(Node<Key, Value> u) {
-        // TODO Auto-generated method stub
-        return null;
+        NodeFile<Key, Value> t = create(factory, TYPE_NON_LEAF);
+        t.insertChild(0, key(0), this);
+        t.insertChild(1, u.key(0), u);
+        return t;
+    }
+
+    /**
+     * Rewrites the values of the entries contiguously at the start of the
+     * heap, discarding the garbage left by splits.
+     */
+    private void compact(ByteBuffer b) {
+        int m = b.getInt(NUM_ENTRIES_OFFSET);
+        byte[][] values = new byte[m][];
+        for (int j = 0; j < m; j++) {
+            int slot = slotOffset(j);
+            values[j] = read(b, heapStart() + b.getInt(slot), b.getInt(slot + 4));
+        }
+        int heapUsed = 0;
+        for (int j = 0; j < m; j++) {
+            write(b, heapStart() + heapUsed, values[j]);
+            b.putInt(slotOffset(j), heapUsed);
+            heapUsed += values[j].length;
+        }
+        b.putInt(HEAP_USED_OFFSET, heapUsed);
+        b.putInt(HEAP_LIVE_OFFSET, heapUsed);
+    }
+
+    private ByteBuffer pin() {
+        return factory.pages().pin(pageId);
+    }
+
+    private void unpin(boolean dirty) {
+        factory.pages().unpin(pageId, dirty);
+    }
+
+    private int keyOffset(int j) {
+        return HEADER_SIZE + j * factory.keySerializer().size();
+    }
+
+    private int slotOffset(int j) {
+        return HEADER_SIZE + factory.maxChildren() * factory.keySerializer().size() + j * SLOT_SIZE;
+    }
+
+    // the counts of a non-leaf are held where the heap of a leaf is
+    private int countOffset(int j) {
+        return heapStart() + j * COUNT_SIZE;
+    }
+
+    private int heapStart() {
+        return slotOffset(factory.maxChildren());
+    }
+
+    private int heapCapacity() {
+        return factory.pages().pageSize() - heapStart();
+    }
+
+    private static void checkLeaf(ByteBuffer b) {
+        if (b.get(TYPE_OFFSET) != TYPE_LEAF) {
+            throw new UnsupportedOperationException("non-leaf node has no values");
+        }
+    }
+
+    private static void checkNonLeaf(ByteBuffer b) {
+        if (b.get(TYPE_OFFSET) == TYPE_LEAF) {
+            throw new UnsupportedOperationException("leaf node has no children");
+        }
+    }
+
+    private static byte[] read(ByteBuffer b, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer d = b.duplicate();
+        d.position(offset);
+        d.get(bytes);
+        return bytes;
+    }
+
+    private static void write(ByteBuffer b, int offset, byte[] bytes) {
+        ByteBuffer d = b.duplicate();
+        d.position(offset);
+        d.put(bytes);
+    }
+
+    private static void move(ByteBuffer b, int from, int to, int length) {
+        if (length > 0) {
+            write(b, to, read(b, from, length));
+        }
     }
 
 }
@@ -0,0 +1,139 @@
+package org.davidmoten.gt.btree;
+
+// keys, children and subtree counts are held in parallel arrays sized to the
+// max children
+public final class NonLeafMemory<Key, Value> implements Node<Key, Value> {
+
+    private final Key[] keys;
+    private final Node<Key, Value>[] children;
+    private final long[] counts;
+    private int m; // number of children
+
+    @SuppressWarnings("unchecked")
+    public NonLeafMemory(int maxChildren) {
+        this.keys = (Key[]) new Object[maxChildren];
+        this.children = (Node<Key, Value>[]) new Node<?, ?>[maxChildren];
+        this.counts = new long[maxChildren];
+    }
+
+    static <Key, Value> NonLeafMemory<Key, Value> parentOf(Node<Key, Value> a, Node<Key, Value> b,
+            int maxChildren) {
+        NonLeafMemory<Key, Value> t = new NonLeafMemory<Key, Value>(maxChildren);
+        t.insertChild(0, a.key(0), a);
+        t.insertChild(1, b.key(0), b);
+        return t;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return false;
+    }
+
+    @Override
+    public int numEntries() {
+        return m;
+    }
+
+    @Override
+    public Key key(int j) {
+        return keys[j];
+    }
+
+    @Override
+    public Value value(int j) {
+        throw new UnsupportedOperationException("non-leaf node has no values");
+    }
+
+    @Override
+    public Node<Key, Value> child(int j) {
+        return children[j];
+    }
+
+    @Override
+    public long count(int j) {
+        return counts[j];
+    }
+
+    @Override
+    public void setCount(int j, long count) {
+        counts[j] = count;
+    }
+
+    @Override
+    public Node<Key, Value> nextLeaf() {
+        throw new UnsupportedOperationException("non-leaf node is not linked");
+    }
+
+    @Override
+    public void insert(int j, Key key, Value value) {
+        throw new UnsupportedOperationException("non-leaf node has no values");
+    }
+
+    @Override
+    public void insertChild(int j, Key key, Node<Key, Value> child) {
+        System.arraycopy(keys, j, keys, j + 1, m - j);
+        System.arraycopy(children, j, children, j + 1, m - j);
+        System.arraycopy(counts, j, counts, j + 1, m - j);
+        keys[j] = key;
+        children[j] = child;
+        counts[j] = 0;
+        m++;
+    }
+
+    @Override
+    public void remove(int from, int to) {
+        System.arraycopy(keys, to, keys, from, m - to);
+        System.arraycopy(children, to, children, from, m - to);
+        System.arraycopy(counts, to, counts, from, m - to);
+        int m2 = m - (to - from);
+        // clear references so they can be garbage collected
+        for (int j = m2; j < m; j++) {
+            keys[j] = null;
+            children[j] = null;
+        }
+        m = m2;
+    }
+
+    @Override
+    public void setNextLeaf(Node<Key, Value> next) {
+        throw new UnsupportedOperationException("non-leaf node is not linked");
+    }
+
+    @Override
+    public void free() {
+        // nothing to release, the node is garbage collected
+    }
+
+    @Override
+    public boolean isFull() {
+        return m == keys.length;
+    }
+
+    @Override
+    public Node<Key, Value> split() {
+        int half = m / 2;
+        NonLeafMemory<Key, Value> t = new NonLeafMemory<Key, Value>(keys.length);
+        t.m = m - half;
+        System.arraycopy(keys, half, t.keys, 0, t.m);
+        System.arraycopy(children, half, t.children, 0, t.m);
+        System.arraycopy(counts, half, t.counts, 0, t.m);
+        // clear references so they can be garbage collected
+        for (int j = half; j < m; j++) {
+            keys[j] = null;
+            children[j] = null;
+        }
+        m = half;
+        return t;
+    }
+
+    @Override
+    public Node<Key, Value> createSibling() {
+        return new NonLeafMemory<Key, Value>(keys.length);
+    }
+
+    @Override
+    public Node<Key, Value> makeParentWith(Node<Key, Value> u) {
+        return parentOf(this, u, keys.length);
+    }
+
+}
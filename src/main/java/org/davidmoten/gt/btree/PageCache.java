@@ -0,0 +1,211 @@
+package org.davidmoten.gt.btree;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * A bounded buffer pool in front of another {@link PageStore}. Pages are
+ * copied into a fixed number of off-heap frames on first use and written back
+ * to the underlying store when a dirty frame is evicted or on
+ * {@link #flush()}.
+ *
+ * <p>
+ * Eviction uses the generalized CLOCK algorithm: each frame has a usage count
+ * that is incremented (up to a maximum) on every hit and decremented as the
+ * clock hand passes, and the first unpinned frame found with a zero count is
+ * evicted. Root and internal pages are hit on every descent so they keep a
+ * saturated count and stay cached while leaves cycle through the remaining
+ * frames.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public final class PageCache implements PageStore {
+
+    private static final int MAX_USAGE = 5;
+    private static final long NO_PAGE = -1;
+
+    private final PageStore store;
+    private final int pageSize;
+    private final ByteBuffer[] frames;
+    private final long[] pageIds;
+    private final int[] pins;
+    private final int[] usage;
+    private final boolean[] dirty;
+    private final Map<Long, Integer> frameIndex = new HashMap<>();
+
+    // mutable
+    private int hand;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param store
+     *            underlying store
+     * @param maxBytes
+     *            maximum number of bytes of page data held by the cache
+     */
+    public PageCache(PageStore store, long maxBytes) {
+        Preconditions.checkNotNull(store, "store cannot be null");
+        this.store = store;
+        this.pageSize = store.pageSize();
+        long numFrames = maxBytes / pageSize;
+        Preconditions.checkArgument(numFrames >= 4, "maxBytes must hold at least 4 pages");
+        Preconditions.checkArgument(numFrames <= Integer.MAX_VALUE, "maxBytes is too large");
+        int n = (int) numFrames;
+        this.frames = new ByteBuffer[n];
+        this.pageIds = new long[n];
+        this.pins = new int[n];
+        this.usage = new int[n];
+        this.dirty = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            frames[i] = ByteBuffer.allocateDirect(pageSize);
+            pageIds[i] = NO_PAGE;
+        }
+    }
+
+    @Override
+    public int pageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public long allocate() {
+        return store.allocate();
+    }
+
+    @Override
+    public void free(long pageId) {
+        Integer index = frameIndex.get(pageId);
+        if (index != null) {
+            Preconditions.checkArgument(pins[index] == 0, "page is pinned");
+            frameIndex.remove(pageId);
+            pageIds[index] = NO_PAGE;
+            dirty[index] = false;
+            usage[index] = 0;
+        }
+        store.free(pageId);
+    }
+
+    @Override
+    public ByteBuffer pin(long pageId) {
+        Integer index = frameIndex.get(pageId);
+        final int i;
+        if (index != null) {
+            hits++;
+            i = index;
+            usage[i] = Math.min(MAX_USAGE, usage[i] + 1);
+        } else {
+            misses++;
+            i = victim();
+            load(i, pageId);
+            usage[i] = 1;
+        }
+        pins[i]++;
+        return frames[i];
+    }
+
+    @Override
+    public void unpin(long pageId, boolean dirty) {
+        Integer index = frameIndex.get(pageId);
+        Preconditions.checkArgument(index != null && pins[index] > 0, "page is not pinned");
+        pins[index]--;
+        this.dirty[index] |= dirty;
+    }
+
+    @Override
+    public void flush() {
+        for (int i = 0; i < frames.length; i++) {
+            if (dirty[i]) {
+                writeBack(i);
+            }
+        }
+        store.flush();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "PageCache [frames=" + frames.length + ", pageSize=" + pageSize + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    private int victim() {
+        // each full sweep decrements every unpinned usage count so a zero count
+        // is found within MAX_USAGE + 1 sweeps unless every frame is pinned
+        int limit = frames.length * (MAX_USAGE + 1);
+        for (int k = 0; k <= limit; k++) {
+            int i = hand;
+            hand = (hand + 1) % frames.length;
+            if (pageIds[i] == NO_PAGE) {
+                return i;
+            } else if (pins[i] == 0) {
+                if (usage[i] == 0) {
+                    evict(i);
+                    return i;
+                } else {
+                    usage[i]--;
+                }
+            }
+        }
+        throw new IllegalStateException("all pages in the cache are pinned");
+    }
+
+    private void evict(int i) {
+        if (dirty[i]) {
+            writeBack(i);
+        }
+        frameIndex.remove(pageIds[i]);
+        pageIds[i] = NO_PAGE;
+        evictions++;
+    }
+
+    private void load(int i, long pageId) {
+        ByteBuffer src = store.pin(pageId);
+        try {
+            copy(src, frames[i]);
+        } finally {
+            store.unpin(pageId, false);
+        }
+        pageIds[i] = pageId;
+        dirty[i] = false;
+        frameIndex.put(pageId, i);
+    }
+
+    private void writeBack(int i) {
+        ByteBuffer dst = store.pin(pageIds[i]);
+        try {
+            copy(frames[i], dst);
+        } finally {
+            store.unpin(pageIds[i], true);
+        }
+        dirty[i] = false;
+    }
+
+    private void copy(ByteBuffer src, ByteBuffer dst) {
+        ByteBuffer s = src.duplicate();
+        s.clear();
+        s.limit(pageSize);
+        ByteBuffer d = dst.duplicate();
+        d.clear();
+        d.put(s);
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.davidmoten.gt.btree;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size pages identified by a page id. A page must be pinned before it
+ * is read or written and unpinned afterwards. The buffer returned by
+ * {@link #pin(long)} is only valid until the matching {@link #unpin} and
+ * should be accessed with absolute gets and puts between offset 0 and
+ * {@link #pageSize()}.
+ */
+public interface PageStore {
+
+    int pageSize();
+
+    /**
+     * Returns the id of a newly allocated page.
+     * 
+     * @return page id
+     */
+    long allocate();
+
+    /**
+     * Releases the page for reuse by a later {@link #allocate()}. The page
+     * must not be pinned.
+     * 
+     * @param pageId
+     *            page id
+     */
+    void free(long pageId);
+
+    ByteBuffer pin(long pageId);
+
+    /**
+     * Releases a page pinned by {@link #pin(long)}.
+     * 
+     * @param pageId
+     *            page id
+     * @param dirty
+     *            true if the page was written to while pinned
+     */
+    void unpin(long pageId, boolean dirty);
+
+    /**
+     * Writes all changes to pages to the underlying storage.
+     */
+    void flush();
+
+}
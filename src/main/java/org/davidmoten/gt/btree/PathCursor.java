@@ -0,0 +1,143 @@
+package org.davidmoten.gt.btree;
+
+import java.util.Comparator;
+
+/**
+ * Position in a {@link BTree} that keeps the path from the root to the
+ * current leaf. Moving to the next leaf and seeking forward to a larger key
+ * only climb as far as the lowest node on the path whose subtree can hold the
+ * target so a sequence of forward seeks shares the descents of the internal
+ * nodes they have in common.
+ *
+ * @param <Key>
+ *            key type
+ * @param <Value>
+ *            value type
+ */
+final class PathCursor<Key, Value> {
+
+    private final Comparator<Key> comparator;
+    private final int height;
+    // indexed by level, 0 is the leaf and height is the root
+    private final Node<Key, Value>[] nodes;
+    private final int[] positions;
+    // smallest key of the right sibling subtree of the node at each level or
+    // null if there is none
+    private final Object[] bounds;
+    private boolean exhausted;
+
+    @SuppressWarnings("unchecked")
+    PathCursor(Node<Key, Value> root, int height, Comparator<Key> comparator, Key key) {
+        this.comparator = comparator;
+        this.height = height;
+        this.nodes = (Node<Key, Value>[]) new Node<?, ?>[height + 1];
+        this.positions = new int[height + 1];
+        this.bounds = new Object[height + 1];
+        nodes[height] = root;
+        seekFrom(height, key);
+    }
+
+    boolean hasCurrent() {
+        return !exhausted;
+    }
+
+    Key key() {
+        return nodes[0].key(positions[0]);
+    }
+
+    Value value() {
+        return nodes[0].value(positions[0]);
+    }
+
+    void advance() {
+        positions[0]++;
+        if (positions[0] >= nodes[0].numEntries()) {
+            nextLeaf();
+        }
+    }
+
+    /**
+     * Moves forward to the first entry with key greater than or equal to the
+     * given key. Does nothing if the current entry is already at or past the
+     * key.
+     *
+     * @param key
+     *            lower bound (inclusive)
+     */
+    @SuppressWarnings("unchecked")
+    void seek(Key key) {
+        if (exhausted || !less(key(), key)) {
+            return;
+        }
+        int level = 0;
+        while (level < height && bounds[level] != null && less((Key) bounds[level], key)) {
+            level++;
+        }
+        seekFrom(level, key);
+    }
+
+    // descends from the node at the given level in the same way as
+    // BTree.seek descends from the root
+    private void seekFrom(int level, Key key) {
+        for (int ht = level; ht > 0; ht--) {
+            Node<Key, Value> x = nodes[ht];
+            positions[ht] = Math.max(0, lowerBound(x, key) - 1);
+            descend(ht);
+        }
+        positions[0] = lowerBound(nodes[0], key);
+        // also true of a leaf with no entries
+        if (positions[0] >= nodes[0].numEntries()) {
+            nextLeaf();
+        }
+    }
+
+    // moves to the first entry of the next leaf with entries (removals can
+    // leave leaves with none) as Cursor does
+    private void nextLeaf() {
+        do {
+            int ht = 1;
+            while (ht <= height && positions[ht] + 1 >= nodes[ht].numEntries()) {
+                ht++;
+            }
+            if (ht > height) {
+                exhausted = true;
+                return;
+            }
+            positions[ht]++;
+            descend(ht);
+            for (ht = ht - 1; ht > 0; ht--) {
+                positions[ht] = 0;
+                descend(ht);
+            }
+            positions[0] = 0;
+        } while (nodes[0].numEntries() == 0);
+    }
+
+    // sets the node at the level below ht to the child at the position of
+    // the node at ht
+    private void descend(int ht) {
+        Node<Key, Value> x = nodes[ht];
+        int j = positions[ht];
+        nodes[ht - 1] = x.child(j);
+        bounds[ht - 1] = j + 1 < x.numEntries() ? x.key(j + 1) : bounds[ht];
+    }
+
+    private int lowerBound(Node<Key, Value> x, Key key) {
+        int lo = 0;
+        int hi = x.numEntries();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (less(x.key(mid), key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private boolean less(Key a, Key b) {
+        return comparator.compare(a, b) < 0;
+    }
+
+}
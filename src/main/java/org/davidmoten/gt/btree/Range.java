@@ -0,0 +1,40 @@
+package org.davidmoten.gt.btree;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Range of keys, lower inclusive and upper exclusive.
+ *
+ * @param <Key>
+ *            key type
+ */
+public final class Range<Key> {
+
+    private final Key lowerInclusive;
+    private final Key upperExclusive;
+
+    public Range(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        this.lowerInclusive = lowerInclusive;
+        this.upperExclusive = upperExclusive;
+    }
+
+    public static <Key> Range<Key> create(Key lowerInclusive, Key upperExclusive) {
+        return new Range<Key>(lowerInclusive, upperExclusive);
+    }
+
+    public Key lowerInclusive() {
+        return lowerInclusive;
+    }
+
+    public Key upperExclusive() {
+        return upperExclusive;
+    }
+
+    @Override
+    public String toString() {
+        return "Range [lowerInclusive=" + lowerInclusive + ", upperExclusive=" + upperExclusive + "]";
+    }
+
+}
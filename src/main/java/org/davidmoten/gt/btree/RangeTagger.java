@@ -0,0 +1,66 @@
+package org.davidmoten.gt.btree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Finds the index of the first of a list of ranges that contains each of a
+ * sequence of non-decreasing keys. Ranges are activated as keys pass their
+ * lower bounds and retired as keys pass their upper bounds so each range is
+ * handled once over the whole sequence.
+ *
+ * @param <Key>
+ *            key type
+ */
+final class RangeTagger<Key> {
+
+    private final List<Range<Key>> ranges;
+    private final Comparator<Key> comparator;
+    // indexes of ranges in order of lower bound
+    private final List<Integer> byLower;
+    // indexes of ranges with lower bound at or before the last key in order
+    // of upper bound
+    private final PriorityQueue<Integer> started;
+    // indexes of ranges containing the last key
+    private final TreeSet<Integer> active = new TreeSet<>();
+    private int next;
+
+    RangeTagger(List<Range<Key>> ranges, Comparator<Key> comparator) {
+        this.ranges = ranges;
+        this.comparator = comparator;
+        this.byLower = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            byLower.add(i);
+        }
+        Collections.sort(byLower,
+                (a, b) -> comparator.compare(ranges.get(a).lowerInclusive(), ranges.get(b).lowerInclusive()));
+        this.started = new PriorityQueue<>(Math.max(1, ranges.size()),
+                (a, b) -> comparator.compare(ranges.get(a).upperExclusive(), ranges.get(b).upperExclusive()));
+    }
+
+    /**
+     * Returns the smallest index of a range containing the key. Keys passed
+     * to successive calls must not decrease.
+     *
+     * @param key
+     *            key contained by at least one of the ranges
+     * @return smallest index of a range containing the key
+     */
+    int tag(Key key) {
+        while (next < byLower.size()
+                && comparator.compare(ranges.get(byLower.get(next)).lowerInclusive(), key) <= 0) {
+            int i = byLower.get(next++);
+            started.add(i);
+            active.add(i);
+        }
+        while (!started.isEmpty() && comparator.compare(ranges.get(started.peek()).upperExclusive(), key) <= 0) {
+            active.remove(started.poll());
+        }
+        return active.first();
+    }
+
+}
@@ -1,5 +1,348 @@
 package org.davidmoten.gt.btree;
 
-public class Storage {
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Fixed size pages held in a single file. The file is memory-mapped in
+ * segments of {@code pagesPerSegment} pages that are added as the file grows.
+ * The last segment is only mapped (and the file only extended) as far as the
+ * pages used, doubling its mapping as it grows, and on close the file is
+ * truncated to its pages so a small file does not take a whole segment.
+ * Page ids are 64-bit and page 0 holds the header:
+ *
+ * <pre>
+ * offset  size  content
+ * 0       4     magic number
+ * 4       4     version
+ * 8       4     page size
+ * 12      4     pages per segment
+ * 16      8     number of pages (including the header page)
+ * 24      8     page id of the first free page (-1 if none)
+ * 32      8     root page id set by the owner of the storage (-1 if none)
+ * </pre>
+ *
+ * Freed pages form a linked list through their first 8 bytes and are reused
+ * by {@link #allocate()} before the file is grown.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public final class Storage implements PageStore, Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGES_PER_SEGMENT = 16384;
+
+    private static final int MAGIC = 0x47544253;
+    private static final int VERSION = 1;
+    private static final long NO_PAGE = -1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int PAGE_SIZE_OFFSET = 8;
+    private static final int PAGES_PER_SEGMENT_OFFSET = 12;
+    private static final int NUM_PAGES_OFFSET = 16;
+    private static final int FREE_LIST_OFFSET = 24;
+    private static final int ROOT_OFFSET = 32;
+    private static final int HEADER_SIZE = 40;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int pagesPerSegment;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Opens the storage in the given file with default page size and segment
+     * size, creating the file if it does not exist.
+     *
+     * @param file
+     *            storage file
+     */
+    public Storage(File file) {
+        this(file, DEFAULT_PAGE_SIZE, DEFAULT_PAGES_PER_SEGMENT);
+    }
+
+    /**
+     * Opens the storage in the given file, creating the file if it does not
+     * exist. If the file exists then the page size and segment size must match
+     * those the file was created with.
+     *
+     * @param file
+     *            storage file
+     * @param pageSize
+     *            size in bytes of each page
+     * @param pagesPerSegment
+     *            number of pages in each memory-mapped segment of the file
+     */
+    public Storage(File file, int pageSize, int pagesPerSegment) {
+        Preconditions.checkNotNull(file, "file cannot be null");
+        Preconditions.checkArgument(pageSize >= HEADER_SIZE, "pageSize must be at least " + HEADER_SIZE);
+        Preconditions.checkArgument(pagesPerSegment > 0, "pagesPerSegment must be positive");
+        Preconditions.checkArgument((long) pageSize * pagesPerSegment <= Integer.MAX_VALUE,
+                "segment size must be less than 2GB");
+        this.pageSize = pageSize;
+        this.pagesPerSegment = pagesPerSegment;
+        try {
+            boolean exists = file.exists() && file.length() > 0;
+            if (!exists && file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (exists) {
+                open();
+            } else {
+                create();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void create() {
+        ByteBuffer h = header();
+        h.putInt(MAGIC_OFFSET, MAGIC);
+        h.putInt(VERSION_OFFSET, VERSION);
+        h.putInt(PAGE_SIZE_OFFSET, pageSize);
+        h.putInt(PAGES_PER_SEGMENT_OFFSET, pagesPerSegment);
+        h.putLong(NUM_PAGES_OFFSET, 1);
+        h.putLong(FREE_LIST_OFFSET, NO_PAGE);
+        h.putLong(ROOT_OFFSET, NO_PAGE);
+    }
+
+    private void open() {
+        ByteBuffer h = header();
+        Preconditions.checkArgument(h.getInt(MAGIC_OFFSET) == MAGIC, "file is not a storage file");
+        Preconditions.checkArgument(h.getInt(VERSION_OFFSET) == VERSION, "unsupported storage version");
+        Preconditions.checkArgument(h.getInt(PAGE_SIZE_OFFSET) == pageSize,
+                "pageSize does not match the existing file");
+        Preconditions.checkArgument(h.getInt(PAGES_PER_SEGMENT_OFFSET) == pagesPerSegment,
+                "pagesPerSegment does not match the existing file");
+        // map the pages in use now so that reads of a file written earlier
+        // (for example by concurrent readers of a Creator file) never remap
+        long length = numPages() * pageSize;
+        long last = (length - 1) / segmentBytes();
+        segment(last, (int) (length - last * segmentBytes()));
+    }
+
+    @Override
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of pages in the file including the header page and
+     * free pages.
+     *
+     * @return number of pages
+     */
+    public long numPages() {
+        return header().getLong(NUM_PAGES_OFFSET);
+    }
+
+    public long root() {
+        return header().getLong(ROOT_OFFSET);
+    }
+
+    public void setRoot(long pageId) {
+        header().putLong(ROOT_OFFSET, pageId);
+    }
+
+    @Override
+    public long allocate() {
+        ByteBuffer h = header();
+        long free = h.getLong(FREE_LIST_OFFSET);
+        if (free != NO_PAGE) {
+            h.putLong(FREE_LIST_OFFSET, pin(free).getLong(0));
+            return free;
+        } else {
+            return allocate(1);
+        }
+    }
+
+    /**
+     * Returns the id of the first of {@code numPages} newly allocated
+     * contiguous pages at the end of the file. A run can be addressed by byte
+     * position using {@link #read(long, int, byte[])} and
+     * {@link #write(long, int, byte[])} which cross page and segment
+     * boundaries.
+     *
+     * @param numPages
+     *            number of pages
+     * @return id of first page
+     */
+    public long allocate(int numPages) {
+        Preconditions.checkArgument(numPages > 0, "numPages must be positive");
+        ByteBuffer h = header();
+        long pageId = h.getLong(NUM_PAGES_OFFSET);
+        h.putLong(NUM_PAGES_OFFSET, pageId + numPages);
+        return pageId;
+    }
+
+    /**
+     * Returns the page to the free list. The page must not be used after this
+     * call until it is allocated again.
+     *
+     * @param pageId
+     *            page id
+     */
+    @Override
+    public void free(long pageId) {
+        Preconditions.checkArgument(pageId > 0 && pageId < numPages(), "invalid pageId");
+        ByteBuffer h = header();
+        pin(pageId).putLong(0, h.getLong(FREE_LIST_OFFSET));
+        h.putLong(FREE_LIST_OFFSET, pageId);
+    }
+
+    @Override
+    public ByteBuffer pin(long pageId) {
+        int offset = (int) (pageId % pagesPerSegment) * pageSize;
+        ByteBuffer segment = segment(pageId / pagesPerSegment, offset + pageSize);
+        ByteBuffer b = segment.duplicate();
+        b.position(offset);
+        b.limit(offset + pageSize);
+        return b.slice();
+    }
+
+    @Override
+    public void unpin(long pageId, boolean dirty) {
+        // writes go straight to the mapping
+    }
+
+    /**
+     * Reads {@code bytes.length} bytes starting at the given offset from the
+     * start of the given page. The bytes may span subsequent pages.
+     *
+     * @param pageId
+     *            page id
+     * @param offset
+     *            byte offset from the start of the page
+     * @param bytes
+     *            destination
+     */
+    public void read(long pageId, int offset, byte[] bytes) {
+        long position = pageId * pageSize + offset;
+        int i = 0;
+        while (i < bytes.length) {
+            ByteBuffer b = segmentAt(position + i, bytes.length - i);
+            int n = Math.min(bytes.length - i, b.remaining());
+            b.get(bytes, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Writes the bytes starting at the given offset from the start of the
+     * given page. The bytes may span subsequent pages which must have been
+     * allocated.
+     *
+     * @param pageId
+     *            page id
+     * @param offset
+     *            byte offset from the start of the page
+     * @param bytes
+     *            bytes to write
+     */
+    public void write(long pageId, int offset, byte[] bytes) {
+        long position = pageId * pageSize + offset;
+        int i = 0;
+        while (i < bytes.length) {
+            ByteBuffer b = segmentAt(position + i, bytes.length - i);
+            int n = Math.min(bytes.length - i, b.remaining());
+            b.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Returns a duplicate of the segment holding the given byte position of
+     * the file positioned at that byte and mapped for at least the given
+     * length or to the end of the segment.
+     */
+    private ByteBuffer segmentAt(long position, int length) {
+        long segmentBytes = segmentBytes();
+        int offset = (int) (position % segmentBytes);
+        ByteBuffer b = segment(position / segmentBytes, (int) Math.min(segmentBytes, (long) offset + length))
+                .duplicate();
+        b.position(offset);
+        return b;
+    }
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            long length = numPages() * pageSize;
+            if (channel.size() > length) {
+                channel.truncate(length);
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ByteBuffer header() {
+        return segment(0, pageSize);
+    }
+
+    /**
+     * Returns the segment with the given index mapped for at least its first
+     * {@code end} bytes. Every segment before the last is mapped in full.
+     */
+    private MappedByteBuffer segment(long index, int end) {
+        Preconditions.checkArgument(index <= Integer.MAX_VALUE, "file too large");
+        int i = (int) index;
+        if (i < segments.size() && segments.get(i).capacity() >= end) {
+            return segments.get(i);
+        }
+        long segmentBytes = segmentBytes();
+        for (int j = Math.max(0, segments.size() - 1); j < i; j++) {
+            map(j, segmentBytes);
+        }
+        long mapped = i < segments.size() ? segments.get(i).capacity() : 0;
+        map(i, Math.min(segmentBytes, Math.max(end, 2 * mapped)));
+        return segments.get(i);
+    }
+
+    // maps (or remaps) the first size bytes of the segment, extending the
+    // file if required
+    private void map(int index, long size) {
+        if (index < segments.size() && segments.get(index).capacity() == size) {
+            return;
+        }
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(MapMode.READ_WRITE, index * segmentBytes(), size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (index < segments.size()) {
+            segments.set(index, segment);
+        } else {
+            segments.add(segment);
+        }
+    }
+
+    private long segmentBytes() {
+        return (long) pageSize * pagesPerSegment;
+    }
 
 }
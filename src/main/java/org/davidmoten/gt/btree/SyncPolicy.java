@@ -0,0 +1,87 @@
+package org.davidmoten.gt.btree;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * When a {@link WriteAheadLog} forces its writes to the storage device. In
+ * every case records are written to the file (so survive a crash of the
+ * process) before an append returns, the policy decides how much may be lost
+ * if the machine fails.
+ */
+public final class SyncPolicy {
+
+    private static final long EVERY_WRITE = 0;
+    private static final long OS = -1;
+
+    private static final SyncPolicy EVERY_WRITE_POLICY = new SyncPolicy(EVERY_WRITE);
+    private static final SyncPolicy OS_POLICY = new SyncPolicy(OS);
+
+    private final long intervalMs;
+
+    private SyncPolicy(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Returns the policy that forces every group of appended records before
+     * the appends return, so nothing acknowledged is lost.
+     *
+     * @return sync policy
+     */
+    public static SyncPolicy everyWrite() {
+        return EVERY_WRITE_POLICY;
+    }
+
+    /**
+     * Returns the policy that forces the log from a background thread at the
+     * given interval, so at most that interval of acknowledged records is
+     * lost.
+     *
+     * @param interval
+     *            interval between forces
+     * @param unit
+     *            unit of interval
+     * @return sync policy
+     */
+    public static SyncPolicy interval(long interval, TimeUnit unit) {
+        Preconditions.checkArgument(interval > 0, "interval must be positive");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        return new SyncPolicy(Math.max(1, unit.toMillis(interval)));
+    }
+
+    /**
+     * Returns the policy that leaves writing the log to the device to the
+     * operating system, the log is only forced on close.
+     *
+     * @return sync policy
+     */
+    public static SyncPolicy os() {
+        return OS_POLICY;
+    }
+
+    boolean isEveryWrite() {
+        return intervalMs == EVERY_WRITE;
+    }
+
+    boolean isInterval() {
+        return intervalMs > 0;
+    }
+
+    long intervalMs() {
+        return intervalMs;
+    }
+
+    @Override
+    public String toString() {
+        if (isEveryWrite()) {
+            return "SyncPolicy[everyWrite]";
+        } else if (isInterval()) {
+            return "SyncPolicy[interval=" + intervalMs + "ms]";
+        } else {
+            return "SyncPolicy[os]";
+        }
+    }
+
+}
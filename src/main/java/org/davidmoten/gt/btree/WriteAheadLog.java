@@ -0,0 +1,377 @@
+package org.davidmoten.gt.btree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Append-only log of records with group commit. Each record is written as
+ * its int length, the int CRC-32 of the record and the record so that a
+ * record torn by a crash is detected, the log is truncated to the last whole
+ * record when it is opened.
+ *
+ * <p>
+ * {@link #append(byte[])} only adds a record to an in-memory batch and
+ * returns its sequence number, {@link #commit(long)} then blocks until that
+ * record has been written. The first committing thread writes the whole
+ * batch (and forces it if the {@link SyncPolicy} is every write) while
+ * records appended meanwhile form the next batch, so many threads committing
+ * at once share one write and one force.
+ *
+ * <p>
+ * Thread-safe.
+ */
+public final class WriteAheadLog implements Closeable {
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File file;
+    private final SyncPolicy policy;
+    private final Disposable syncer; // null unless the policy is an interval
+    private final Object lock = new Object();
+
+    // guarded by lock
+    private FileChannel channel;
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private long appended; // sequence number of the last record appended
+    private long written; // sequence number of the last record written
+    private boolean writing; // a committing thread is writing a batch
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens the log in the given file, creating the file if it does not exist
+     * and truncating any torn record at its end.
+     *
+     * @param file
+     *            log file
+     * @param policy
+     *            when the log is forced to the storage device
+     */
+    public WriteAheadLog(File file, SyncPolicy policy) {
+        Preconditions.checkNotNull(file, "file cannot be null");
+        Preconditions.checkNotNull(policy, "policy cannot be null");
+        this.file = file;
+        this.policy = policy;
+        try {
+            long end = file.exists() ? scan(file, null) : 0;
+            channel = open(file);
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (policy.isInterval()) {
+            syncer = Schedulers.io().schedulePeriodicallyDirect(this::sync, policy.intervalMs(),
+                    policy.intervalMs(), TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Passes each whole record in the log to the consumer in the order they
+     * were appended. Call before appending, for example to recover the state
+     * that the records describe after a restart.
+     *
+     * @param consumer
+     *            receives each record
+     */
+    public void replay(Consumer<byte[]> consumer) {
+        Preconditions.checkNotNull(consumer, "consumer cannot be null");
+        synchronized (lock) {
+            try {
+                scan(file, consumer);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the log up to the end of the last whole record,
+     * passing each record to the consumer if it is not null.
+     */
+    private static long scan(File file, Consumer<byte[]> consumer) throws IOException {
+        long length = file.length();
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int size;
+                int crc;
+                try {
+                    size = in.readInt();
+                    crc = in.readInt();
+                } catch (EOFException e) {
+                    return position;
+                }
+                if (size < 0 || size > length - position - RECORD_HEADER_SIZE) {
+                    return position;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                if (crc(record) != crc) {
+                    return position;
+                }
+                if (consumer != null) {
+                    consumer.accept(record);
+                }
+                position += RECORD_HEADER_SIZE + size;
+            }
+        }
+    }
+
+    /**
+     * Adds the record to the batch to be written by the next commit and
+     * returns its sequence number. The record is not written until
+     * {@link #commit(long)} is called with this or a later sequence number.
+     *
+     * @param record
+     *            record
+     * @return sequence number of the record
+     */
+    public long append(byte[] record) {
+        Preconditions.checkNotNull(record, "record cannot be null");
+        synchronized (lock) {
+            Preconditions.checkArgument(!closed, "log is closed");
+            byte[] header = ByteBuffer.allocate(RECORD_HEADER_SIZE) //
+                    .putInt(record.length) //
+                    .putInt(crc(record)) //
+                    .array();
+            batch.write(header, 0, header.length);
+            batch.write(record, 0, record.length);
+            return ++appended;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number and all records
+     * before it have been written to the file and, if the policy is every
+     * write, forced to the storage device.
+     *
+     * @param sequence
+     *            sequence number returned by {@link #append(byte[])}
+     */
+    public void commit(long sequence) {
+        while (true) {
+            final byte[] bytes;
+            final long target;
+            synchronized (lock) {
+                while (writing && written < sequence && failure == null) {
+                    await();
+                }
+                if (failure != null) {
+                    throw new RuntimeException(failure);
+                }
+                if (written >= sequence) {
+                    return;
+                }
+                writing = true;
+                bytes = batch.toByteArray();
+                batch.reset();
+                target = appended;
+            }
+            IOException error = null;
+            try {
+                write(bytes);
+                if (policy.isEveryWrite()) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (lock) {
+                writing = false;
+                if (error != null) {
+                    // the log may now end in a torn record so refuse further
+                    // commits
+                    failure = error;
+                } else {
+                    written = target;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces the records written so far to the storage device. The force is
+     * done outside the lock so that appends are not held up.
+     */
+    public void sync() {
+        FileChannel c;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            c = channel;
+        }
+        try {
+            c.force(false);
+        } catch (IOException e) {
+            synchronized (lock) {
+                // a channel closed by rewrite (which forces the new log
+                // itself) or by close is not a failure of the log
+                if (c == channel && !closed) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the log with the given records, typically a
+     * snapshot of the state built up by the records so that the log does not
+     * grow without bound. The new log is written to a temporary file, forced
+     * and renamed over the log. Records appended but not yet committed are
+     * discarded as their effect must be in the snapshot. The caller must
+     * prevent appends until this method returns.
+     *
+     * @param records
+     *            records of the new log
+     */
+    public void rewrite(Iterator<byte[]> records) {
+        Preconditions.checkNotNull(records, "records cannot be null");
+        synchronized (lock) {
+            Preconditions.checkArgument(!closed, "log is closed");
+            while (writing) {
+                await();
+            }
+            File temp = new File(file.getPath() + TEMP_SUFFIX);
+            try {
+                try (FileChannel c = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    while (records.hasNext()) {
+                        byte[] record = records.next();
+                        byte[] header = ByteBuffer.allocate(RECORD_HEADER_SIZE) //
+                                .putInt(record.length) //
+                                .putInt(crc(record)) //
+                                .array();
+                        out.write(header, 0, header.length);
+                        out.write(record, 0, record.length);
+                        if (out.size() >= 1 << 16) {
+                            writeFully(c, out.toByteArray());
+                            out.reset();
+                        }
+                    }
+                    writeFully(c, out.toByteArray());
+                    c.force(false);
+                }
+                channel.close();
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                channel = open(file);
+                channel.position(channel.size());
+            } catch (IOException e) {
+                failure = e;
+                throw new RuntimeException(e);
+            }
+            batch.reset();
+            written = appended;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the size of the log file in bytes (excluding records not yet
+     * committed).
+     *
+     * @return size in bytes
+     */
+    public long size() {
+        synchronized (lock) {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes any records not yet committed, forces the log to the storage
+     * device and closes the file.
+     */
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.dispose();
+        }
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            while (writing) {
+                await();
+            }
+            closed = true;
+            try {
+                if (failure == null) {
+                    write(batch.toByteArray());
+                    batch.reset();
+                    written = appended;
+                    channel.force(false);
+                }
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // only called by the thread that set writing or holds the lock with no
+    // thread writing
+    private void write(byte[] bytes) throws IOException {
+        writeFully(channel, bytes);
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        while (bb.hasRemaining()) {
+            channel.write(bb);
+        }
+    }
+
+    private void await() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+}
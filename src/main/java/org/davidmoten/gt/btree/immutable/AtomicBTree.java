@@ -0,0 +1,88 @@
+package org.davidmoten.gt.btree.immutable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Flowable;
+
+/**
+ * Holds the current version of a persistent {@link BTree} in an
+ * {@link AtomicReference}. Writers create a new version and publish it by
+ * swapping the reference, readers take the current version with
+ * {@link #snapshot()} (or implicitly in {@link #get} and {@link #range}) and
+ * read it without any locking while newer versions are published. Concurrent
+ * writers retry a compare-and-set so no update is lost, a single ingest
+ * thread never retries.
+ *
+ * @param <K>
+ *            key type
+ * @param <T>
+ *            value type
+ */
+public final class AtomicBTree<K, T> {
+
+    private final AtomicReference<BTree<K, T>> tree;
+
+    public AtomicBTree(Context<K> context) {
+        this.tree = new AtomicReference<BTree<K, T>>(new BTree<K, T>(context));
+    }
+
+    /**
+     * Returns the current version of the tree. It never changes so any
+     * number of queries on it see the same entries.
+     * 
+     * @return current version
+     */
+    public BTree<K, T> snapshot() {
+        return tree.get();
+    }
+
+    public void add(K key, T value) {
+        tree.updateAndGet(t -> t.add(key, value));
+    }
+
+    /**
+     * Removes the first entry with the given key if present.
+     * 
+     * @param key
+     *            key
+     * @return true if an entry was removed
+     */
+    public boolean delete(K key) {
+        while (true) {
+            BTree<K, T> t = tree.get();
+            BTree<K, T> t2 = t.delete(key);
+            if (t2 == t) {
+                return false;
+            } else if (tree.compareAndSet(t, t2)) {
+                return true;
+            }
+        }
+    }
+
+    public T get(K key) {
+        return tree.get().get(key);
+    }
+
+    /**
+     * Returns the values with keys in the range from the version of the tree
+     * current at subscription.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<T> range(K lowerInclusive, K upperExclusive) {
+        return Flowable.defer(() -> tree.get().range(lowerInclusive, upperExclusive));
+    }
+
+    public int size() {
+        return tree.get().size();
+    }
+
+    public boolean isEmpty() {
+        return tree.get().isEmpty();
+    }
+
+}
@@ -1,38 +1,169 @@
 package org.davidmoten.gt.btree.immutable;
 
-import com.github.davidmoten.guavamini.Lists;
+import java.util.Collections;
+import java.util.List;
 
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * Persistent (immutable) B-tree. {@link #add(Entry)} and {@link #delete(Object)}
+ * return a new tree and leave this tree unchanged. Only the nodes on the path
+ * from the root to the changed leaf are copied, all other nodes are shared
+ * with this tree, so a change costs O(maxChildren * log n).
+ *
+ * <p>
+ * Because a tree never changes it is a consistent snapshot that can be read by
+ * any number of threads without locking while newer versions are being
+ * created, see {@link AtomicBTree}. Has the same semantics as the mutable
+ * {@code BTree}: duplicate keys are kept in insertion order, {@link #get} returns
+ * the first value for a key and ranges are lower inclusive, upper exclusive.
+ *
+ * @param <K>
+ *            key type
+ * @param <T>
+ *            value type
+ */
 public class BTree<K, T> {
 
     private final Node<K, T> root;
     private final Context<K> context;
+    private final int size;
+
+    public BTree(Context<K> context) {
+        this(null, context, 0);
+    }
 
-    public BTree(Node<K, T> root, Context<K> context) {
+    private BTree(Node<K, T> root, Context<K> context, int size) {
+        Preconditions.checkNotNull(context, "context cannot be null");
         this.root = root;
         this.context = context;
+        this.size = size;
     }
 
-    @SuppressWarnings("unchecked")
     public BTree<K, T> add(Entry<K, T> entry) {
+        Preconditions.checkNotNull(entry.key(), "key cannot be null");
         final Node<K, T> root2;
         if (root == null) {
-            root2 = new Leaf<K, T>(context, Lists.newArrayList(entry));
+            root2 = new Leaf<K, T>(context, Collections.singletonList(entry));
         } else {
-            root2 = root.insert(entry);
+            List<Node<K, T>> nodes = root.insert(entry);
+            if (nodes.size() == 1) {
+                root2 = nodes.get(0);
+            } else {
+                // root was split so give it a new parent
+                root2 = new NonLeaf<K, T>(context, nodes);
+            }
         }
-        return new BTree<K, T>(root2, context);
+        return new BTree<K, T>(root2, context, size + 1);
     }
 
     public BTree<K, T> add(K key, T value) {
         return add(new Entry<K, T>(key, value));
     }
 
-    private boolean less(K a, K b) {
-        return context.comparator.compare(a, b) < 0;
+    /**
+     * Returns a tree without the first entry with the given key or this tree
+     * if there is no such entry. A node left with too few entries is merged
+     * with a sibling so the tree stays balanced.
+     * 
+     * @param key
+     *            key
+     * @return tree without the first entry with the key
+     */
+    public BTree<K, T> delete(K key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        if (root == null) {
+            return this;
+        }
+        Node<K, T> root2 = root.delete(key);
+        if (root2 == null) {
+            return this;
+        }
+        if (root2.count() == 0) {
+            root2 = null;
+        } else if (root2 instanceof NonLeaf && root2.count() == 1) {
+            // root has a single child so the tree gets shorter
+            root2 = ((NonLeaf<K, T>) root2).child(0);
+        }
+        return new BTree<K, T>(root2, context, size - 1);
+    }
+
+    public T get(K key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        Cursor<K, T> cursor = new Cursor<K, T>(root, key);
+        if (cursor.hasCurrent() && context.comparator.compare(key, cursor.entry().key()) == 0) {
+            return cursor.entry().value();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the values with keys in the given range in key order. Items are
+     * only read from the tree as they are requested so the stream supports
+     * backpressure. As the tree is immutable the stream always reflects this
+     * version of the tree whatever versions are created afterwards.
+     * 
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return values with keys in the range in key order
+     */
+    public Flowable<T> range(K lowerInclusive, K upperExclusive) {
+        return range(lowerInclusive, upperExclusive, entry -> entry.value());
     }
 
-    private boolean eq(K a, K b) {
-        return context.comparator.compare(a, b) == 0;
+    public Flowable<Entry<K, T>> rangeEntries(K lowerInclusive, K upperExclusive) {
+        return range(lowerInclusive, upperExclusive, entry -> entry);
+    }
+
+    private <R> Flowable<R> range(K lowerInclusive, K upperExclusive, Function<Entry<K, T>, R> mapper) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return Flowable.generate( //
+                () -> new Cursor<K, T>(root, lowerInclusive), //
+                (cursor, emitter) -> {
+                    if (cursor.hasCurrent() && less(cursor.entry().key(), upperExclusive)) {
+                        emitter.onNext(mapper.apply(cursor.entry()));
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @VisibleForTesting
+    Node<K, T> root() {
+        return root;
+    }
+
+    @VisibleForTesting
+    int height() {
+        int height = 0;
+        Node<K, T> node = root;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf<K, T>) node).child(0);
+            height++;
+        }
+        return height;
+    }
+
+    private boolean less(K a, K b) {
+        return context.comparator.compare(a, b) < 0;
     }
 
 }
@@ -1,6 +1,9 @@
 package org.davidmoten.gt.btree.immutable;
 
 import java.util.Comparator;
+import java.util.function.IntFunction;
+
+import com.github.davidmoten.guavamini.Preconditions;
 
 public class Context<K> {
 
@@ -8,8 +11,55 @@ public class Context<K> {
     final int maxChildren;
 
     public Context(Comparator<K> comparator, int maxChildren) {
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkArgument(maxChildren >= 4, "maxChildren must be at least 4");
         this.comparator = comparator;
         this.maxChildren = maxChildren;
     }
 
+    /**
+     * Returns the smallest number of entries or children a node other than
+     * the root holds after a delete. A node with fewer is merged with a
+     * sibling.
+     */
+    int minChildren() {
+        return maxChildren / 2;
+    }
+
+    /**
+     * Returns the index of the first of the n keys that is greater than or
+     * equal to the given key, or n if there is no such key.
+     */
+    int lowerBound(int n, IntFunction<K> keys, K key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(keys.apply(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first of the n keys that is greater than the
+     * given key, or n if there is no such key.
+     */
+    int upperBound(int n, IntFunction<K> keys, K key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(key, keys.apply(mid)) < 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
 }
@@ -0,0 +1,85 @@
+package org.davidmoten.gt.btree.immutable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Position in a persistent B-tree. Leaves of a persistent tree cannot be
+ * linked (a linked leaf would have to be copied whenever its neighbour
+ * changes) so the cursor keeps the path from the root and moves to the next
+ * leaf through the nearest ancestor with a child to the right. A scan of k
+ * entries still costs O(log n + k).
+ *
+ * @param <K>
+ *            key type
+ * @param <T>
+ *            value type
+ */
+final class Cursor<K, T> {
+
+    // non-leaf nodes on the path from the root and the index of the child
+    // taken at each
+    private final List<NonLeaf<K, T>> path = new ArrayList<>();
+    private final List<Integer> indexes = new ArrayList<>();
+    private Leaf<K, T> leaf;
+    private int index;
+
+    /**
+     * Creates a cursor positioned at the first entry with key greater than or
+     * equal to the given key.
+     */
+    Cursor(Node<K, T> root, K key) {
+        if (root != null) {
+            Node<K, T> x = root;
+            while (x instanceof NonLeaf) {
+                NonLeaf<K, T> t = (NonLeaf<K, T>) x;
+                int j = t.seekIndex(key);
+                path.add(t);
+                indexes.add(j);
+                x = t.child(j);
+            }
+            leaf = (Leaf<K, T>) x;
+            index = leaf.lowerBound(key);
+            skipExhaustedLeaves();
+        }
+    }
+
+    boolean hasCurrent() {
+        return leaf != null;
+    }
+
+    Entry<K, T> entry() {
+        return leaf.entry(index);
+    }
+
+    void advance() {
+        index++;
+        skipExhaustedLeaves();
+    }
+
+    private void skipExhaustedLeaves() {
+        while (leaf != null && index >= leaf.count()) {
+            // find the deepest ancestor with a child to the right
+            int level = path.size() - 1;
+            while (level >= 0 && indexes.get(level) + 1 >= path.get(level).count()) {
+                level--;
+            }
+            if (level < 0) {
+                leaf = null;
+            } else {
+                indexes.set(level, indexes.get(level) + 1);
+                // descend to the leftmost leaf of that child
+                Node<K, T> x = path.get(level).child(indexes.get(level));
+                for (int i = level + 1; i < path.size(); i++) {
+                    NonLeaf<K, T> t = (NonLeaf<K, T>) x;
+                    path.set(i, t);
+                    indexes.set(i, 0);
+                    x = t.child(0);
+                }
+                leaf = (Leaf<K, T>) x;
+                index = 0;
+            }
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package org.davidmoten.gt.btree.immutable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public final class Leaf<K, T> implements Node<K, T> {
@@ -23,15 +25,63 @@ public final class Leaf<K, T> implements Node<K, T> {
     }
 
     @Override
-    public Leaf<K, T> insert(Entry<K, T> entry) {
-        if (entries.size() < context.maxChildren) {
-            List<Entry<K, T>> list = new ArrayList<>(entries.size() + 1);
-            list.addAll(entries);
-            list.add(entry);
+    public K firstKey() {
+        return entries.get(0).key();
+    }
+
+    /**
+     * Returns the index of the first entry with key greater than or equal to
+     * the given key, or count() if there is no such entry.
+     */
+    int lowerBound(K key) {
+        return context.lowerBound(entries.size(), i -> entries.get(i).key(), key);
+    }
+
+    @Override
+    public List<Node<K, T>> insert(Entry<K, T> entry) {
+        int j = context.upperBound(entries.size(), i -> entries.get(i).key(), entry.key());
+        List<Entry<K, T>> list = new ArrayList<>(entries.size() + 1);
+        list.addAll(entries.subList(0, j));
+        list.add(entry);
+        list.addAll(entries.subList(j, entries.size()));
+        return split(context, list);
+    }
+
+    @Override
+    public Leaf<K, T> delete(K key) {
+        int j = lowerBound(key);
+        if (j < entries.size() && context.comparator.compare(entries.get(j).key(), key) == 0) {
+            List<Entry<K, T>> list = new ArrayList<>(entries.size() - 1);
+            list.addAll(entries.subList(0, j));
+            list.addAll(entries.subList(j + 1, entries.size()));
             return new Leaf<K, T>(context, list);
         } else {
             return null;
         }
     }
 
+    @Override
+    public List<Node<K, T>> merge(Node<K, T> right) {
+        Leaf<K, T> r = (Leaf<K, T>) right;
+        List<Entry<K, T>> list = new ArrayList<>(entries.size() + r.entries.size());
+        list.addAll(entries);
+        list.addAll(r.entries);
+        return split(context, list);
+    }
+
+    /**
+     * Returns one leaf holding the entries or two leaves holding half each if
+     * there are too many for one leaf.
+     */
+    private static <K, T> List<Node<K, T>> split(Context<K> context, List<Entry<K, T>> list) {
+        if (list.size() <= context.maxChildren) {
+            return Collections.singletonList(new Leaf<K, T>(context, list));
+        } else {
+            int half = list.size() / 2;
+            return Arrays.asList( //
+                    new Leaf<K, T>(context, new ArrayList<>(list.subList(0, half))), //
+                    new Leaf<K, T>(context, new ArrayList<>(list.subList(half, list.size()))));
+        }
+    }
+
 }
@@ -1,9 +1,63 @@
 package org.davidmoten.gt.btree.immutable;
 
+import java.util.List;
+
+/**
+ * A node of the persistent B-tree. Nodes are never modified, every change
+ * returns new nodes that share the unchanged parts of the tree.
+ *
+ * @param <K>
+ *            key type
+ * @param <T>
+ *            value type
+ */
 public interface Node<K, T> {
 
+    /**
+     * Returns the number of entries of a leaf or children of a non-leaf.
+     * 
+     * @return number of entries or children
+     */
     int count();
 
-    Node<K, T> insert(Entry<K, T> entry);
+    /**
+     * Returns the smallest key in the subtree rooted at this node.
+     * 
+     * @return smallest key
+     */
+    K firstKey();
+
+    /**
+     * Returns the nodes that replace this node after the entry is inserted
+     * after any entries with an equal key. That is one node or two nodes if
+     * this node had to be split.
+     * 
+     * @param entry
+     *            entry to insert
+     * @return one or two nodes replacing this node
+     */
+    List<Node<K, T>> insert(Entry<K, T> entry);
+
+    /**
+     * Returns the node that replaces this node after the first entry with the
+     * given key is removed (which may hold fewer than the minimum number of
+     * entries or children) or null if there is no entry with the key.
+     * 
+     * @param key
+     *            key
+     * @return node without the entry or null if not found
+     */
+    Node<K, T> delete(K key);
+
+    /**
+     * Returns the nodes holding the contents of this node followed by the
+     * contents of the node to its right, which must be of the same type. That
+     * is one node if they fit in one otherwise two nodes of equal size.
+     * 
+     * @param right
+     *            node immediately to the right of this node
+     * @return one or two nodes replacing this node and right
+     */
+    List<Node<K, T>> merge(Node<K, T> right);
 
 }
@@ -1,28 +1,129 @@
 package org.davidmoten.gt.btree.immutable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Non-leaf node where {@code key(i)} is the smallest key in the subtree
+ * rooted at {@code child(i)}. Because every change copies the path from the
+ * root the keys are always exact.
+ */
 public final class NonLeaf<K, T> implements Node<K, T> {
 
+    private final Context<K> context;
+    private final List<K> keys;
     private final List<Node<K, T>> children;
 
-    public NonLeaf(List<Node<K, T>> children) {
+    public NonLeaf(Context<K> context, List<Node<K, T>> children) {
+        this.context = context;
         this.children = children;
+        this.keys = new ArrayList<>(children.size());
+        for (Node<K, T> child : children) {
+            keys.add(child.firstKey());
+        }
     }
 
     public Node<K, T> child(int i) {
         return children.get(i);
     }
 
+    public K key(int i) {
+        return keys.get(i);
+    }
+
     @Override
     public int count() {
         return children.size();
     }
 
     @Override
-    public NonLeaf<K, T> insert(Entry<K, T> entry) {
-        // TODO Auto-generated method stub
+    public K firstKey() {
+        return keys.get(0);
+    }
+
+    /**
+     * Returns the index of the child to descend to when seeking the first
+     * entry &gt;= key (the last child with smallest key &lt; key) so that
+     * duplicates of key that straddle two children are not missed.
+     */
+    int seekIndex(K key) {
+        return Math.max(0, context.lowerBound(keys.size(), keys::get, key) - 1);
+    }
+
+    @Override
+    public List<Node<K, T>> insert(Entry<K, T> entry) {
+        // last child with smallest key <= key
+        int j = Math.max(0, context.upperBound(keys.size(), keys::get, entry.key()) - 1);
+        List<Node<K, T>> list = new ArrayList<>(children.size() + 1);
+        list.addAll(children.subList(0, j));
+        list.addAll(children.get(j).insert(entry));
+        list.addAll(children.subList(j + 1, children.size()));
+        return split(context, list);
+    }
+
+    @Override
+    public NonLeaf<K, T> delete(K key) {
+        int j = seekIndex(key);
+        // the first entry with the key is in child j unless child j has no
+        // entry with the key and the next child starts with it
+        for (int i = j; i < Math.min(j + 2, children.size()); i++) {
+            if (i > j && context.comparator.compare(keys.get(i), key) != 0) {
+                break;
+            }
+            Node<K, T> child = children.get(i).delete(key);
+            if (child != null) {
+                return replace(i, child);
+            }
+        }
         return null;
     }
 
+    /**
+     * Returns a copy of this node with the i-th child replaced, merging the
+     * child with a sibling if it is too small.
+     */
+    private NonLeaf<K, T> replace(int i, Node<K, T> child) {
+        List<Node<K, T>> list = new ArrayList<>(children);
+        if (child.count() == 0) {
+            list.remove(i);
+        } else if (child.count() < context.minChildren() && children.size() > 1) {
+            // merge with the left sibling if there is one otherwise the right
+            int left = i > 0 ? i - 1 : i;
+            List<Node<K, T>> merged = i > 0 ? children.get(i - 1).merge(child)
+                    : child.merge(children.get(i + 1));
+            list.remove(left);
+            list.remove(left);
+            list.addAll(left, merged);
+        } else {
+            list.set(i, child);
+        }
+        return new NonLeaf<K, T>(context, list);
+    }
+
+    @Override
+    public List<Node<K, T>> merge(Node<K, T> right) {
+        NonLeaf<K, T> r = (NonLeaf<K, T>) right;
+        List<Node<K, T>> list = new ArrayList<>(children.size() + r.children.size());
+        list.addAll(children);
+        list.addAll(r.children);
+        return split(context, list);
+    }
+
+    /**
+     * Returns one non-leaf holding the children or two non-leaves holding
+     * half each if there are too many for one non-leaf.
+     */
+    private static <K, T> List<Node<K, T>> split(Context<K> context, List<Node<K, T>> list) {
+        if (list.size() <= context.maxChildren) {
+            return Collections.singletonList(new NonLeaf<K, T>(context, list));
+        } else {
+            int half = list.size() / 2;
+            return Arrays.asList( //
+                    new NonLeaf<K, T>(context, new ArrayList<>(list.subList(0, half))), //
+                    new NonLeaf<K, T>(context, new ArrayList<>(list.subList(half, list.size()))));
+        }
+    }
+
 }
@@ -0,0 +1,90 @@
+package org.davidmoten.gt.btree.ro;
+
+import org.davidmoten.gt.btree.Storage;
+
+// bloom filter over serialized keys, the bit positions of a key are derived
+// from one 64 bit hash by double hashing
+final class BloomFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int MAX_HASHES = 30;
+
+    private BloomFilter() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the size in bytes of the filter for the given number of keys.
+     */
+    static int numBytes(int numKeys, int bitsPerKey) {
+        long bits = Math.max(64, (long) numKeys * bitsPerKey);
+        return (int) ((bits + 7) / 8);
+    }
+
+    /**
+     * Returns the number of bits set per key, ln 2 times the bits per key
+     * minimises the false positive rate.
+     */
+    static int numHashes(int bitsPerKey) {
+        return Math.max(1, Math.min(MAX_HASHES, (int) Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    static byte[] create(byte[][] keys, int bitsPerKey) {
+        byte[] filter = new byte[numBytes(keys.length, bitsPerKey)];
+        long numBits = filter.length * 8L;
+        int k = numHashes(bitsPerKey);
+        for (byte[] key : keys) {
+            long h = hash(key);
+            for (int i = 0; i < k; i++) {
+                long bit = bit(h, i, numBits);
+                filter[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns false if the key was definitely not added to the filter of
+     * {@code numBytes} bytes at the given position in the storage. Only the
+     * bytes holding the bits of the key are read.
+     */
+    static boolean mightContain(Storage storage, long pageId, int offset, int numBytes, int bitsPerKey,
+            byte[] key) {
+        long numBits = numBytes * 8L;
+        int k = numHashes(bitsPerKey);
+        long h = hash(key);
+        byte[] b = new byte[1];
+        for (int i = 0; i < k; i++) {
+            long bit = bit(h, i, numBits);
+            storage.read(pageId, offset + (int) (bit >>> 3), b);
+            if ((b[0] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long bit(long hash, int i, long numBits) {
+        long h1 = hash & 0xffffffffL;
+        long h2 = hash >>> 32;
+        return (h1 + i * h2) % numBits;
+    }
+
+    // FNV-1a followed by the murmur3 finalizer so every bit of the key
+    // affects both halves of the hash
+    static long hash(byte[] key) {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -1,157 +1,636 @@
 package org.davidmoten.gt.btree.ro;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
-import com.github.davidmoten.rx2.flowable.Transformers;
+import org.davidmoten.gt.btree.Storage;
+
+import com.github.davidmoten.guavamini.Preconditions;
 
 import io.reactivex.Flowable;
-import io.reactivex.FlowableTransformer;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
+/**
+ * Writes a read-only b-tree from entries sorted by key that can be read with
+ * {@link ReadOnlyBTree}. Entries are grouped into pages of at most
+ * {@code maxPageSizeBytes} including the page header (a single larger entry
+ * gets its own page) and index blocks of key records, sized to fit in
+ * {@code maxPageSizeBytes} with their header records and bloom filter, point
+ * at the entries. Each page and index block is written as a run of contiguous
+ * pages in a {@link Storage} file and is referenced by the page id of the
+ * start of the run and a byte position within the run. The layout of each run
+ * is:
+ *
+ * <pre>
+ * entry page   int end position of the last entry, then the serialized entries
+ * index block  header records (one per group of children records) then
+ *              the key records, each record is key, long page id, int position,
+ *              then the bloom filter of the keys of the block if any
+ * manifest     int number of index blocks, int children, long number of
+ *              entries, int format (0 plain, 1 compressed), int bloom filter
+ *              bits per key (0 if none), then per index block the key of its
+ *              first record, long page id and int number of key records
+ * </pre>
+ *
+ * The {@link Storage#root()} of the storage is set to the manifest.
+ *
+ * <p>
+ * A creator returned by {@link #compressed()} writes a compressed format
+ * instead. Each entry page run is an int end position, the int length of the
+ * uncompressed page and the page deflated, where the uncompressed page is
+ * each entry preceded by its varint length and a key record position is the
+ * offset of the entry in the uncompressed page. Each index block run starts
+ * with its int length and keeps the fixed size header records (whose
+ * positions point at the start of each group) so that a search can skip to
+ * one group. Within a group each key record is the varint length of the
+ * prefix shared with the previous key, the rest of the key, the varint
+ * zig-zag difference from the previous page id and the varint position.
+ * Compressed entry pages are packed one after another into the storage pages
+ * so in this format the page id of a key record is the byte address of the
+ * start of the compressed page.
+ *
+ * <p>
+ * A creator returned by {@link #bloomFilter(int)} also writes a bloom filter
+ * of the serialized keys of each index block at the end of the block (after
+ * the length given at the start of a compressed block). A lookup of a key
+ * that is absent then usually stops after the search of the manifest without
+ * reading the header or key records of the block.
+ *
+ * @param <Entry>
+ *            entry type
+ * @param <Key>
+ *            key type
+ */
 public class Creator<Entry, Key> {
 
-    private static final int FILE_NUM_SIZE = 4;
-    private static final int FILE_POSITION_SIZE = 4;
+    static final int PAGE_ID_SIZE = 8;
+    static final int POSITION_SIZE = 4;
+    static final int PAGE_HEADER_SIZE = 4;
+    static final int COMPRESSED_PAGE_HEADER_SIZE = 8;
+    static final int COMPRESSED_BLOCK_HEADER_SIZE = 4;
+    static final int MANIFEST_HEADER_SIZE = 24;
+    static final int FORMAT_PLAIN = 0;
+    static final int FORMAT_COMPRESSED = 1;
+    private static final int BATCH_SIZE = 1024;
     private final KeySerializer<Key> keySerializer;
     private final Serializer<Entry> entrySerializer;
     private final int maxPageSizeBytes;
     private final int nodeMaxChildren;
     private final Function<Entry, Key> keyMapper;
-    private final AtomicInteger fileNumber = new AtomicInteger();
-    private final File directory;
-    private final String prefix;
+    private final File file;
+    private final Storage storage;
+    private final boolean compressed;
+    private final int bitsPerKey; // 0 if no bloom filters
 
+    /**
+     * Constructor that writes to the storage file {@code prefix} in the given
+     * directory. The storage file is opened at the start of each call to
+     * {@link #persist(Flowable)} and closed at the end.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer
+     * @param maxPageSizeBytes
+     *            maximum size of a page of entries or an index block, so that
+     *            each fits in one page of the storage if equal to the storage
+     *            page size
+     * @param nodeMaxChildren
+     *            max children of a node
+     * @param keyMapper
+     *            maps entry to key
+     * @param directory
+     *            directory holding the storage file
+     * @param prefix
+     *            storage file name
+     */
     public Creator(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer, int maxPageSizeBytes,
             int nodeMaxChildren, Function<Entry, Key> keyMapper, File directory, String prefix) {
+        this(keySerializer, entrySerializer, maxPageSizeBytes, nodeMaxChildren, keyMapper,
+                new File(directory, prefix), (Storage) null, false, 0);
+    }
+
+    /**
+     * Constructor that writes to the given storage. The storage is flushed at
+     * the end of each call to {@link #persist(Flowable)} but is not closed.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer
+     * @param maxPageSizeBytes
+     *            maximum size of a page of entries or an index block, so that
+     *            each fits in one page of the storage if equal to the storage
+     *            page size
+     * @param nodeMaxChildren
+     *            max children of a node
+     * @param keyMapper
+     *            maps entry to key
+     * @param storage
+     *            storage to write to
+     */
+    public Creator(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer, int maxPageSizeBytes,
+            int nodeMaxChildren, Function<Entry, Key> keyMapper, Storage storage) {
+        this(keySerializer, entrySerializer, maxPageSizeBytes, nodeMaxChildren, keyMapper, (File) null, storage,
+                false, 0);
+        Preconditions.checkNotNull(storage, "storage cannot be null");
+    }
+
+    private Creator(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer, int maxPageSizeBytes,
+            int nodeMaxChildren, Function<Entry, Key> keyMapper, File file, Storage storage, boolean compressed,
+            int bitsPerKey) {
         this.keySerializer = keySerializer;
         this.entrySerializer = entrySerializer;
         this.maxPageSizeBytes = maxPageSizeBytes;
         this.nodeMaxChildren = nodeMaxChildren;
         this.keyMapper = keyMapper;
-        this.directory = directory;
-        this.prefix = prefix;
+        this.file = file;
+        this.storage = storage;
+        this.compressed = compressed;
+        this.bitsPerKey = bitsPerKey;
+    }
+
+    /**
+     * Returns a creator with the same arguments as this one that writes the
+     * compressed format. Pages are compressed in parallel with
+     * {@link Deflater#BEST_SPEED}.
+     *
+     * @return creator writing the compressed format
+     */
+    public Creator<Entry, Key> compressed() {
+        return new Creator<Entry, Key>(keySerializer, entrySerializer, maxPageSizeBytes, nodeMaxChildren,
+                keyMapper, file, storage, true, bitsPerKey);
+    }
+
+    /**
+     * Returns a creator with the same arguments as this one that also writes
+     * a bloom filter for each index block so that lookups of absent keys
+     * rarely read index blocks. With 10 bits per key about 1% of lookups of
+     * absent keys read the block. Keys that are equal must serialize to the
+     * same bytes.
+     *
+     * @param bitsPerKey
+     *            size of the bloom filters in bits per key
+     * @return creator writing bloom filters
+     */
+    public Creator<Entry, Key> bloomFilter(int bitsPerKey) {
+        Preconditions.checkArgument(bitsPerKey > 0, "bitsPerKey must be positive");
+        return new Creator<Entry, Key>(keySerializer, entrySerializer, maxPageSizeBytes, nodeMaxChildren,
+                keyMapper, file, storage, compressed, bitsPerKey);
     }
 
     /**
-     * Returns the list of files holding the b-tree pages. The first file in the
-     * list is the root of the b-tree.
-     * 
+     * Returns the list of page ids of the index blocks of the b-tree in key
+     * order. Entries are serialized (and mapped to keys) in parallel batches
+     * on the computation scheduler, so {@code keyMapper} and the serializers
+     * must be thread-safe. Pages and index blocks are still written in entry
+     * order so the output does not depend on thread timing. Apart from one
+     * small record per index block memory use is bounded by the number of
+     * batches in flight. The manifest is written last and set as the root of
+     * the storage.
+     *
      * @param entries
-     * @return
+     *            entries in key order
+     * @return page ids of index blocks
+     */
+    public List<Long> persist(Flowable<Entry> entries) {
+        if (storage != null) {
+            List<Long> list = persist(entries, storage);
+            storage.flush();
+            return list;
+        } else {
+            try (Storage s = new Storage(file)) {
+                return persist(entries, s);
+            }
+        }
+    }
+
+    private List<Long> persist(Flowable<Entry> entries, Storage storage) {
+        int keyRecordSize = keySerializer.size() + PAGE_ID_SIZE + POSITION_SIZE;
+        int children = children(keyRecordSize);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        // compressed pages are packed back to back so only plain pages need
+        // room for their header
+        PageSplitter<Key> splitter = new PageSplitter<Key>(
+                compressed ? maxPageSizeBytes : maxPageSizeBytes - PAGE_HEADER_SIZE);
+        List<IndexBlock<Key>> blocks = new ArrayList<>();
+        Flowable<Page<Key>> pages = entries.buffer(BATCH_SIZE) //
+                .concatMapEager(batch -> Flowable.fromCallable(() -> serialize(batch)) //
+                        .subscribeOn(Schedulers.computation()), parallelism, 2) //
+                .concatMapIterable(batch -> splitter.add(batch)) //
+                .concatWith(Flowable.defer(() -> Flowable.fromIterable(splitter.finish())));
+        // each page is written and any index blocks it completes are written
+        // in the same call so that the storage is only touched by one thread
+        // at a time and the order of allocations depends only on the entries
+        IndexBlocks indexBlocks = new IndexBlocks(children, keyRecordSize, storage);
+        final Flowable<IndexBlock<Key>> written;
+        if (compressed) {
+            CompressedPageWriter writer = new CompressedPageWriter(storage);
+            written = pages //
+                    .concatMapEager(page -> Flowable.fromCallable(() -> compress(page)) //
+                            .subscribeOn(Schedulers.computation()), parallelism, 2) //
+                    .concatMapIterable(page -> indexBlocks.add(writer.write(page)));
+        } else {
+            written = pages.concatMapIterable(page -> indexBlocks.add(writePage(page, storage)));
+        }
+        written.concatWith(Flowable.defer(() -> Flowable.fromIterable(indexBlocks.finish()))) //
+                .blockingForEach(blocks::add);
+        storage.setRoot(writeManifest(blocks, children, storage));
+        List<Long> indexPages = new ArrayList<>(blocks.size());
+        for (IndexBlock<Key> block : blocks) {
+            indexPages.add(block.pageId);
+        }
+        return indexPages;
+    }
+
+    /**
+     * Returns the largest number of children such that a full plain index
+     * block, its {@code children} header records, {@code children * children}
+     * key records and bloom filter, fits in {@code maxPageSizeBytes}. The key
+     * records of a compressed block are of varying size and usually much
+     * smaller so its {@code children * children} records are sized as if
+     * plain.
+     */
+    private int children(int keyRecordSize) {
+        if (compressed) {
+            return Math.max(1, (int) Math.floor(Math.sqrt(maxPageSizeBytes / keyRecordSize)));
+        }
+        int children = 1;
+        while (indexBlockSize(children + 1, keyRecordSize) <= maxPageSizeBytes) {
+            children++;
+        }
+        return children;
+    }
+
+    private int indexBlockSize(int children, int keyRecordSize) {
+        int records = children * children;
+        int bloomFilterSize = bitsPerKey == 0 ? 0 : BloomFilter.numBytes(records, bitsPerKey);
+        return (children + records) * keyRecordSize + bloomFilterSize;
+    }
+
+    private long writeManifest(List<IndexBlock<Key>> blocks, int children, Storage storage) {
+        int recordSize = keySerializer.size() + PAGE_ID_SIZE + POSITION_SIZE;
+        ByteBuffer bb = ByteBuffer.allocate(MANIFEST_HEADER_SIZE + blocks.size() * recordSize);
+        long numEntries = 0;
+        for (IndexBlock<Key> block : blocks) {
+            numEntries += block.numRecords;
+        }
+        bb.putInt(blocks.size());
+        bb.putInt(children);
+        bb.putLong(numEntries);
+        bb.putInt(compressed ? FORMAT_COMPRESSED : FORMAT_PLAIN);
+        bb.putInt(bitsPerKey);
+        try {
+            for (IndexBlock<Key> block : blocks) {
+                bb.put(keySerializer.serialize(block.firstKey));
+                bb.putLong(block.pageId);
+                bb.putInt(block.numRecords);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        long pageId = storage.allocate(numPages(bb.capacity(), storage));
+        storage.write(pageId, 0, bb.array());
+        return pageId;
+    }
+
+    /**
+     * Collects key records into index blocks of {@code children * children}
+     * records, writing each block as soon as it is complete.
+     */
+    private final class IndexBlocks {
+
+        private final int children;
+        private final int keyRecordSize;
+        private final Storage storage;
+        private final List<KeyPagePosition<Key>> records = new ArrayList<>();
+
+        IndexBlocks(int children, int keyRecordSize, Storage storage) {
+            this.children = children;
+            this.keyRecordSize = keyRecordSize;
+            this.storage = storage;
+        }
+
+        /**
+         * Adds the records and returns the index blocks completed as a result.
+         */
+        List<IndexBlock<Key>> add(List<KeyPagePosition<Key>> list) throws IOException {
+            List<IndexBlock<Key>> completed = new ArrayList<>(1);
+            for (KeyPagePosition<Key> record : list) {
+                records.add(record);
+                if (records.size() == children * children) {
+                    completed.add(write());
+                }
+            }
+            return completed;
+        }
+
+        List<IndexBlock<Key>> finish() throws IOException {
+            if (records.isEmpty()) {
+                return Collections.emptyList();
+            } else {
+                return Collections.singletonList(write());
+            }
+        }
+
+        private IndexBlock<Key> write() throws IOException {
+            IndexBlock<Key> block;
+            if (compressed) {
+                block = writeCompressedIndexBlock(records, children, keyRecordSize, storage);
+            } else {
+                block = writeIndexBlock(records, children, keyRecordSize, storage);
+            }
+            records.clear();
+            return block;
+        }
+    }
+
+    private IndexBlock<Key> writeIndexBlock(List<KeyPagePosition<Key>> list, int children, int keyRecordSize,
+            Storage storage) throws IOException {
+        int headerRecords = (list.size() + children - 1) / children;
+        ByteBuffer bb = ByteBuffer.allocate((headerRecords + list.size()) * keyRecordSize);
+        long pageId = storage.allocate(numPages(bb.capacity() + bloomFilterSize(list), storage));
+        int j = 0;
+        for (int i = 0; i < list.size(); i += children) {
+            KeyPagePosition<Key> k = list.get(i);
+            bb.put(keySerializer.serialize(k.key));
+            bb.putLong(pageId);
+            bb.putInt((headerRecords + j * children) * keyRecordSize);
+            j++;
+        }
+        byte[][] keys = new byte[list.size()][];
+        for (int i = 0; i < list.size(); i += 1) {
+            KeyPagePosition<Key> k = list.get(i);
+            keys[i] = keySerializer.serialize(k.key);
+            bb.put(keys[i]);
+            bb.putLong(k.pageId);
+            bb.putInt(k.position);
+        }
+        storage.write(pageId, 0, bb.array());
+        writeBloomFilter(keys, pageId, bb.capacity(), storage);
+        return new IndexBlock<Key>(list.get(0).key, pageId, list.size());
+    }
+
+    private IndexBlock<Key> writeCompressedIndexBlock(List<KeyPagePosition<Key>> list, int children,
+            int keyRecordSize, Storage storage) throws IOException {
+        int headerRecords = (list.size() + children - 1) / children;
+        int headerSize = COMPRESSED_BLOCK_HEADER_SIZE + headerRecords * keyRecordSize;
+        ByteArrayOutputStream groups = new ByteArrayOutputStream();
+        byte[][] keys = new byte[list.size()][];
+        int[] groupPositions = new int[headerRecords];
+        byte[][] groupKeys = new byte[headerRecords][];
+        for (int g = 0; g < headerRecords; g++) {
+            groupPositions[g] = headerSize + groups.size();
+            byte[] previous = null;
+            long previousPageId = 0;
+            for (int i = g * children; i < Math.min(list.size(), (g + 1) * children); i++) {
+                KeyPagePosition<Key> k = list.get(i);
+                byte[] key = keySerializer.serialize(k.key);
+                keys[i] = key;
+                int shared = previous == null ? 0 : sharedPrefixLength(previous, key);
+                if (previous == null) {
+                    groupKeys[g] = key;
+                }
+                VarInts.write(groups, shared);
+                groups.write(key, shared, key.length - shared);
+                VarInts.write(groups, VarInts.zigZag(k.pageId - previousPageId));
+                VarInts.write(groups, k.position);
+                previous = key;
+                previousPageId = k.pageId;
+            }
+        }
+        int length = headerSize + groups.size();
+        long pageId = storage.allocate(numPages(length + bloomFilterSize(list), storage));
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        bb.putInt(length);
+        for (int g = 0; g < headerRecords; g++) {
+            bb.put(groupKeys[g]);
+            bb.putLong(pageId);
+            bb.putInt(groupPositions[g]);
+        }
+        bb.put(groups.toByteArray());
+        storage.write(pageId, 0, bb.array());
+        writeBloomFilter(keys, pageId, length, storage);
+        return new IndexBlock<Key>(list.get(0).key, pageId, list.size());
+    }
+
+    private int bloomFilterSize(List<KeyPagePosition<Key>> list) {
+        return bitsPerKey == 0 ? 0 : BloomFilter.numBytes(list.size(), bitsPerKey);
+    }
+
+    private void writeBloomFilter(byte[][] keys, long pageId, int offset, Storage storage) {
+        if (bitsPerKey > 0) {
+            storage.write(pageId, offset, BloomFilter.create(keys, bitsPerKey));
+        }
+    }
+
+    private static int sharedPrefixLength(byte[] a, byte[] b) {
+        int n = 0;
+        while (n < a.length && a[n] == b[n]) {
+            n++;
+        }
+        return n;
+    }
+
+    private static int numPages(int bytes, Storage storage) {
+        return Math.max(1, (bytes + storage.pageSize() - 1) / storage.pageSize());
+    }
+
+    private List<SerializedEntry<Key>> serialize(List<Entry> batch) throws Exception {
+        List<SerializedEntry<Key>> list = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            list.add(new SerializedEntry<Key>(keyMapper.apply(entry), entrySerializer.serialize(entry)));
+        }
+        return list;
+    }
+
+    /**
+     * Writes the entries of the page to a newly allocated run of pages and
+     * returns the key records for the entries.
      */
-    public List<Integer> persist(Flowable<Entry> entries) {
-        int keyRecordSize = keySerializer.size() + FILE_NUM_SIZE + FILE_POSITION_SIZE;
-        int children = (int) Math.floor(Math.sqrt(maxPageSizeBytes / keyRecordSize));
-        return entries.map(entry -> serialize(entry)) //
-                .compose(splitIntoPages()) //
-                .flatMapIterable(list -> toKeyFilePositions(list, writeToFile(list))) //
-                .buffer(children * children) //
-                .map(list -> {
-                    int fileNum = fileNumber.incrementAndGet();
-                    File file = new File(directory, prefix + fileNum);
-                    try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(file))) {
-                        int j = 0;
-                        for (int i = 0; i < list.size(); i += children) {
-                            KeyFilePosition<Key> k = list.get(i);
-                            keySerializer.serialize(k.key);
-                            fos.write(keySerializer.serialize(k.key));
-                            fos.write(intToByteArray(fileNum));
-                            fos.write(intToByteArray((j + 1) * children * keyRecordSize));
-                            j++;
-                        }
-                        for (int i = 0; i < list.size(); i += 1) {
-                            KeyFilePosition<Key> k = list.get(i);
-                            keySerializer.serialize(k.key);
-                            fos.write(keySerializer.serialize(k.key));
-                            fos.write(intToByteArray(k.fileNumber));
-                            fos.write(intToByteArray(k.position));
-                            j++;
-                        }
-                    }
-                    return fileNum;
-                }) //
-                .toList() //
-                .blockingGet();
-    }
-
-    private static final byte[] intToByteArray(int value) {
-        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
-    }
-
-    private SerializedEntry<Entry> serialize(Entry entry) throws IOException {
-        return new SerializedEntry<Entry>(entry, entrySerializer.serialize(entry));
-    }
-
-    private FlowableTransformer<SerializedEntry<Entry>, List<SerializedEntry<Entry>>> splitIntoPages() {
-        return Transformers.<SerializedEntry<Entry>>toListWhile( //
-                (list, t) -> {
-                    int size = list.stream() //
-                            .map(entry -> entry.bytes.length) //
-                            .collect(Collectors.summingInt(x -> x));
-                    return size + t.bytes.length <= maxPageSizeBytes || list.size() == 0;
-                });
-    }
-
-    private List<KeyFilePosition<Key>> toKeyFilePositions(List<SerializedEntry<Entry>> list, int fileNumber) {
-        int[] position = new int[1];
-        return list.stream().map(en -> {
-            Key key;
-            try {
-                key = keyMapper.apply(en.entry);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+    private List<KeyPagePosition<Key>> writePage(Page<Key> page, Storage storage) {
+        int end = PAGE_HEADER_SIZE + page.bytes;
+        long pageId = storage.allocate(numPages(end, storage));
+        storage.write(pageId, 0, ByteBuffer.allocate(PAGE_HEADER_SIZE).putInt(end).array());
+        List<KeyPagePosition<Key>> list = new ArrayList<>(page.entries.size());
+        int position = PAGE_HEADER_SIZE;
+        for (SerializedEntry<Key> en : page.entries) {
+            storage.write(pageId, position, en.bytes);
+            list.add(new KeyPagePosition<Key>(en.key, pageId, position));
+            position += en.bytes.length;
+        }
+        return list;
+    }
+
+    private CompressedPage<Key> compress(Page<Key> page) {
+        int n = page.entries.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(page.bytes + 2 * n);
+        int[] positions = new int[n];
+        List<Key> keys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            SerializedEntry<Key> en = page.entries.get(i);
+            positions[i] = out.size();
+            keys.add(en.key);
+            VarInts.write(out, en.bytes.length);
+            out.write(en.bytes, 0, en.bytes.length);
+        }
+        byte[] raw = out.toByteArray();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                deflated.write(buffer, 0, count);
             }
-            KeyFilePosition<Key> kp = new KeyFilePosition<Key>(key, fileNumber, position[0]);
-            position[0] += en.bytes.length;
-            return kp;
-        }).collect(Collectors.toList());
+        } finally {
+            deflater.end();
+        }
+        int end = COMPRESSED_PAGE_HEADER_SIZE + deflated.size();
+        byte[] run = ByteBuffer.allocate(end) //
+                .putInt(end) //
+                .putInt(raw.length) //
+                .put(deflated.toByteArray()) //
+                .array();
+        return new CompressedPage<Key>(run, keys, positions);
     }
 
-    private int writeToFile(List<SerializedEntry<Entry>> list) throws Exception, IOException, FileNotFoundException {
-        int size = list.stream() //
-                .map(entry -> entry.bytes.length) //
-                .collect(Collectors.summingInt(x -> x));
-        byte[] bytes = new byte[size];
-        int i = 0;
-        for (SerializedEntry<Entry> en : list) {
-            System.arraycopy(en.bytes, 0, bytes, i, en.bytes.length);
-            i += en.bytes.length;
+    /**
+     * Appends compressed page runs one after another so that a storage page
+     * can hold several of them. A new run of storage pages is allocated when
+     * the remaining space is too small.
+     */
+    private static final class CompressedPageWriter {
+
+        private final Storage storage;
+
+        // mutable
+        private long address;
+        private long remaining;
+
+        CompressedPageWriter(Storage storage) {
+            this.storage = storage;
         }
-        int fileNumber = this.fileNumber.incrementAndGet();
-        File file = new File(directory, prefix + fileNumber);
-        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(file))) {
-            fos.write(bytes);
+
+        /**
+         * Writes the compressed page and returns its key records, the page id
+         * of each record being the byte address of the compressed page.
+         */
+        <Key> List<KeyPagePosition<Key>> write(CompressedPage<Key> page) {
+            int pageSize = storage.pageSize();
+            if (page.run.length > remaining) {
+                int n = numPages(page.run.length, storage);
+                address = storage.allocate(n) * pageSize;
+                remaining = (long) n * pageSize;
+            }
+            storage.write(address / pageSize, (int) (address % pageSize), page.run);
+            List<KeyPagePosition<Key>> list = new ArrayList<>(page.keys.size());
+            for (int i = 0; i < page.keys.size(); i++) {
+                list.add(new KeyPagePosition<Key>(page.keys.get(i), address, page.positions[i]));
+            }
+            address += page.run.length;
+            remaining -= page.run.length;
+            return list;
         }
-        return fileNumber;
     }
 
-    private static final class KeyFilePosition<Key> {
+    /**
+     * Groups serialized entries into pages of at most {@code maxPageSizeBytes}
+     * keeping a running total of the size of the current page.
+     */
+    private static final class PageSplitter<Key> {
+
+        private final int maxPageSizeBytes;
+
+        // mutable
+        private Page<Key> page = new Page<Key>();
+
+        PageSplitter(int maxPageSizeBytes) {
+            this.maxPageSizeBytes = maxPageSizeBytes;
+        }
+
+        /**
+         * Adds the entries to the current page and returns the pages completed
+         * as a result.
+         */
+        List<Page<Key>> add(List<SerializedEntry<Key>> entries) {
+            List<Page<Key>> completed = new ArrayList<>(1);
+            for (SerializedEntry<Key> en : entries) {
+                if (!page.entries.isEmpty() && page.bytes + en.bytes.length > maxPageSizeBytes) {
+                    completed.add(page);
+                    page = new Page<Key>();
+                }
+                page.entries.add(en);
+                page.bytes += en.bytes.length;
+            }
+            return completed;
+        }
+
+        List<Page<Key>> finish() {
+            if (page.entries.isEmpty()) {
+                return Collections.emptyList();
+            } else {
+                return Collections.singletonList(page);
+            }
+        }
+    }
+
+    private static final class Page<Key> {
+        final List<SerializedEntry<Key>> entries = new ArrayList<>();
+        int bytes;
+    }
+
+    private static final class CompressedPage<Key> {
+        final byte[] run;
+        final List<Key> keys;
+        final int[] positions;
+
+        CompressedPage(byte[] run, List<Key> keys, int[] positions) {
+            this.run = run;
+            this.keys = keys;
+            this.positions = positions;
+        }
+    }
+
+    private static final class IndexBlock<Key> {
+        final Key firstKey;
+        final long pageId;
+        final int numRecords;
+
+        IndexBlock(Key firstKey, long pageId, int numRecords) {
+            this.firstKey = firstKey;
+            this.pageId = pageId;
+            this.numRecords = numRecords;
+        }
+    }
+
+    private static final class KeyPagePosition<Key> {
         final Key key;
-        final int fileNumber;
+        final long pageId;
         final int position;
 
-        KeyFilePosition(Key key, int fileNumber, int position) {
+        KeyPagePosition(Key key, long pageId, int position) {
             this.key = key;
-            this.fileNumber = fileNumber;
+            this.pageId = pageId;
             this.position = position;
         }
     }
 
-    private static class SerializedEntry<Entry> {
-        final Entry entry;
+    private static final class SerializedEntry<Key> {
+        final Key key;
         final byte[] bytes;
 
-        SerializedEntry(Entry entry, byte[] bytes) {
-            super();
-            this.entry = entry;
+        SerializedEntry(Key key, byte[] bytes) {
+            this.key = key;
             this.bytes = bytes;
         }
     }
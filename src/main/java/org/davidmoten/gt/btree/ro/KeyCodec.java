@@ -0,0 +1,51 @@
+package org.davidmoten.gt.btree.ro;
+
+/**
+ * A fixed size {@link KeySerializer} whose encoding preserves order: for any
+ * keys a and b, a &lt; b if and only if the encoding of a is less than the
+ * encoding of b when compared as unsigned bytes lexicographically (see
+ * {@link KeyCodecs#compare(byte[], int, byte[], int, int)}). Stored keys can
+ * then be compared with a search key without deserializing them.
+ *
+ * @param <T>
+ *            key type
+ */
+public interface KeyCodec<T> extends KeySerializer<T> {
+
+    /**
+     * Writes the {@link #size()} byte encoding of the key into the array
+     * starting at the given offset.
+     * 
+     * @param t
+     *            key, should not be null
+     * @param bytes
+     *            destination
+     * @param offset
+     *            position in destination of first byte
+     */
+    void encode(T t, byte[] bytes, int offset);
+
+    /**
+     * Returns the key whose encoding starts at the given offset.
+     * 
+     * @param bytes
+     *            source
+     * @param offset
+     *            position in source of first byte
+     * @return key
+     */
+    T decode(byte[] bytes, int offset);
+
+    @Override
+    default byte[] serialize(T t) {
+        byte[] bytes = new byte[size()];
+        encode(t, bytes, 0);
+        return bytes;
+    }
+
+    @Override
+    default T deserialize(byte[] bytes) {
+        return decode(bytes, 0);
+    }
+
+}
@@ -0,0 +1,267 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Order preserving {@link KeyCodec} implementations. Numbers are written big
+ * endian with the sign bit flipped (and for doubles the other bits flipped
+ * too if negative) so that unsigned byte order matches numeric order.
+ */
+public final class KeyCodecs {
+
+    private KeyCodecs() {
+        // prevent instantiation
+    }
+
+    public static KeyCodec<Integer> intKey() {
+        return IntKeyCodec.INSTANCE;
+    }
+
+    public static KeyCodec<Long> longKey() {
+        return LongKeyCodec.INSTANCE;
+    }
+
+    /**
+     * Returns a codec for doubles ordered as {@link Double#compare} orders
+     * them (-0.0 before 0.0 and NaN last).
+     * 
+     * @return double codec
+     */
+    public static KeyCodec<Double> doubleKey() {
+        return DoubleKeyCodec.INSTANCE;
+    }
+
+    /**
+     * Returns a codec for strings of at most {@code maxBytes} bytes when
+     * encoded as UTF-8. The encoding is padded with zero bytes. Strings are
+     * ordered by unicode code point which matches {@link String#compareTo}
+     * unless they contain characters outside the basic multilingual plane.
+     * Strings containing the null character are rejected.
+     * 
+     * @param maxBytes
+     *            maximum length of a string encoded as UTF-8
+     * @return string codec
+     */
+    public static KeyCodec<String> utf8(int maxBytes) {
+        return new Utf8KeyCodec(maxBytes);
+    }
+
+    /**
+     * Returns a codec for a composite key of two parts (for example a time and
+     * a cell) ordered by the first part and then by the second.
+     * 
+     * @param first
+     *            codec for the first part
+     * @param second
+     *            codec for the second part
+     * @param getFirst
+     *            returns the first part of a key
+     * @param getSecond
+     *            returns the second part of a key
+     * @param create
+     *            creates a key from its parts
+     * @param <T>
+     *            key type
+     * @param <A>
+     *            type of first part
+     * @param <B>
+     *            type of second part
+     * @return composite codec
+     */
+    public static <T, A, B> KeyCodec<T> pair(KeyCodec<A> first, KeyCodec<B> second, Function<T, A> getFirst,
+            Function<T, B> getSecond, BiFunction<A, B, T> create) {
+        return new PairKeyCodec<T, A, B>(first, second, getFirst, getSecond, create);
+    }
+
+    /**
+     * Compares {@code length} bytes of the two arrays as unsigned bytes in
+     * lexicographic order.
+     * 
+     * @param a
+     *            first array
+     * @param aOffset
+     *            start in first array
+     * @param b
+     *            second array
+     * @param bOffset
+     *            start in second array
+     * @param length
+     *            number of bytes to compare
+     * @return negative, zero or positive as the bytes of a are less than, equal
+     *         to or greater than the bytes of b
+     */
+    public static int compare(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int x = a[aOffset + i] & 0xff;
+            int y = b[bOffset + i] & 0xff;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return 0;
+    }
+
+    private static void putLong(long x, byte[] bytes, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) x;
+            x >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long x = 0;
+        for (int i = 0; i < 8; i++) {
+            x = (x << 8) | (bytes[offset + i] & 0xff);
+        }
+        return x;
+    }
+
+    private static final class IntKeyCodec implements KeyCodec<Integer> {
+
+        static final IntKeyCodec INSTANCE = new IntKeyCodec();
+
+        @Override
+        public void encode(Integer t, byte[] bytes, int offset) {
+            int x = t ^ Integer.MIN_VALUE;
+            bytes[offset] = (byte) (x >>> 24);
+            bytes[offset + 1] = (byte) (x >>> 16);
+            bytes[offset + 2] = (byte) (x >>> 8);
+            bytes[offset + 3] = (byte) x;
+        }
+
+        @Override
+        public Integer decode(byte[] bytes, int offset) {
+            int x = ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                    | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+            return x ^ Integer.MIN_VALUE;
+        }
+
+        @Override
+        public int size() {
+            return 4;
+        }
+    }
+
+    private static final class LongKeyCodec implements KeyCodec<Long> {
+
+        static final LongKeyCodec INSTANCE = new LongKeyCodec();
+
+        @Override
+        public void encode(Long t, byte[] bytes, int offset) {
+            putLong(t ^ Long.MIN_VALUE, bytes, offset);
+        }
+
+        @Override
+        public Long decode(byte[] bytes, int offset) {
+            return getLong(bytes, offset) ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        public int size() {
+            return 8;
+        }
+    }
+
+    private static final class DoubleKeyCodec implements KeyCodec<Double> {
+
+        static final DoubleKeyCodec INSTANCE = new DoubleKeyCodec();
+
+        @Override
+        public void encode(Double t, byte[] bytes, int offset) {
+            long x = Double.doubleToLongBits(t);
+            // negative numbers have all bits flipped so that larger magnitudes
+            // sort first, positive numbers just have the sign bit set
+            putLong(x < 0 ? ~x : x ^ Long.MIN_VALUE, bytes, offset);
+        }
+
+        @Override
+        public Double decode(byte[] bytes, int offset) {
+            long x = getLong(bytes, offset);
+            return Double.longBitsToDouble(x < 0 ? x ^ Long.MIN_VALUE : ~x);
+        }
+
+        @Override
+        public int size() {
+            return 8;
+        }
+    }
+
+    private static final class Utf8KeyCodec implements KeyCodec<String> {
+
+        private final int maxBytes;
+
+        Utf8KeyCodec(int maxBytes) {
+            Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void encode(String t, byte[] bytes, int offset) {
+            Preconditions.checkArgument(t.indexOf('\u0000') == -1, "string cannot contain \\u0000");
+            byte[] b = t.getBytes(StandardCharsets.UTF_8);
+            Preconditions.checkArgument(b.length <= maxBytes, "string is longer than maxBytes when encoded");
+            System.arraycopy(b, 0, bytes, offset, b.length);
+            for (int i = b.length; i < maxBytes; i++) {
+                bytes[offset + i] = 0;
+            }
+        }
+
+        @Override
+        public String decode(byte[] bytes, int offset) {
+            int length = 0;
+            while (length < maxBytes && bytes[offset + length] != 0) {
+                length++;
+            }
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int size() {
+            return maxBytes;
+        }
+    }
+
+    private static final class PairKeyCodec<T, A, B> implements KeyCodec<T> {
+
+        private final KeyCodec<A> first;
+        private final KeyCodec<B> second;
+        private final Function<T, A> getFirst;
+        private final Function<T, B> getSecond;
+        private final BiFunction<A, B, T> create;
+
+        PairKeyCodec(KeyCodec<A> first, KeyCodec<B> second, Function<T, A> getFirst, Function<T, B> getSecond,
+                BiFunction<A, B, T> create) {
+            Preconditions.checkNotNull(first, "first cannot be null");
+            Preconditions.checkNotNull(second, "second cannot be null");
+            Preconditions.checkNotNull(getFirst, "getFirst cannot be null");
+            Preconditions.checkNotNull(getSecond, "getSecond cannot be null");
+            Preconditions.checkNotNull(create, "create cannot be null");
+            this.first = first;
+            this.second = second;
+            this.getFirst = getFirst;
+            this.getSecond = getSecond;
+            this.create = create;
+        }
+
+        @Override
+        public void encode(T t, byte[] bytes, int offset) {
+            first.encode(getFirst.apply(t), bytes, offset);
+            second.encode(getSecond.apply(t), bytes, offset + first.size());
+        }
+
+        @Override
+        public T decode(byte[] bytes, int offset) {
+            return create.apply(first.decode(bytes, offset), second.decode(bytes, offset + first.size()));
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+    }
+
+}
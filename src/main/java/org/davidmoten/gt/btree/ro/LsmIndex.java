@@ -0,0 +1,811 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.davidmoten.gt.btree.ConcurrentBTree;
+import org.davidmoten.gt.btree.SyncPolicy;
+import org.davidmoten.gt.btree.WriteAheadLog;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Function;
+
+/**
+ * Log-structured index for write loads too high for a b-tree updated in
+ * place. Entries are added to an in-memory memtable (a
+ * {@link ConcurrentBTree}) and to its {@link WriteAheadLog}. When the
+ * memtable holds {@code memtableMaxEntries} entries it is frozen, a new
+ * memtable takes the writes and the frozen memtable is written in the
+ * background by a {@link Creator} to an immutable sorted run (the storage
+ * file {@code prefix.<first>-<last>} in the directory, named by the range of
+ * memtable sequence numbers it holds), after which its log is deleted. Random
+ * writes to the index so become sequential writes of whole files.
+ *
+ * <p>
+ * Runs are compacted in the background in tiers: when the {@value #FANOUT}
+ * newest runs are all of the same size tier they are merged into one run of
+ * the next tier, so each entry is rewritten about once per tier.
+ * {@link #compact()} merges all runs into one.
+ *
+ * <p>
+ * Reads merge the runs and memtables. Sources are ordered oldest first and
+ * entries with equal keys are returned oldest first, so as for the b-trees
+ * duplicate keys are kept in the order they were added and
+ * {@link #get(Object)} returns the first entry added with the key. A read
+ * holds on to the runs it started with so compaction never removes a run
+ * from under it.
+ *
+ * <p>
+ * On construction runs found in the directory are opened (a run whose
+ * sequence numbers are covered by another run is left over from an
+ * interrupted compaction and is deleted) and logs of memtables that had not
+ * been written to runs are replayed and written in the background.
+ *
+ * <p>
+ * Thread-safe.
+ *
+ * @param <Entry>
+ *            entry type
+ * @param <Key>
+ *            key type
+ */
+public final class LsmIndex<Entry, Key> implements Closeable {
+
+    private static final int FANOUT = 4;
+    private static final int MEMTABLE_MAX_CHILDREN = 64;
+    // entries requested from each source at a time by a merge
+    private static final int MERGE_BUFFER_SIZE = 256;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final KeySerializer<Key> keySerializer;
+    private final Serializer<Entry> entrySerializer;
+    private final Comparator<Key> comparator;
+    private final Function<Entry, Key> keyMapper;
+    private final int memtableMaxEntries;
+    private final int maxPageSizeBytes;
+    private final SyncPolicy syncPolicy;
+    private final File directory;
+    private final String prefix;
+    // flushes and compactions run one at a time in the order scheduled
+    private final Scheduler.Worker worker;
+    private final Object lock = new Object();
+
+    // guarded by lock, state is replaced rather than modified so reads can
+    // take a consistent copy cheaply
+    private volatile State state;
+    private long nextSequence;
+    private int pending; // background tasks scheduled but not finished
+    private Throwable failure;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer (also used for log records)
+     * @param comparator
+     *            key comparator
+     * @param keyMapper
+     *            maps entry to key
+     * @param memtableMaxEntries
+     *            number of entries at which a memtable is frozen and written
+     *            to a run
+     * @param maxPageSizeBytes
+     *            maximum size of a page of entries of a run
+     * @param syncPolicy
+     *            when the logs of memtables are forced to the storage device
+     * @param scheduler
+     *            scheduler that flushes memtables and compacts runs
+     * @param directory
+     *            directory holding the runs and logs
+     * @param prefix
+     *            storage file name prefix
+     */
+    public LsmIndex(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer,
+            Comparator<Key> comparator, Function<Entry, Key> keyMapper, int memtableMaxEntries,
+            int maxPageSizeBytes, SyncPolicy syncPolicy, Scheduler scheduler, File directory, String prefix) {
+        Preconditions.checkNotNull(keySerializer, "keySerializer cannot be null");
+        Preconditions.checkNotNull(entrySerializer, "entrySerializer cannot be null");
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkNotNull(keyMapper, "keyMapper cannot be null");
+        Preconditions.checkArgument(memtableMaxEntries > 0, "memtableMaxEntries must be positive");
+        Preconditions.checkNotNull(syncPolicy, "syncPolicy cannot be null");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        Preconditions.checkNotNull(directory, "directory cannot be null");
+        Preconditions.checkNotNull(prefix, "prefix cannot be null");
+        this.keySerializer = keySerializer;
+        this.entrySerializer = entrySerializer;
+        this.comparator = comparator;
+        this.keyMapper = keyMapper;
+        this.memtableMaxEntries = memtableMaxEntries;
+        this.maxPageSizeBytes = maxPageSizeBytes;
+        this.syncPolicy = syncPolicy;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.worker = scheduler.createWorker();
+        recover();
+    }
+
+    private void recover() {
+        Pattern runPattern = Pattern.compile(Pattern.quote(prefix) + "\\.(\\d+)-(\\d+)");
+        Pattern logPattern = Pattern.compile(Pattern.quote(prefix) + "\\.(\\d+)" + Pattern.quote(LOG_SUFFIX));
+        List<long[]> runRanges = new ArrayList<>();
+        TreeMap<Long, File> logs = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher m = runPattern.matcher(file.getName());
+                Matcher lm = logPattern.matcher(file.getName());
+                if (file.getName().startsWith(prefix + ".") && file.getName().endsWith(TEMP_SUFFIX)) {
+                    // left over from an interrupted flush or compaction
+                    file.delete();
+                } else if (m.matches()) {
+                    runRanges.add(new long[] { Long.parseLong(m.group(1)), Long.parseLong(m.group(2)) });
+                } else if (lm.matches()) {
+                    logs.put(Long.parseLong(lm.group(1)), file);
+                }
+            }
+        }
+        Collections.sort(runRanges, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+        List<Run> runs = new ArrayList<>();
+        long maxSequence = -1;
+        for (long[] range : runRanges) {
+            File file = runFile(range[0], range[1]);
+            if (range[1] <= maxSequence) {
+                // merged into an earlier run by a compaction that did not
+                // finish deleting its inputs
+                delete(file);
+            } else {
+                runs.add(new Run(range[0], range[1], file, open(file)));
+                maxSequence = range[1];
+            }
+        }
+        List<Memtable> frozen = new ArrayList<>();
+        for (java.util.Map.Entry<Long, File> e : logs.entrySet()) {
+            if (e.getKey() <= maxSequence) {
+                // written to a run before the log was deleted
+                delete(e.getValue());
+            } else {
+                Memtable m = new Memtable(e.getKey());
+                m.log.replay(record -> {
+                    Entry entry = deserialize(record);
+                    m.tree.put(key(entry), entry);
+                });
+                if (m.tree.isEmpty()) {
+                    m.log.close();
+                    delete(m.logFile);
+                } else {
+                    frozen.add(m);
+                }
+                maxSequence = e.getKey();
+            }
+        }
+        nextSequence = maxSequence + 1;
+        state = new State(runs, frozen, new Memtable(nextSequence++));
+        for (int i = 0; i < frozen.size(); i++) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Adds the entry to the memtable and returns once it is in the log of the
+     * memtable (see {@link SyncPolicy}).
+     *
+     * @param entry
+     *            entry
+     */
+    public void add(Entry entry) {
+        Preconditions.checkNotNull(entry, "entry cannot be null");
+        // map and serialize outside the lock
+        Key key = key(entry);
+        byte[] record = serialize(entry);
+        Memtable m;
+        boolean full = false;
+        long sequence;
+        synchronized (lock) {
+            checkUsable();
+            m = state.active;
+            m.tree.put(key, entry);
+            sequence = m.log.append(record);
+            if (m.tree.size() >= memtableMaxEntries) {
+                freeze();
+                full = true;
+            }
+        }
+        m.log.commit(sequence);
+        if (full) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns the first entry added with the given key or null if there is
+     * none.
+     *
+     * @param key
+     *            key
+     * @return first entry with the key or null
+     */
+    public Entry get(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        State s = acquire();
+        try {
+            for (Run run : s.runs) {
+                Entry entry = run.tree.get(key);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            for (Memtable m : s.memtables()) {
+                Entry entry = m.tree.get(key);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            return null;
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * Returns the entries with keys in the given range in key order, merged
+     * from the runs and memtables. Entries are only read from each source as
+     * they are requested so the stream supports backpressure.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry> range(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return Flowable.using( //
+                this::acquire, //
+                s -> {
+                    List<Flowable<Entry>> sources = new ArrayList<>();
+                    for (Run run : s.runs) {
+                        sources.add(run.tree.range(lowerInclusive, upperExclusive));
+                    }
+                    for (Memtable m : s.memtables()) {
+                        sources.add(m.tree.range(lowerInclusive, upperExclusive));
+                    }
+                    return merge(sources);
+                }, //
+                this::release);
+    }
+
+    public long size() {
+        State s = acquire();
+        try {
+            long n = 0;
+            for (Run run : s.runs) {
+                n += run.tree.size();
+            }
+            for (Memtable m : s.memtables()) {
+                n += m.tree.size();
+            }
+            return n;
+        } finally {
+            release(s);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Freezes the memtable (if it has any entries) and blocks until it and
+     * any other frozen memtables have been written to runs and the resulting
+     * compactions are done.
+     */
+    public void flush() {
+        boolean frozen = false;
+        synchronized (lock) {
+            checkUsable();
+            if (state.active.tree.size() > 0) {
+                freeze();
+                frozen = true;
+            }
+        }
+        if (frozen) {
+            scheduleFlush();
+        }
+        awaitIdle();
+    }
+
+    /**
+     * Merges all runs into one and blocks until done. Memtables are not
+     * flushed first.
+     */
+    public void compact() {
+        synchronized (lock) {
+            checkUsable();
+        }
+        schedule(() -> {
+            List<Run> runs = state.runs;
+            if (runs.size() > 1) {
+                compact(runs);
+            }
+        });
+        awaitIdle();
+    }
+
+    /**
+     * Returns the number of sequence numbers (memtables) held by each run,
+     * oldest run first.
+     */
+    @VisibleForTesting
+    List<Long> runSpans() {
+        List<Long> list = new ArrayList<>();
+        for (Run run : state.runs) {
+            list.add(run.lastSequence - run.firstSequence + 1);
+        }
+        return list;
+    }
+
+    /**
+     * Waits for background flushes and compactions to finish and closes the
+     * runs and logs. Entries in memtables are not written to runs, they are
+     * replayed from the logs when the index is opened again.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            while (pending > 0) {
+                await();
+            }
+        }
+        worker.dispose();
+        State s = state;
+        for (Memtable m : s.memtables()) {
+            m.log.close();
+        }
+        for (Run run : s.runs) {
+            run.release();
+        }
+    }
+
+    private void checkUsable() {
+        Preconditions.checkArgument(!closed, "index is closed");
+        if (failure != null) {
+            throw new RuntimeException("background flush or compaction failed", failure);
+        }
+    }
+
+    // called holding the lock
+    private void freeze() {
+        State s = state;
+        List<Memtable> frozen = new ArrayList<>(s.frozen);
+        frozen.add(s.active);
+        state = new State(s.runs, frozen, new Memtable(nextSequence++));
+    }
+
+    /**
+     * Schedules the flush of a frozen memtable. Writers schedule flushes
+     * after releasing the lock so the tasks may run in a different order to
+     * the memtables being frozen, but as each frozen memtable schedules one
+     * task and each task flushes the oldest frozen memtable, runs are still
+     * added oldest first.
+     */
+    private void scheduleFlush() {
+        schedule(() -> {
+            flush(state.frozen.get(0));
+            compactTiers();
+        });
+    }
+
+    private void schedule(Runnable task) {
+        synchronized (lock) {
+            pending++;
+        }
+        worker.schedule(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                synchronized (lock) {
+                    failure = e;
+                }
+            } finally {
+                synchronized (lock) {
+                    pending--;
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void awaitIdle() {
+        synchronized (lock) {
+            while (pending > 0) {
+                await();
+            }
+            if (failure != null) {
+                throw new RuntimeException("background flush or compaction failed", failure);
+            }
+        }
+    }
+
+    private void await() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the frozen memtable to a run, replaces the memtable by the run
+     * and deletes the log of the memtable.
+     */
+    private void flush(Memtable m) {
+        File file = runFile(m.sequence, m.sequence);
+        write(m.tree.entries().map(x -> x.value()), file);
+        Run run = new Run(m.sequence, m.sequence, file, open(file));
+        synchronized (lock) {
+            State s = state;
+            List<Run> runs = new ArrayList<>(s.runs);
+            runs.add(run);
+            checkOrdered(runs);
+            List<Memtable> frozen = new ArrayList<>(s.frozen);
+            frozen.remove(m);
+            state = new State(runs, frozen, s.active);
+        }
+        m.log.close();
+        delete(m.logFile);
+    }
+
+    /**
+     * Merges the newest runs while the {@link #FANOUT} newest are all in the
+     * same size tier.
+     */
+    private void compactTiers() {
+        while (true) {
+            List<Run> runs = state.runs;
+            int n = runs.size();
+            if (n < FANOUT) {
+                return;
+            }
+            int tier = tier(runs.get(n - 1));
+            for (int i = n - FANOUT; i < n - 1; i++) {
+                if (tier(runs.get(i)) != tier) {
+                    return;
+                }
+            }
+            compact(runs.subList(n - FANOUT, n));
+        }
+    }
+
+    // runs of up to memtableMaxEntries * FANOUT^t entries are in tier t
+    private int tier(Run run) {
+        long size = run.tree.size();
+        long limit = memtableMaxEntries;
+        int tier = 0;
+        while (size > limit) {
+            limit *= FANOUT;
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Merges the consecutive runs into one run that takes their place. The
+     * inputs are deleted once no read is using them.
+     */
+    private void compact(List<Run> inputs) {
+        checkOrdered(inputs);
+        Run first = inputs.get(0);
+        Run last = inputs.get(inputs.size() - 1);
+        File file = runFile(first.firstSequence, last.lastSequence);
+        List<Flowable<Entry>> sources = new ArrayList<>();
+        for (Run run : inputs) {
+            sources.add(run.tree.entries());
+        }
+        write(merge(sources), file);
+        Run merged = new Run(first.firstSequence, last.lastSequence, file, open(file));
+        synchronized (lock) {
+            State s = state;
+            List<Run> runs = new ArrayList<>();
+            for (Run run : s.runs) {
+                if (run == first) {
+                    runs.add(merged);
+                } else if (!inputs.contains(run)) {
+                    runs.add(run);
+                }
+            }
+            state = new State(runs, s.frozen, s.active);
+        }
+        for (Run run : inputs) {
+            run.obsolete();
+        }
+    }
+
+    /**
+     * Checks that the runs hold increasing, non-overlapping ranges of
+     * sequence numbers. Sequence numbers of memtables that were empty when
+     * the index was closed are not used by any run so the ranges may have
+     * gaps.
+     */
+    private void checkOrdered(List<Run> runs) {
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            if (run.firstSequence > run.lastSequence
+                    || (i > 0 && run.firstSequence <= runs.get(i - 1).lastSequence)) {
+                throw new IllegalStateException("runs are not in sequence order at " + run.file.getName());
+            }
+        }
+    }
+
+    /**
+     * Writes the entries to the file under a temporary name and renames it
+     * when complete.
+     */
+    private void write(Flowable<Entry> entries, File file) {
+        File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+        temp.delete();
+        new Creator<Entry, Key>(keySerializer, entrySerializer, maxPageSizeBytes, 0, keyMapper, directory,
+                temp.getName()).persist(entries);
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the entries of the sources (each in key order, oldest source
+     * first) in key order with entries of equal keys from older sources
+     * first.
+     */
+    private Flowable<Entry> merge(List<Flowable<Entry>> sources) {
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return Flowable.generate( //
+                () -> new Merger(sources), //
+                (merger, emitter) -> {
+                    Entry entry = merger.next();
+                    if (entry == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(entry);
+                    }
+                    return merger;
+                }, //
+                Merger::dispose);
+    }
+
+    private State acquire() {
+        synchronized (lock) {
+            State s = state;
+            for (Run run : s.runs) {
+                run.retain();
+            }
+            return s;
+        }
+    }
+
+    private void release(State s) {
+        for (Run run : s.runs) {
+            run.release();
+        }
+    }
+
+    private File runFile(long firstSequence, long lastSequence) {
+        return new File(directory, prefix + "." + firstSequence + "-" + lastSequence);
+    }
+
+    private File logFile(long sequence) {
+        return new File(directory, prefix + "." + sequence + LOG_SUFFIX);
+    }
+
+    private ReadOnlyBTree<Entry, Key> open(File file) {
+        return new ReadOnlyBTree<Entry, Key>(keySerializer, entrySerializer, comparator, directory,
+                file.getName());
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            throw new RuntimeException("could not delete " + file);
+        }
+    }
+
+    private Key key(Entry entry) {
+        try {
+            return keyMapper.apply(entry);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] serialize(Entry entry) {
+        try {
+            return entrySerializer.serialize(entry);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Entry deserialize(byte[] bytes) {
+        try {
+            return entrySerializer.deserialize(bytes);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs, frozen memtables and the active memtable, each list oldest
+     * first.
+     */
+    private final class State {
+
+        final List<Run> runs;
+        final List<Memtable> frozen;
+        final Memtable active;
+
+        State(List<Run> runs, List<Memtable> frozen, Memtable active) {
+            this.runs = runs;
+            this.frozen = frozen;
+            this.active = active;
+        }
+
+        List<Memtable> memtables() {
+            List<Memtable> list = new ArrayList<>(frozen);
+            list.add(active);
+            return list;
+        }
+    }
+
+    private final class Memtable {
+
+        final long sequence;
+        final ConcurrentBTree<Key, Entry> tree = new ConcurrentBTree<Key, Entry>(comparator,
+                MEMTABLE_MAX_CHILDREN);
+        final File logFile;
+        final WriteAheadLog log;
+
+        Memtable(long sequence) {
+            this.sequence = sequence;
+            this.logFile = logFile(sequence);
+            this.log = new WriteAheadLog(logFile, syncPolicy);
+        }
+    }
+
+    /**
+     * An immutable sorted run holding the entries of the memtables with
+     * sequence numbers from first to last. The run is closed when it has
+     * been released by the state that holds it and by every read that
+     * retained it, and its file is deleted as well if a compaction has
+     * replaced it.
+     */
+    private final class Run {
+
+        final long firstSequence;
+        final long lastSequence;
+        final File file;
+        final ReadOnlyBTree<Entry, Key> tree;
+
+        // guarded by this
+        private int references = 1; // held by the state
+        private boolean obsolete;
+
+        Run(long firstSequence, long lastSequence, File file, ReadOnlyBTree<Entry, Key> tree) {
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.file = file;
+            this.tree = tree;
+        }
+
+        synchronized void retain() {
+            references++;
+        }
+
+        void release() {
+            boolean close;
+            synchronized (this) {
+                references--;
+                close = references == 0;
+            }
+            if (close) {
+                tree.close();
+                if (obsolete) {
+                    delete(file);
+                }
+            }
+        }
+
+        // releases the reference of the state
+        void obsolete() {
+            synchronized (this) {
+                obsolete = true;
+            }
+            release();
+        }
+    }
+
+    /**
+     * Pulls the next entry in key order from the sources.
+     */
+    private final class Merger {
+
+        private final List<Iterator<Entry>> iterators = new ArrayList<>();
+        private final List<Entry> heads = new ArrayList<>();
+        private final List<Key> keys = new ArrayList<>();
+
+        Merger(List<Flowable<Entry>> sources) {
+            for (Flowable<Entry> source : sources) {
+                iterators.add(source.blockingIterable(MERGE_BUFFER_SIZE).iterator());
+                heads.add(null);
+                keys.add(null);
+                advance(iterators.size() - 1);
+            }
+        }
+
+        private void advance(int i) {
+            Iterator<Entry> it = iterators.get(i);
+            if (it.hasNext()) {
+                Entry entry = it.next();
+                heads.set(i, entry);
+                keys.set(i, key(entry));
+            } else {
+                heads.set(i, null);
+                keys.set(i, null);
+            }
+        }
+
+        // returns null when all sources are exhausted
+        Entry next() {
+            int best = -1;
+            for (int i = 0; i < heads.size(); i++) {
+                // strictly less so that the older source wins a tie
+                if (heads.get(i) != null
+                        && (best == -1 || comparator.compare(keys.get(i), keys.get(best)) < 0)) {
+                    best = i;
+                }
+            }
+            if (best == -1) {
+                return null;
+            }
+            Entry entry = heads.get(best);
+            advance(best);
+            return entry;
+        }
+
+        void dispose() {
+            for (Iterator<Entry> it : iterators) {
+                if (it instanceof Disposable) {
+                    ((Disposable) it).dispose();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,349 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.davidmoten.gt.btree.ConcurrentBTree;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * Index split into one b-tree per time partition (for example an hour or a
+ * day). Entries are added to in-memory partitions and
+ * {@link #sealBefore(long)} writes older partitions with a {@link Creator} to
+ * the storage file {@code prefix.<partition start>} in the directory, after
+ * which they are read with a {@link ReadOnlyBTree}. Sealed partitions found in
+ * the directory are opened by the constructor. {@link #dropBefore(long)}
+ * discards old partitions, for a sealed partition that is a file delete.
+ *
+ * <p>
+ * The time of a key (epoch millis) must not decrease as the key increases,
+ * for instance the key starts with the time. Then each partition holds a
+ * contiguous range of keys, a query only visits the partitions that the times
+ * of its bounds span and the results of those partitions are concatenated in
+ * partition order to give key order.
+ *
+ * <p>
+ * Entries in in-memory partitions that have not been sealed are not persisted
+ * by {@link #close()}. Not thread-safe.
+ *
+ * @param <Entry>
+ *            entry type
+ * @param <Key>
+ *            key type
+ */
+public final class PartitionedIndex<Entry, Key> implements Closeable {
+
+    private static final int MEMORY_MAX_CHILDREN = 64;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final KeySerializer<Key> keySerializer;
+    private final Serializer<Entry> entrySerializer;
+    private final Comparator<Key> comparator;
+    private final Function<Entry, Key> keyMapper;
+    private final ToLongFunction<Key> timeMapper;
+    private final long partitionMillis;
+    private final int maxPageSizeBytes;
+    private final File directory;
+    private final String prefix;
+
+    // keyed by partition start time
+    private final TreeMap<Long, Partition> partitions = new TreeMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer
+     * @param comparator
+     *            key comparator
+     * @param keyMapper
+     *            maps entry to key
+     * @param timeMapper
+     *            maps key to its time in epoch millis, must not decrease as
+     *            the key increases
+     * @param partitionMillis
+     *            duration of each partition in millis, partitions start at
+     *            multiples of this duration from the epoch
+     * @param maxPageSizeBytes
+     *            maximum size of a page of entries of a sealed partition
+     * @param directory
+     *            directory holding the storage files of sealed partitions
+     * @param prefix
+     *            storage file name prefix
+     */
+    public PartitionedIndex(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer,
+            Comparator<Key> comparator, Function<Entry, Key> keyMapper, ToLongFunction<Key> timeMapper,
+            long partitionMillis, int maxPageSizeBytes, File directory, String prefix) {
+        Preconditions.checkNotNull(keySerializer, "keySerializer cannot be null");
+        Preconditions.checkNotNull(entrySerializer, "entrySerializer cannot be null");
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkNotNull(keyMapper, "keyMapper cannot be null");
+        Preconditions.checkNotNull(timeMapper, "timeMapper cannot be null");
+        Preconditions.checkArgument(partitionMillis > 0, "partitionMillis must be positive");
+        Preconditions.checkNotNull(directory, "directory cannot be null");
+        Preconditions.checkNotNull(prefix, "prefix cannot be null");
+        this.keySerializer = keySerializer;
+        this.entrySerializer = entrySerializer;
+        this.comparator = comparator;
+        this.keyMapper = keyMapper;
+        this.timeMapper = timeMapper;
+        this.partitionMillis = partitionMillis;
+        this.maxPageSizeBytes = maxPageSizeBytes;
+        this.directory = directory;
+        this.prefix = prefix;
+        openSealedPartitions();
+    }
+
+    private void openSealedPartitions() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(prefix) + "\\.(-?\\d+)");
+        for (File file : files) {
+            Matcher m = pattern.matcher(file.getName());
+            if (m.matches()) {
+                long start = Long.parseLong(m.group(1));
+                partitions.put(start, new Partition(open(file)));
+            }
+        }
+    }
+
+    /**
+     * Adds the entry to the in-memory partition of its time.
+     *
+     * @param entry
+     *            entry
+     * @throws IllegalArgumentException
+     *             if the partition of the entry has been sealed
+     */
+    public void add(Entry entry) {
+        Preconditions.checkNotNull(entry, "entry cannot be null");
+        Key key = key(entry);
+        long start = partitionStart(key);
+        Partition p = partitions.get(start);
+        if (p == null) {
+            p = new Partition(new ConcurrentBTree<Key, Entry>(comparator, MEMORY_MAX_CHILDREN));
+            partitions.put(start, p);
+        }
+        Preconditions.checkArgument(p.memory != null, "partition starting at " + start + " is sealed");
+        p.memory.put(key, entry);
+    }
+
+    /**
+     * Returns the first entry with the given key or null if there is none.
+     * Only the partition of the time of the key is searched.
+     *
+     * @param key
+     *            key
+     * @return first entry with the key or null
+     */
+    public Entry get(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        Partition p = partitions.get(partitionStart(key));
+        if (p == null) {
+            return null;
+        } else {
+            return p.get(key);
+        }
+    }
+
+    /**
+     * Returns the entries with keys in the given range in key order. Only the
+     * partitions that the times of the bounds span are read and the
+     * partitions are read one after another as the stream is requested, so
+     * the stream supports backpressure. Partitions must not be sealed or
+     * dropped while a subscription is active.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry> range(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        long from = partitionStart(lowerInclusive);
+        long to = partitionStart(upperExclusive);
+        if (from > to) {
+            return Flowable.empty();
+        }
+        List<Partition> list = new ArrayList<>(partitions.subMap(from, true, to, true).values());
+        return Flowable.fromIterable(list) //
+                .concatMap(p -> p.range(lowerInclusive, upperExclusive));
+    }
+
+    /**
+     * Writes the in-memory partitions that end at or before the given time to
+     * storage files and replaces them with readers of those files. Each file
+     * is written under a temporary name and renamed when complete so an
+     * interrupted seal leaves no partial partition to be opened later.
+     *
+     * @param time
+     *            epoch millis
+     * @return number of partitions sealed
+     */
+    public int sealBefore(long time) {
+        int count = 0;
+        for (java.util.Map.Entry<Long, Partition> e : partitionsBefore(time).entrySet()) {
+            Partition p = e.getValue();
+            if (p.memory != null) {
+                File file = file(e.getKey());
+                File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+                // left over from an interrupted seal
+                temp.delete();
+                new Creator<Entry, Key>(keySerializer, entrySerializer, maxPageSizeBytes, 0, keyMapper,
+                        directory, temp.getName()) //
+                                .persist(p.memory.entries().map(x -> x.value()));
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                e.setValue(new Partition(open(file)));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Discards the partitions that end at or before the given time. The
+     * storage file of a sealed partition is closed and deleted.
+     *
+     * @param time
+     *            epoch millis
+     * @return number of partitions dropped
+     */
+    public int dropBefore(long time) {
+        NavigableMap<Long, Partition> map = partitionsBefore(time);
+        int count = map.size();
+        for (java.util.Map.Entry<Long, Partition> e : map.entrySet()) {
+            Partition p = e.getValue();
+            if (p.sealed != null) {
+                p.sealed.close();
+                File file = file(e.getKey());
+                if (!file.delete()) {
+                    throw new RuntimeException("could not delete " + file);
+                }
+            }
+        }
+        map.clear();
+        return count;
+    }
+
+    public long size() {
+        long n = 0;
+        for (Partition p : partitions.values()) {
+            n += p.size();
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the start times of the partitions in time order.
+     *
+     * @return partition start times
+     */
+    public List<Long> partitionStarts() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    @VisibleForTesting
+    boolean isSealed(long partitionStart) {
+        Partition p = partitions.get(partitionStart);
+        return p != null && p.sealed != null;
+    }
+
+    @Override
+    public void close() {
+        for (Partition p : partitions.values()) {
+            if (p.sealed != null) {
+                p.sealed.close();
+            }
+        }
+        partitions.clear();
+    }
+
+    // partitions whose end is at or before time
+    private NavigableMap<Long, Partition> partitionsBefore(long time) {
+        return partitions.headMap(time - partitionMillis, true);
+    }
+
+    private long partitionStart(Key key) {
+        return Math.floorDiv(timeMapper.applyAsLong(key), partitionMillis) * partitionMillis;
+    }
+
+    private Key key(Entry entry) {
+        try {
+            return keyMapper.apply(entry);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private File file(long partitionStart) {
+        return new File(directory, prefix + "." + partitionStart);
+    }
+
+    private ReadOnlyBTree<Entry, Key> open(File file) {
+        return new ReadOnlyBTree<Entry, Key>(keySerializer, entrySerializer, comparator, directory,
+                file.getName());
+    }
+
+    /**
+     * One of an in-memory tree or a reader of a sealed storage file.
+     */
+    private final class Partition {
+
+        final ConcurrentBTree<Key, Entry> memory;
+        final ReadOnlyBTree<Entry, Key> sealed;
+
+        Partition(ConcurrentBTree<Key, Entry> memory) {
+            this.memory = memory;
+            this.sealed = null;
+        }
+
+        Partition(ReadOnlyBTree<Entry, Key> sealed) {
+            this.memory = null;
+            this.sealed = sealed;
+        }
+
+        Entry get(Key key) {
+            return memory != null ? memory.get(key) : sealed.get(key);
+        }
+
+        Flowable<Entry> range(Key lowerInclusive, Key upperExclusive) {
+            return memory != null ? memory.range(lowerInclusive, upperExclusive)
+                    : sealed.range(lowerInclusive, upperExclusive);
+        }
+
+        long size() {
+            return memory != null ? memory.size() : sealed.size();
+        }
+    }
+
+}
@@ -0,0 +1,835 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.davidmoten.gt.btree.Range;
+import org.davidmoten.gt.btree.Storage;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.parallel.ParallelFlowable;
+
+/**
+ * Reads a b-tree written by {@link Creator}. The storage file is
+ * memory-mapped and only the manifest (one record per index block) is held on
+ * the heap. A lookup binary searches the manifest, then the header records of
+ * one index block, then one group of key records, and deserializes only the
+ * entries that are returned. Both the plain and compressed formats written by
+ * {@link Creator} are read, for the compressed format only the group of key
+ * records found from the header records and the pages holding returned
+ * entries are decompressed. If the key serializer is a {@link KeyCodec} then
+ * stored keys are compared with the search key as raw bytes and are never
+ * deserialized. If the file has bloom filters (see
+ * {@link Creator#bloomFilter(int)}) then {@link #get(Object)} checks the
+ * filter of the one index block that could hold the key before reading the
+ * block.
+ *
+ * <p>
+ * Lookups and range scans keep their position in a cursor of their own so
+ * they may run concurrently, as {@link #rangeParallel} does, provided the
+ * serializers are thread-safe. {@link #close()} must not be called while
+ * another method is running.
+ *
+ * @param <Entry>
+ *            entry type
+ * @param <Key>
+ *            key type
+ */
+public final class ReadOnlyBTree<Entry, Key> implements Closeable {
+
+    // pieces a parallel range is split into per rail so that uneven pieces
+    // balance out
+    private static final int PIECES_PER_RAIL = 4;
+
+    private final KeySerializer<Key> keySerializer;
+    private final Serializer<Entry> entrySerializer;
+    private final Comparator<Key> comparator; // null if keys are compared as bytes
+    private final Storage storage;
+    private final boolean closeStorage;
+    private final int recordSize;
+    private final int children;
+    private final long numEntries;
+    private final boolean compressed;
+    private final int bitsPerKey; // 0 if no bloom filters
+    private final byte[] blockFirstKeys;
+    private final long[] blockPageIds;
+    private final int[] blockRecords;
+    // number of entries before each block, there is one key record per entry
+    // so these are the order statistics of the index
+    private final long[] blockStarts;
+
+    /**
+     * Opens the storage file {@code prefix} in the given directory as written
+     * by the {@link Creator} constructor with the same arguments. The storage
+     * file is closed by {@link #close()}.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer
+     * @param comparator
+     *            key comparator consistent with the order of the entries
+     * @param directory
+     *            directory holding the storage file
+     * @param prefix
+     *            storage file name
+     */
+    public ReadOnlyBTree(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer,
+            Comparator<Key> comparator, File directory, String prefix) {
+        this(keySerializer, entrySerializer, checkComparator(comparator),
+                new Storage(new File(directory, prefix)), true);
+    }
+
+    /**
+     * Opens the storage file {@code prefix} in the given directory as written
+     * by the {@link Creator} constructor with the same arguments. Keys are
+     * compared by their encodings. The storage file is closed by
+     * {@link #close()}.
+     *
+     * @param keyCodec
+     *            order preserving key codec
+     * @param entrySerializer
+     *            entry serializer
+     * @param directory
+     *            directory holding the storage file
+     * @param prefix
+     *            storage file name
+     */
+    public ReadOnlyBTree(KeyCodec<Key> keyCodec, Serializer<Entry> entrySerializer, File directory,
+            String prefix) {
+        this(keyCodec, entrySerializer, null, new Storage(new File(directory, prefix)), true);
+    }
+
+    /**
+     * Reads the b-tree whose manifest is the root of the given storage. Keys
+     * are compared by their encodings. The storage is not closed by
+     * {@link #close()}.
+     *
+     * @param keyCodec
+     *            order preserving key codec
+     * @param entrySerializer
+     *            entry serializer
+     * @param storage
+     *            storage written to by a {@link Creator}
+     */
+    public ReadOnlyBTree(KeyCodec<Key> keyCodec, Serializer<Entry> entrySerializer, Storage storage) {
+        this(keyCodec, entrySerializer, null, storage, false);
+    }
+
+    /**
+     * Reads the b-tree whose manifest is the root of the given storage. The
+     * storage is not closed by {@link #close()}.
+     *
+     * @param keySerializer
+     *            key serializer
+     * @param entrySerializer
+     *            entry serializer
+     * @param comparator
+     *            key comparator consistent with the order of the entries
+     * @param storage
+     *            storage written to by a {@link Creator}
+     */
+    public ReadOnlyBTree(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer,
+            Comparator<Key> comparator, Storage storage) {
+        this(keySerializer, entrySerializer, checkComparator(comparator), storage, false);
+    }
+
+    private static <Key> Comparator<Key> checkComparator(Comparator<Key> comparator) {
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        return comparator;
+    }
+
+    private ReadOnlyBTree(KeySerializer<Key> keySerializer, Serializer<Entry> entrySerializer,
+            Comparator<Key> comparator, Storage storage, boolean closeStorage) {
+        Preconditions.checkNotNull(keySerializer, "keySerializer cannot be null");
+        Preconditions.checkNotNull(entrySerializer, "entrySerializer cannot be null");
+        Preconditions.checkArgument(comparator != null || keySerializer instanceof KeyCodec,
+                "comparator cannot be null");
+        Preconditions.checkNotNull(storage, "storage cannot be null");
+        Preconditions.checkArgument(storage.root() != -1, "storage has no manifest");
+        this.keySerializer = keySerializer;
+        this.entrySerializer = entrySerializer;
+        this.comparator = comparator;
+        this.storage = storage;
+        this.closeStorage = closeStorage;
+        this.recordSize = keySerializer.size() + Creator.PAGE_ID_SIZE + Creator.POSITION_SIZE;
+
+        // read the manifest
+        long manifest = storage.root();
+        ByteBuffer header = read(manifest, 0, Creator.MANIFEST_HEADER_SIZE);
+        int numBlocks = header.getInt();
+        this.children = header.getInt();
+        this.numEntries = header.getLong();
+        this.compressed = header.getInt() == Creator.FORMAT_COMPRESSED;
+        this.bitsPerKey = header.getInt();
+        ByteBuffer bb = read(manifest, Creator.MANIFEST_HEADER_SIZE, numBlocks * recordSize);
+        int keySize = keySerializer.size();
+        this.blockFirstKeys = new byte[numBlocks * keySize];
+        this.blockPageIds = new long[numBlocks];
+        this.blockRecords = new int[numBlocks];
+        this.blockStarts = new long[numBlocks];
+        long start = 0;
+        for (int i = 0; i < numBlocks; i++) {
+            bb.get(blockFirstKeys, i * keySize, keySize);
+            blockPageIds[i] = bb.getLong();
+            blockRecords[i] = bb.getInt();
+            blockStarts[i] = start;
+            start += blockRecords[i];
+        }
+    }
+
+    public long size() {
+        return numEntries;
+    }
+
+    public boolean isEmpty() {
+        return numEntries == 0;
+    }
+
+    /**
+     * Returns the first entry with the given key or null if there is none.
+     *
+     * @param key
+     *            key
+     * @return first entry with the key or null
+     */
+    public Entry get(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        SearchKey<Key> k = searchKey(key);
+        if (!mightContain(k)) {
+            return null;
+        }
+        Cursor cursor = new Cursor(k);
+        if (cursor.hasCurrent() && cursor.compareTo(k) == 0) {
+            return cursor.entry();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of entries with keys less than the given key. The
+     * position of the first key record at or after the key is found with the
+     * same search as {@link #get(Object)} and no entries are read.
+     *
+     * @param key
+     *            key
+     * @return number of entries with keys less than key
+     */
+    public long rank(Key key) {
+        Preconditions.checkNotNull(key, "key cannot be null");
+        return new Cursor(searchKey(key)).rank();
+    }
+
+    /**
+     * Returns the number of entries with keys in the given range without
+     * reading the entries.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return number of entries with keys in the range
+     */
+    public long count(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        return Math.max(0, rank(upperExclusive) - rank(lowerInclusive));
+    }
+
+    /**
+     * Returns the entry at the given position in key order. Only the manifest
+     * and the one group of key records holding the position are searched.
+     *
+     * @param index
+     *            position in key order starting at 0
+     * @return entry at the position
+     * @throws IllegalArgumentException
+     *             if index is negative or not less than {@link #size()}
+     */
+    public Entry select(long index) {
+        Preconditions.checkArgument(index >= 0 && index < numEntries, "index out of range: " + index);
+        return new Cursor(index).entry();
+    }
+
+    /**
+     * Returns the entries with keys in the given range in key order. Entries
+     * are only read as they are requested so the stream supports
+     * backpressure.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry> range(Key lowerInclusive, Key upperExclusive) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        SearchKey<Key> lower = searchKey(lowerInclusive);
+        SearchKey<Key> upper = searchKey(upperExclusive);
+        return Flowable.generate( //
+                () -> new Cursor(lower), //
+                (cursor, emitter) -> {
+                    if (cursor.hasCurrent() && cursor.compareTo(upper) < 0) {
+                        emitter.onNext(cursor.entry());
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    /**
+     * Returns all entries in key order. Entries are only read as they are
+     * requested so the stream supports backpressure.
+     *
+     * @return all entries in key order
+     */
+    public Flowable<Entry> entries() {
+        if (numEntries == 0) {
+            return Flowable.empty();
+        }
+        return Flowable.generate( //
+                () -> new Cursor(0L), //
+                (cursor, emitter) -> {
+                    if (cursor.hasCurrent()) {
+                        emitter.onNext(cursor.entry());
+                        cursor.advance();
+                    } else {
+                        emitter.onComplete();
+                    }
+                    return cursor;
+                });
+    }
+
+    /**
+     * Splits the range into at most {@code maxParts} contiguous ranges at the
+     * first keys of index blocks (from the manifest) and, if there are not
+     * enough of those in the range, at the keys of the header records of the
+     * index blocks overlapping the range. Fewer ranges are returned if there
+     * are not enough such keys in the range.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param maxParts
+     *            maximum number of ranges
+     * @return contiguous ranges in key order that together cover the range
+     */
+    public List<Range<Key>> split(Key lowerInclusive, Key upperExclusive, int maxParts) {
+        Preconditions.checkNotNull(lowerInclusive, "lowerInclusive cannot be null");
+        Preconditions.checkNotNull(upperExclusive, "upperExclusive cannot be null");
+        Preconditions.checkArgument(maxParts > 0, "maxParts must be positive");
+        SearchKey<Key> lower = searchKey(lowerInclusive);
+        SearchKey<Key> upper = searchKey(upperExclusive);
+        int keySize = keySerializer.size();
+        List<byte[]> keys = blockKeys(lower, upper, false);
+        if (keys.size() < maxParts - 1) {
+            keys = blockKeys(lower, upper, true);
+        }
+        int parts = Math.min(maxParts, keys.size() + 1);
+        List<Range<Key>> ranges = new ArrayList<>(parts);
+        Key lowerKey = lowerInclusive;
+        for (int i = 1; i < parts; i++) {
+            byte[] bytes = keys.get((int) ((long) i * keys.size() / parts));
+            Key upperKey;
+            try {
+                upperKey = keySerializer.deserialize(Arrays.copyOf(bytes, keySize));
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+            ranges.add(new Range<Key>(lowerKey, upperKey));
+            lowerKey = upperKey;
+        }
+        ranges.add(new Range<Key>(lowerKey, upperExclusive));
+        return ranges;
+    }
+
+    // distinct keys strictly inside the range in key order from the first keys
+    // of the blocks and optionally from the header records of the blocks
+    private List<byte[]> blockKeys(SearchKey<Key> lower, SearchKey<Key> upper, boolean headers) {
+        int keySize = keySerializer.size();
+        List<byte[]> keys = new ArrayList<>();
+        for (int block = 0; block < blockPageIds.length; block++) {
+            boolean endsAfterLower = block + 1 == blockPageIds.length
+                    || compare(blockFirstKeys, (block + 1) * keySize, lower) >= 0;
+            if (!endsAfterLower) {
+                continue;
+            } else if (compare(blockFirstKeys, block * keySize, upper) >= 0) {
+                break;
+            }
+            byte[] first = Arrays.copyOfRange(blockFirstKeys, block * keySize, (block + 1) * keySize);
+            addIfInside(keys, first, lower, upper);
+            if (headers) {
+                for (int i = 1; i < headerRecords(block); i++) {
+                    byte[] key = new byte[keySize];
+                    storage.read(blockPageIds[block], blockHeaderSize() + i * recordSize, key);
+                    addIfInside(keys, key, lower, upper);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void addIfInside(List<byte[]> keys, byte[] key, SearchKey<Key> lower, SearchKey<Key> upper) {
+        if (compare(key, 0, lower) > 0 && compare(key, 0, upper) < 0
+                && (keys.isEmpty() || !Arrays.equals(keys.get(keys.size() - 1), key))) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Returns the entries with keys in the given range in key order like
+     * {@link #range(Object, Object)} but the range is {@link #split} into
+     * pieces that are scanned concurrently on the given scheduler, at most
+     * {@code parallelism} at a time. Entries of later pieces are buffered
+     * until the earlier pieces have been emitted. The serializers must be
+     * thread-safe.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param parallelism
+     *            maximum number of pieces scanned at once
+     * @param scheduler
+     *            scheduler the pieces are scanned on
+     * @return entries with keys in the range in key order
+     */
+    public Flowable<Entry> rangeParallel(Key lowerInclusive, Key upperExclusive, int parallelism,
+            Scheduler scheduler) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        return Flowable.fromIterable(split(lowerInclusive, upperExclusive, parallelism * PIECES_PER_RAIL)) //
+                .concatMapEager(r -> range(r.lowerInclusive(), r.upperExclusive()) //
+                        .subscribeOn(scheduler), parallelism, Flowable.bufferSize());
+    }
+
+    /**
+     * Returns the entries with keys in the given range on {@code parallelism}
+     * rails that scan the pieces the range is {@link #split} into on the
+     * given scheduler. Within a piece entries are in key order but there is
+     * no order between rails. The serializers must be thread-safe.
+     *
+     * @param lowerInclusive
+     *            lower bound of keys (inclusive)
+     * @param upperExclusive
+     *            upper bound of keys (exclusive)
+     * @param parallelism
+     *            number of rails
+     * @param scheduler
+     *            scheduler the pieces are scanned on
+     * @return entries with keys in the range on parallel rails
+     */
+    public ParallelFlowable<Entry> rangeParallelUnordered(Key lowerInclusive, Key upperExclusive,
+            int parallelism, Scheduler scheduler) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        return Flowable.fromIterable(split(lowerInclusive, upperExclusive, parallelism * PIECES_PER_RAIL)) //
+                .parallel(parallelism, 1) //
+                .runOn(scheduler, 1) //
+                .flatMap(r -> range(r.lowerInclusive(), r.upperExclusive()));
+    }
+
+    @Override
+    public void close() {
+        if (closeStorage) {
+            storage.close();
+        }
+    }
+
+    @VisibleForTesting
+    boolean mightContain(Key key) {
+        return mightContain(searchKey(key));
+    }
+
+    /**
+     * Returns false if the bloom filters show that there is no entry with the
+     * key. Only the manifest and the filter of the block before the first
+     * block starting at or after the key are read because the first entry
+     * with the key starts that block or is in the block before it.
+     */
+    private boolean mightContain(SearchKey<Key> key) {
+        if (bitsPerKey == 0) {
+            return true;
+        }
+        int lo = firstBlockNotLess(key);
+        if (lo < blockPageIds.length && compare(blockFirstKeys, lo * keySerializer.size(), key) == 0) {
+            return true;
+        } else if (lo == 0) {
+            // before the first key
+            return false;
+        }
+        int block = lo - 1;
+        final int offset;
+        if (compressed) {
+            offset = read(blockPageIds[block], 0, Creator.COMPRESSED_BLOCK_HEADER_SIZE).getInt();
+        } else {
+            offset = (headerRecords(block) + blockRecords[block]) * recordSize;
+        }
+        return BloomFilter.mightContain(storage, blockPageIds[block], offset,
+                BloomFilter.numBytes(blockRecords[block], bitsPerKey), bitsPerKey, encoded(key));
+    }
+
+    private byte[] encoded(SearchKey<Key> key) {
+        if (key.encoded != null) {
+            return key.encoded;
+        }
+        try {
+            return keySerializer.serialize(key.key);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the index of the first block whose first key is greater than or
+     * equal to the key, or the number of blocks if there is none.
+     */
+    private int firstBlockNotLess(SearchKey<Key> key) {
+        int keySize = keySerializer.size();
+        int lo = 0;
+        int hi = blockPageIds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(blockFirstKeys, mid * keySize, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private SearchKey<Key> searchKey(Key key) {
+        if (comparator == null) {
+            return new SearchKey<Key>(key, ((KeyCodec<Key>) keySerializer).serialize(key));
+        } else {
+            return new SearchKey<Key>(key, null);
+        }
+    }
+
+    private int compare(byte[] bytes, int offset, SearchKey<Key> key) {
+        int keySize = keySerializer.size();
+        if (key.encoded != null) {
+            return KeyCodecs.compare(bytes, offset, key.encoded, 0, keySize);
+        } else {
+            byte[] b = offset == 0 && bytes.length == keySize ? bytes
+                    : Arrays.copyOfRange(bytes, offset, offset + keySize);
+            final Key k;
+            try {
+                k = keySerializer.deserialize(b);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+            return comparator.compare(k, key.key);
+        }
+    }
+
+    private int headerRecords(int block) {
+        return (blockRecords[block] + children - 1) / children;
+    }
+
+    private int blockHeaderSize() {
+        return compressed ? Creator.COMPRESSED_BLOCK_HEADER_SIZE : 0;
+    }
+
+    private ByteBuffer read(long pageId, int offset, int length) {
+        byte[] bytes = new byte[length];
+        storage.read(pageId, offset, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static final class SearchKey<Key> {
+        final Key key;
+        final byte[] encoded; // null if not compared as bytes
+
+        SearchKey(Key key, byte[] encoded) {
+            this.key = key;
+            this.encoded = encoded;
+        }
+    }
+
+    private final class Cursor {
+
+        private final int keySize = keySerializer.size();
+        private final byte[] keyBytes = new byte[keySize];
+        // the current group of key records
+        private final byte[] keys = new byte[children * keySize];
+        private final long[] pageIds = new long[children];
+        private final int[] positions = new int[children];
+
+        // mutable
+        private int block;
+        private int group;
+        private int count; // number of records in the group
+        private int index; // index of the current record in the group
+        private long pageId = -1; // id of the decompressed page
+        private byte[] page;
+
+        /**
+         * Creates a cursor positioned at the first entry with key greater than
+         * or equal to the given key.
+         */
+        Cursor(SearchKey<Key> key) {
+            if (blockPageIds.length > 0) {
+                seek(key);
+            }
+        }
+
+        /**
+         * Creates a cursor positioned at the entry with the given position in
+         * key order which must be less than the number of entries.
+         */
+        Cursor(long rank) {
+            // last block starting at or before rank
+            int lo = 0;
+            int hi = blockStarts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (blockStarts[mid] <= rank) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            block = lo - 1;
+            long r = rank - blockStarts[block];
+            group = (int) (r / children);
+            loadGroup();
+            index = (int) (r % children);
+        }
+
+        private void seek(SearchKey<Key> key) {
+            // last block whose first key is strictly less than key so that
+            // duplicates straddling blocks are not missed
+            block = Math.max(0, firstBlockNotLess(key) - 1);
+            // same again for the header records of the block
+            int lo = 0;
+            int hi = headerRecords(block);
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                storage.read(blockPageIds[block], blockHeaderSize() + mid * recordSize, keyBytes);
+                if (compare(keyBytes, 0, key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            group = Math.max(0, lo - 1);
+            loadGroup();
+            // first key record >= key in the group, or the start of the next
+            // group which must then be >= key
+            lo = 0;
+            hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(keys, mid * keySize, key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            index = lo;
+            skipExhaustedGroups();
+        }
+
+        boolean hasCurrent() {
+            return block < blockPageIds.length;
+        }
+
+        /**
+         * Returns the position of the current entry in key order or the
+         * number of entries if there is no current entry.
+         */
+        long rank() {
+            if (hasCurrent()) {
+                return blockStarts[block] + (long) group * children + index;
+            } else {
+                return numEntries;
+            }
+        }
+
+        /**
+         * Compares the key of the current entry with the given key.
+         */
+        int compareTo(SearchKey<Key> key) {
+            return compare(keys, index * keySize, key);
+        }
+
+        Entry entry() {
+            final byte[] bytes;
+            if (compressed) {
+                bytes = compressedEntry();
+            } else {
+                bytes = plainEntry();
+            }
+            try {
+                return entrySerializer.deserialize(bytes);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private byte[] plainEntry() {
+            long id = pageIds[index];
+            int position = positions[index];
+            // the entry ends where the next entry in the same page starts or
+            // at the end of the page
+            int end = -1;
+            if (index + 1 < count) {
+                if (pageIds[index + 1] == id) {
+                    end = positions[index + 1];
+                }
+            } else {
+                // next record is the first of the next group or block
+                int nextBlock = block;
+                int nextRecord = headerRecords(block) + (group + 1) * children;
+                if (group + 1 == headerRecords(block)) {
+                    nextBlock++;
+                    nextRecord = nextBlock < blockPageIds.length ? headerRecords(nextBlock) : 0;
+                }
+                if (nextBlock < blockPageIds.length) {
+                    ByteBuffer next = read(blockPageIds[nextBlock], nextRecord * recordSize + keySize,
+                            Creator.PAGE_ID_SIZE + Creator.POSITION_SIZE);
+                    if (next.getLong() == id) {
+                        end = next.getInt();
+                    }
+                }
+            }
+            if (end == -1) {
+                end = read(id, 0, Creator.PAGE_HEADER_SIZE).getInt();
+            }
+            byte[] bytes = new byte[end - position];
+            storage.read(id, position, bytes);
+            return bytes;
+        }
+
+        private byte[] compressedEntry() {
+            long id = pageIds[index];
+            if (id != pageId) {
+                page = inflatePage(id);
+                pageId = id;
+            }
+            int position = positions[index];
+            int length = (int) VarInts.read(page, position);
+            position += VarInts.size(length);
+            return Arrays.copyOfRange(page, position, position + length);
+        }
+
+        private byte[] inflatePage(long address) {
+            // compressed page runs are packed so are addressed by byte position
+            long id = address / storage.pageSize();
+            int offset = (int) (address % storage.pageSize());
+            ByteBuffer header = read(id, offset, Creator.COMPRESSED_PAGE_HEADER_SIZE);
+            int end = header.getInt();
+            byte[] raw = new byte[header.getInt()];
+            byte[] deflated = new byte[end - Creator.COMPRESSED_PAGE_HEADER_SIZE];
+            storage.read(id, offset + Creator.COMPRESSED_PAGE_HEADER_SIZE, deflated);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(deflated);
+                int n = 0;
+                while (n < raw.length) {
+                    int count = inflater.inflate(raw, n, raw.length - n);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("compressed page at " + address + " is truncated");
+                    }
+                    n += count;
+                }
+            } catch (DataFormatException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inflater.end();
+            }
+            return raw;
+        }
+
+        void advance() {
+            index++;
+            skipExhaustedGroups();
+        }
+
+        private void skipExhaustedGroups() {
+            while (block < blockPageIds.length && index >= count) {
+                group++;
+                if (group == headerRecords(block)) {
+                    block++;
+                    group = 0;
+                }
+                index = 0;
+                if (block < blockPageIds.length) {
+                    loadGroup();
+                }
+            }
+        }
+
+        /**
+         * Reads the key records of the current group into keys, pageIds and
+         * positions.
+         */
+        private void loadGroup() {
+            count = Math.min(children, blockRecords[block] - group * children);
+            long blockPageId = blockPageIds[block];
+            if (compressed) {
+                int headers = headerRecords(block);
+                int start = read(blockPageId,
+                        blockHeaderSize() + group * recordSize + keySize + Creator.PAGE_ID_SIZE,
+                        Creator.POSITION_SIZE).getInt();
+                final int end;
+                if (group + 1 < headers) {
+                    end = read(blockPageId,
+                            blockHeaderSize() + (group + 1) * recordSize + keySize + Creator.PAGE_ID_SIZE,
+                            Creator.POSITION_SIZE).getInt();
+                } else {
+                    end = read(blockPageId, 0, Creator.COMPRESSED_BLOCK_HEADER_SIZE).getInt();
+                }
+                byte[] bytes = new byte[end - start];
+                storage.read(blockPageId, start, bytes);
+                int p = 0;
+                long previousPageId = 0;
+                for (int i = 0; i < count; i++) {
+                    int shared = (int) VarInts.read(bytes, p);
+                    p += VarInts.size(shared);
+                    if (shared > 0) {
+                        System.arraycopy(keys, (i - 1) * keySize, keys, i * keySize, shared);
+                    }
+                    System.arraycopy(bytes, p, keys, i * keySize + shared, keySize - shared);
+                    p += keySize - shared;
+                    long delta = VarInts.read(bytes, p);
+                    p += VarInts.size(delta);
+                    previousPageId += VarInts.unZigZag(delta);
+                    pageIds[i] = previousPageId;
+                    long position = VarInts.read(bytes, p);
+                    p += VarInts.size(position);
+                    positions[i] = (int) position;
+                }
+            } else {
+                byte[] bytes = new byte[count * recordSize];
+                storage.read(blockPageId, (headerRecords(block) + group * children) * recordSize, bytes);
+                ByteBuffer bb = ByteBuffer.wrap(bytes);
+                for (int i = 0; i < count; i++) {
+                    bb.get(keys, i * keySize, keySize);
+                    pageIds[i] = bb.getLong();
+                    positions[i] = bb.getInt();
+                }
+            }
+        }
+    }
+
+}
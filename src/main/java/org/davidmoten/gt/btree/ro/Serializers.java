@@ -0,0 +1,157 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+public final class Serializers {
+
+    private Serializers() {
+        // prevent instantiation
+    }
+
+    public static KeySerializer<Integer> intKey() {
+        return IntKeySerializer.INSTANCE;
+    }
+
+    public static KeySerializer<Long> longKey() {
+        return LongKeySerializer.INSTANCE;
+    }
+
+    public static Serializer<Integer> intValue() {
+        return IntSerializer.INSTANCE;
+    }
+
+    public static Serializer<Long> longValue() {
+        return LongSerializer.INSTANCE;
+    }
+
+    public static Serializer<String> utf8() {
+        return Utf8Serializer.INSTANCE;
+    }
+
+    public static Serializer<byte[]> bytes() {
+        return BytesSerializer.INSTANCE;
+    }
+
+    private static final class IntKeySerializer implements KeySerializer<Integer> {
+
+        static final IntKeySerializer INSTANCE = new IntKeySerializer();
+
+        @Override
+        public byte[] serialize(Integer t) {
+            return ByteBuffer.allocate(4).putInt(t).array();
+        }
+
+        @Override
+        public Integer deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        @Override
+        public int size() {
+            return 4;
+        }
+    }
+
+    private static final class LongKeySerializer implements KeySerializer<Long> {
+
+        static final LongKeySerializer INSTANCE = new LongKeySerializer();
+
+        @Override
+        public byte[] serialize(Long t) {
+            return ByteBuffer.allocate(8).putLong(t).array();
+        }
+
+        @Override
+        public Long deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        @Override
+        public int size() {
+            return 8;
+        }
+    }
+
+    private static final class IntSerializer implements Serializer<Integer> {
+
+        static final IntSerializer INSTANCE = new IntSerializer();
+
+        @Override
+        public byte[] serialize(Integer t) {
+            return ByteBuffer.allocate(4).putInt(t).array();
+        }
+
+        @Override
+        public Integer deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        @Override
+        public Optional<Integer> size() {
+            return Optional.of(4);
+        }
+    }
+
+    private static final class LongSerializer implements Serializer<Long> {
+
+        static final LongSerializer INSTANCE = new LongSerializer();
+
+        @Override
+        public byte[] serialize(Long t) {
+            return ByteBuffer.allocate(8).putLong(t).array();
+        }
+
+        @Override
+        public Long deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        @Override
+        public Optional<Integer> size() {
+            return Optional.of(8);
+        }
+    }
+
+    private static final class Utf8Serializer implements Serializer<String> {
+
+        static final Utf8Serializer INSTANCE = new Utf8Serializer();
+
+        @Override
+        public byte[] serialize(String t) {
+            return t.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Optional<Integer> size() {
+            return Optional.empty();
+        }
+    }
+
+    private static final class BytesSerializer implements Serializer<byte[]> {
+
+        static final BytesSerializer INSTANCE = new BytesSerializer();
+
+        @Override
+        public byte[] serialize(byte[] t) {
+            return t;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public Optional<Integer> size() {
+            return Optional.empty();
+        }
+    }
+
+}
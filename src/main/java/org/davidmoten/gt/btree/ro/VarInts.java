@@ -0,0 +1,53 @@
+package org.davidmoten.gt.btree.ro;
+
+import java.io.ByteArrayOutputStream;
+
+// unsigned LEB128 variable length integers (7 bits per byte, low bits first)
+final class VarInts {
+
+    private VarInts() {
+        // prevent instantiation
+    }
+
+    static void write(ByteArrayOutputStream out, long x) {
+        while ((x & ~0x7FL) != 0) {
+            out.write((int) ((x & 0x7F) | 0x80));
+            x >>>= 7;
+        }
+        out.write((int) x);
+    }
+
+    static long read(byte[] bytes, int offset) {
+        long x = 0;
+        int shift = 0;
+        while (true) {
+            byte b = bytes[offset++];
+            x |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return x;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by {@link #write} for the value.
+     */
+    static int size(long x) {
+        int n = 1;
+        while ((x & ~0x7FL) != 0) {
+            x >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    static long zigZag(long x) {
+        return (x << 1) ^ (x >> 63);
+    }
+
+    static long unZigZag(long x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+}
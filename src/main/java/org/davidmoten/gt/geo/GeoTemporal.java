@@ -0,0 +1,181 @@
+package org.davidmoten.gt.geo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.davidmoten.gt.btree.Range;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.BiFunction;
+
+/**
+ * Maps points with a latitude, longitude and time to long keys on a three
+ * dimensional Z-order curve so that points can be stored in any of the
+ * b-trees (for example a {@code ConcurrentBTree<Long, T>} or a
+ * {@code Creator} written with {@code KeyCodecs.longKey()}) and searched by
+ * bounding box and time window.
+ *
+ * <p>
+ * Each dimension is divided into 2<sup>20</sup> cells. Latitude spans -90 to
+ * 90, longitude -180 to 180 and time the window given to the constructor, so
+ * for a one day window a cell is about 20m by 40m by 82ms. Keys are
+ * non-negative and less than 2<sup>60</sup>.
+ *
+ * <p>
+ * A search is decomposed into at most {@code maxRanges} key ranges. More
+ * ranges cover the query more tightly so fewer points outside it are read,
+ * fewer ranges mean fewer seeks. Points read from the ranges that are outside
+ * the query are filtered out so results are exact.
+ *
+ * @param <T>
+ *            point type
+ */
+public final class GeoTemporal<T> {
+
+    private static final double MIN_LAT = -90;
+    private static final double MAX_LAT = 90;
+    private static final double MIN_LON = -180;
+    private static final double MAX_LON = 180;
+
+    private final ToDoubleFunction<T> lat;
+    private final ToDoubleFunction<T> lon;
+    private final ToLongFunction<T> time;
+    private final long startTime;
+    private final long finishTime;
+
+    /**
+     * Constructor.
+     *
+     * @param lat
+     *            latitude of a point in degrees
+     * @param lon
+     *            longitude of a point in degrees
+     * @param time
+     *            time of a point in epoch millis
+     * @param startTime
+     *            start of the time window of the points (inclusive)
+     * @param finishTime
+     *            end of the time window of the points (exclusive)
+     */
+    public GeoTemporal(ToDoubleFunction<T> lat, ToDoubleFunction<T> lon, ToLongFunction<T> time,
+            long startTime, long finishTime) {
+        Preconditions.checkNotNull(lat, "lat cannot be null");
+        Preconditions.checkNotNull(lon, "lon cannot be null");
+        Preconditions.checkNotNull(time, "time cannot be null");
+        Preconditions.checkArgument(startTime < finishTime, "startTime must be before finishTime");
+        this.lat = lat;
+        this.lon = lon;
+        this.time = time;
+        this.startTime = startTime;
+        this.finishTime = finishTime;
+    }
+
+    public long key(T point) {
+        return key(lat.applyAsDouble(point), lon.applyAsDouble(point), time.applyAsLong(point));
+    }
+
+    public long key(double lat, double lon, long time) {
+        Preconditions.checkArgument(time >= startTime && time < finishTime, "time outside of window");
+        return ZOrder.index(latCell(lat), lonCell(lon), timeCell(time));
+    }
+
+    /**
+     * Returns at most {@code maxRanges} sorted disjoint key ranges that
+     * together hold the keys of all points in the bounding box and time
+     * window. The ranges may also hold keys of points outside the query.
+     *
+     * @param minLat
+     *            minimum latitude (inclusive)
+     * @param minLon
+     *            minimum longitude (inclusive)
+     * @param maxLat
+     *            maximum latitude (inclusive)
+     * @param maxLon
+     *            maximum longitude (inclusive)
+     * @param startTime
+     *            start time (inclusive)
+     * @param finishTime
+     *            finish time (exclusive)
+     * @param maxRanges
+     *            maximum number of ranges
+     * @return key ranges in key order
+     */
+    public List<Range<Long>> ranges(double minLat, double minLon, double maxLat, double maxLon, long startTime,
+            long finishTime, int maxRanges) {
+        Preconditions.checkArgument(minLat <= maxLat, "minLat cannot be greater than maxLat");
+        Preconditions.checkArgument(minLon <= maxLon, "minLon cannot be greater than maxLon");
+        Preconditions.checkArgument(maxRanges > 0, "maxRanges must be positive");
+        long start = Math.max(startTime, this.startTime);
+        long finish = Math.min(finishTime, this.finishTime);
+        if (start >= finish) {
+            return Collections.emptyList();
+        }
+        long[] min = { latCell(minLat), lonCell(minLon), timeCell(start) };
+        long[] max = { latCell(maxLat), lonCell(maxLon), timeCell(finish - 1) };
+        return ZOrder.ranges(min, max, maxRanges);
+    }
+
+    /**
+     * Returns the points in the bounding box and time window. Each of the
+     * key ranges from
+     * {@link #ranges(double, double, double, double, long, long, int)} is
+     * passed in key order to {@code range} (typically the {@code range}
+     * method of a b-tree keyed by {@link #key(Object)}) and the points
+     * returned that are outside the query are dropped.
+     *
+     * @param minLat
+     *            minimum latitude (inclusive)
+     * @param minLon
+     *            minimum longitude (inclusive)
+     * @param maxLat
+     *            maximum latitude (inclusive)
+     * @param maxLon
+     *            maximum longitude (inclusive)
+     * @param startTime
+     *            start time (inclusive)
+     * @param finishTime
+     *            finish time (exclusive)
+     * @param maxRanges
+     *            maximum number of ranges
+     * @param range
+     *            returns the points with keys from the first argument
+     *            (inclusive) to the second (exclusive)
+     * @return points in the bounding box and time window in key order
+     */
+    public Flowable<T> search(double minLat, double minLon, double maxLat, double maxLon, long startTime,
+            long finishTime, int maxRanges, BiFunction<Long, Long, Flowable<T>> range) {
+        Preconditions.checkNotNull(range, "range cannot be null");
+        List<Range<Long>> ranges = ranges(minLat, minLon, maxLat, maxLon, startTime, finishTime, maxRanges);
+        return Flowable.fromIterable(ranges) //
+                .concatMap(r -> range.apply(r.lowerInclusive(), r.upperExclusive())) //
+                .filter(p -> {
+                    double a = lat.applyAsDouble(p);
+                    double b = lon.applyAsDouble(p);
+                    long t = time.applyAsLong(p);
+                    return a >= minLat && a <= maxLat && b >= minLon && b <= maxLon && t >= startTime
+                            && t < finishTime;
+                });
+    }
+
+    private static long latCell(double lat) {
+        return cell(lat, MIN_LAT, MAX_LAT);
+    }
+
+    private static long lonCell(double lon) {
+        return cell(lon, MIN_LON, MAX_LON);
+    }
+
+    private long timeCell(long time) {
+        return cell(time - startTime, 0, finishTime - startTime);
+    }
+
+    private static long cell(double value, double min, double max) {
+        long cell = (long) Math.floor((value - min) / (max - min) * (ZOrder.MAX_COORDINATE + 1));
+        return Math.max(0, Math.min(ZOrder.MAX_COORDINATE, cell));
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.davidmoten.gt.geo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.davidmoten.gt.btree.Range;
+
+/**
+ * Three dimensional Z-order (Morton) curve with {@link #BITS} bits per
+ * dimension. The index of a point interleaves the bits of its coordinates so
+ * points close in all three coordinates tend to have close indexes and every
+ * cube of the recursive subdivision of the space is one contiguous run of
+ * indexes.
+ */
+final class ZOrder {
+
+    static final int BITS = 20;
+    static final long MAX_COORDINATE = (1L << BITS) - 1;
+
+    // overlap of a cube with a box
+    private static final int OUTSIDE = 0;
+    private static final int PARTIAL = 1;
+    private static final int INSIDE = 2;
+
+    private ZOrder() {
+        // prevent instantiation
+    }
+
+    static long index(long x, long y, long z) {
+        return spread(x) | (spread(y) << 1) | (spread(z) << 2);
+    }
+
+    static long x(long index) {
+        return compact(index);
+    }
+
+    static long y(long index) {
+        return compact(index >>> 1);
+    }
+
+    static long z(long index) {
+        return compact(index >>> 2);
+    }
+
+    // puts two zero bits between each of the low BITS bits
+    private static long spread(long v) {
+        v &= 0x1fffff;
+        v = (v | v << 32) & 0x1f00000000ffffL;
+        v = (v | v << 16) & 0x1f0000ff0000ffL;
+        v = (v | v << 8) & 0x100f00f00f00f00fL;
+        v = (v | v << 4) & 0x10c30c30c30c30c3L;
+        v = (v | v << 2) & 0x1249249249249249L;
+        return v;
+    }
+
+    private static long compact(long v) {
+        v &= 0x1249249249249249L;
+        v = (v ^ (v >>> 2)) & 0x10c30c30c30c30c3L;
+        v = (v ^ (v >>> 4)) & 0x100f00f00f00f00fL;
+        v = (v ^ (v >>> 8)) & 0x1f0000ff0000ffL;
+        v = (v ^ (v >>> 16)) & 0x1f00000000ffffL;
+        v = (v ^ (v >>> 32)) & 0x1fffffL;
+        return v;
+    }
+
+    /**
+     * Returns the sorted disjoint ranges of indexes that cover the box with
+     * the given inclusive coordinate bounds using at most {@code maxRanges}
+     * ranges. The cubes of the subdivision are refined a level at a time
+     * while the result fits in {@code maxRanges}, cubes only partly inside the
+     * box at the last level are covered whole so the ranges may include
+     * indexes of points outside the box.
+     *
+     * @param min
+     *            minimum x, y and z (inclusive)
+     * @param max
+     *            maximum x, y and z (inclusive)
+     * @param maxRanges
+     *            maximum number of ranges returned
+     * @return sorted disjoint ranges covering the box
+     */
+    static List<Range<Long>> ranges(long[] min, long[] max, int maxRanges) {
+        List<Range<Long>> full = new ArrayList<>();
+        // start indexes of the cubes of the current level that are partly
+        // inside the box
+        List<Long> partial = Collections.singletonList(0L);
+        int partialShift = BITS;
+        for (int level = 1; level <= BITS && !partial.isEmpty(); level++) {
+            int shift = BITS - level;
+            List<Range<Long>> nextFull = new ArrayList<>(full);
+            List<Long> nextPartial = new ArrayList<>();
+            for (long start : partial) {
+                for (int child = 0; child < 8; child++) {
+                    long childStart = start + ((long) child << (3 * shift));
+                    int overlap = overlap(childStart, shift, min, max);
+                    if (overlap == INSIDE) {
+                        nextFull.add(cube(childStart, shift));
+                    } else if (overlap == PARTIAL) {
+                        nextPartial.add(childStart);
+                    }
+                }
+            }
+            if (merge(nextFull, nextPartial, shift).size() > maxRanges) {
+                break;
+            }
+            full = nextFull;
+            partial = nextPartial;
+            partialShift = shift;
+        }
+        return merge(full, partial, partialShift);
+    }
+
+    private static int overlap(long start, int shift, long[] min, long[] max) {
+        long size = 1L << shift;
+        long[] lo = { x(start), y(start), z(start) };
+        boolean inside = true;
+        for (int d = 0; d < 3; d++) {
+            long hi = lo[d] + size - 1;
+            if (hi < min[d] || lo[d] > max[d]) {
+                return OUTSIDE;
+            }
+            inside &= lo[d] >= min[d] && hi <= max[d];
+        }
+        return inside ? INSIDE : PARTIAL;
+    }
+
+    private static Range<Long> cube(long start, int shift) {
+        return new Range<Long>(start, start + (1L << (3 * shift)));
+    }
+
+    private static List<Range<Long>> merge(List<Range<Long>> full, List<Long> partial, int shift) {
+        List<Range<Long>> list = new ArrayList<>(full.size() + partial.size());
+        list.addAll(full);
+        for (long start : partial) {
+            list.add(cube(start, shift));
+        }
+        Collections.sort(list, (a, b) -> Long.compare(a.lowerInclusive(), b.lowerInclusive()));
+        List<Range<Long>> merged = new ArrayList<>();
+        for (Range<Long> r : list) {
+            if (!merged.isEmpty() && merged.get(merged.size() - 1).upperExclusive().longValue() == r.lowerInclusive()) {
+                Range<Long> last = merged.remove(merged.size() - 1);
+                merged.add(new Range<Long>(last.lowerInclusive(), r.upperExclusive()));
+            } else {
+                merged.add(r);
+            }
+        }
+        return merged;
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.junit.Test;
+
+public class ArenaTest {
+
+    @Test
+    public void testAllocateAddsSlabs() {
+        Arena arena = new Arena(64, 4);
+        assertEquals(0, arena.bytesReserved());
+        for (long i = 0; i < 5; i++) {
+            assertEquals(i, arena.allocate());
+        }
+        assertEquals(5, arena.pagesInUse());
+        assertEquals(2 * 4 * 64, arena.bytesReserved());
+    }
+
+    @Test
+    public void testFreedPagesAreReused() {
+        Arena arena = new Arena(64, 4);
+        for (int i = 0; i < 4; i++) {
+            arena.allocate();
+        }
+        arena.free(1);
+        arena.free(3);
+        assertEquals(2, arena.pagesInUse());
+        assertEquals(3, arena.allocate());
+        assertEquals(1, arena.allocate());
+        assertEquals(4, arena.allocate());
+        assertEquals(2 * 4 * 64, arena.bytesReserved());
+    }
+
+    @Test
+    public void testPagesAreIndependent() {
+        Arena arena = new Arena(64, 2);
+        long a = arena.allocate();
+        long b = arena.allocate();
+        long c = arena.allocate();
+        arena.pin(a).putLong(56, 1);
+        arena.pin(b).putLong(0, 2);
+        arena.pin(c).putLong(0, 3);
+        assertEquals(1, arena.pin(a).getLong(56));
+        assertEquals(2, arena.pin(b).getLong(0));
+        assertEquals(3, arena.pin(c).getLong(0));
+        assertEquals(64, arena.pin(c).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFreeUnallocatedPage() {
+        new Arena().free(0);
+    }
+
+    @Test
+    public void testOffHeapTree() {
+        int n = 100000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        Arena arena = new Arena(4096, 64);
+        BTree<Integer, Integer> t = new BTree<Integer, Integer>(Context.<Integer, Integer> create(
+                Comparator.naturalOrder(), 64, new NodeFactoryOffHeap<>(arena, Serializers.intKey(),
+                        Serializers.intValue())));
+        for (int key : keys) {
+            t.put(key, key * 2);
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i * 2, (int) t.get(i));
+        }
+        assertNull(t.get(n));
+        t.range(500, 503) //
+                .test() //
+                .assertValues(1000, 1002, 1004) //
+                .assertComplete();
+        t.range(0, n).test().assertValueCount(n).assertComplete();
+        // one page per node
+        assertEquals(arena.pagesInUse() * 4096, arena.bytesReserved(), 64 * 4096);
+    }
+
+}
@@ -1,13 +1,26 @@
 package org.davidmoten.gt.btree;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
+import io.reactivex.Flowable;
 import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
 
 public class BTreeTest {
 
@@ -85,6 +98,690 @@ public class BTreeTest {
                 .assertComplete();
     }
 
+    @Test
+    public void testHighFanoutReducesHeight() {
+        int n = 100000;
+        assertEquals(15, createBigTree(n, 4).height());
+        assertEquals(2, createBigTree(n, 256).height());
+    }
+
+    @Test
+    public void testGetAllRandomOrderVariousFanouts() {
+        int n = 10000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        for (int maxChildren : new int[] { 4, 5, 16, 255, 256 }) {
+            BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                    Comparator.naturalOrder(), maxChildren, new NodeFactoryMemory<>()));
+            for (int key : keys) {
+                t.put(key, key + "");
+            }
+            assertEquals(n, t.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i + "", t.get(i));
+            }
+            assertNull(t.get(-1));
+            assertNull(t.get(n));
+            t.range(0, n).test().assertValueCount(n).assertComplete();
+        }
+    }
+
+    @Test
+    public void testDuplicateKeysAreKeptInInsertionOrder() {
+        BTree<Integer, String> t = createTree();
+        t.put(5, "five again");
+        assertEquals(11, t.size());
+        assertEquals("five", t.get(5));
+        t.range(5, 7) //
+                .test() //
+                .assertValues("five", "five again", "six") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testDuplicateKeysStraddlingLeaves() {
+        BTree<Integer, String> t = createTree();
+        for (int i = 0; i < 20; i++) {
+            t.put(5, "five" + i);
+        }
+        assertEquals("five", t.get(5));
+        t.range(5, 6) //
+                .test() //
+                .assertValueCount(21) //
+                .assertValueAt(0, "five") //
+                .assertValueAt(20, "five19") //
+                .assertComplete();
+        t.range(4, 7) //
+                .test() //
+                .assertValueCount(23) //
+                .assertValueAt(0, "four") //
+                .assertValueAt(22, "six") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeNarrowInBigTree() {
+        BTree<Integer, String> t = createBigTree(100000, 4);
+        t.range(50000, 50003) //
+                .test() //
+                .assertValues("50000", "50001", "50002") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeTakeDisposesEarly() {
+        BTree<Integer, String> t = createBigTree(1000, 4);
+        t.range(1, 1001) //
+                .take(2) //
+                .test() //
+                .assertValues("1", "2") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        BTree<Integer, String> t = createTree();
+        TestSubscriber<String> ts = t.range(2, 9).test(0);
+        ts.assertNoValues();
+        ts.requestMore(2);
+        ts.assertValues("two", "three").assertNotComplete();
+        ts.requestMore(3);
+        ts.assertValues("two", "three", "four", "five", "six").assertNotComplete();
+        ts.requestMore(10);
+        ts.assertValues("two", "three", "four", "five", "six", "seven", "eight").assertComplete();
+    }
+
+    @Test
+    public void testRangeSubscribeOn() {
+        BTree<Integer, String> t = createBigTree(10000, 16);
+        t.range(1, 10001) //
+                .subscribeOn(Schedulers.io()) //
+                .rebatchRequests(16) //
+                .count() //
+                .test() //
+                .awaitDone(10, TimeUnit.SECONDS) //
+                .assertValue(10000L) //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeEntries() {
+        BTree<Integer, String> t = createTree();
+        List<Entry<Integer, String>> list = t.rangeEntries(8, 10).toList().blockingGet();
+        assertEquals(2, list.size());
+        assertEquals(8, (int) list.get(0).key());
+        assertEquals("eight", list.get(0).value());
+        assertEquals(9, (int) list.get(1).key());
+        assertEquals("nine", list.get(1).value());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxChildrenTooSmall() {
+        Context.<Integer, String> create(Comparator.naturalOrder(), 3, new NodeFactoryMemory<>());
+    }
+
+    @Test
+    public void testBulkLoad() {
+        for (int maxChildren : new int[] { 4, 5, 16, 256 }) {
+            for (double fillFactor : new double[] { 0.01, 0.5, 0.7, 1.0 }) {
+                for (int n : new int[] { 0, 1, 2, 3, 4, 100, 10000 }) {
+                    BTree<Integer, String> t = emptyTree(maxChildren);
+                    t.bulkLoad(entries(n), fillFactor);
+                    assertEquals(n, t.size());
+                    for (int i = 0; i < n; i++) {
+                        assertEquals(i + "", t.get(i));
+                    }
+                    assertNull(t.get(-1));
+                    assertNull(t.get(n));
+                    t.range(0, n).test().assertValueCount(n).assertComplete();
+                    // tree still accepts inserts
+                    t.put(n / 2, "x");
+                    t.put(n + 1, "y");
+                    assertEquals(n + 2, t.size());
+                    assertEquals("y", t.get(n + 1));
+                    t.range(0, n + 2).test().assertValueCount(n + 2).assertComplete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadIsSmallerThanPuts() {
+        int n = 100000;
+        BTree<Integer, String> t = emptyTree(4);
+        t.bulkLoad(entries(n), 1.0);
+        // 3 entries per leaf and 3 children per non-leaf
+        assertEquals((int) Math.ceil(Math.log(n / 3.0) / Math.log(3)), t.height());
+        assertTrue(t.height() < createBigTree(n).height());
+    }
+
+    @Test
+    public void testBulkLoadDuplicatesKeepOrder() {
+        List<Entry<Integer, String>> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add(new Entry<Integer, String>(1, "a" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            list.add(new Entry<Integer, String>(2, "b" + i));
+        }
+        BTree<Integer, String> t = emptyTree(4);
+        t.bulkLoad(list.iterator(), 1.0);
+        assertEquals("a0", t.get(1));
+        assertEquals("b0", t.get(2));
+        t.range(2, 3) //
+                .test() //
+                .assertValueCount(10) //
+                .assertValueAt(0, "b0") //
+                .assertValueAt(9, "b9") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testBulkLoadFromFlowable() {
+        BTree<Integer, String> t = emptyTree(16);
+        t.bulkLoad(Flowable.range(0, 1000).map(i -> new Entry<Integer, String>(i, i + "")), 0.75);
+        assertEquals(1000, t.size());
+        t.range(10, 13) //
+                .test() //
+                .assertValues("10", "11", "12") //
+                .assertComplete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLoadUnsortedThrows() {
+        BTree<Integer, String> t = emptyTree(4);
+        t.bulkLoad(Arrays.asList(new Entry<Integer, String>(2, "two"), new Entry<Integer, String>(1, "one"))
+                .iterator(), 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLoadNonEmptyThrows() {
+        createTree().bulkLoad(entries(10), 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLoadBadFillFactorThrows() {
+        emptyTree(4).bulkLoad(entries(10), 0);
+    }
+
+    @Test
+    public void testRemove() {
+        BTree<Integer, String> t = createTree();
+        assertTrue(t.remove(3));
+        assertFalse(t.remove(3));
+        assertFalse(t.remove(0));
+        assertEquals(9, t.size());
+        assertNull(t.get(3));
+        t.range(1, 6) //
+                .test() //
+                .assertValues("one", "two", "four", "five") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRemoveAllInRandomOrderVariousFanouts() {
+        int n = 5000;
+        for (int maxChildren : new int[] { 4, 5, 16, 256 }) {
+            BTree<Integer, String> t = emptyTree(maxChildren);
+            for (int key : shuffled(n, 1)) {
+                t.put(key, key + "");
+            }
+            List<Integer> removes = shuffled(n, 2);
+            for (int i = 0; i < n; i++) {
+                int key = removes.get(i);
+                assertTrue(t.remove(key));
+                assertNull(t.get(key));
+                if (i % 500 == 0) {
+                    t.range(0, n).test().assertValueCount(n - i - 1).assertComplete();
+                    checkNoUnderfullNodes(t, maxChildren);
+                }
+            }
+            assertTrue(t.isEmpty());
+            assertEquals(0, t.height());
+            t.range(0, n).test().assertNoValues().assertComplete();
+            // tree is still usable
+            t.put(1, "one");
+            assertEquals("one", t.get(1));
+        }
+    }
+
+    @Test
+    public void testRemoveDuplicatesStraddlingLeaves() {
+        BTree<Integer, String> t = createTree();
+        for (int i = 0; i < 20; i++) {
+            t.put(5, "five" + i);
+        }
+        assertTrue(t.remove(5));
+        assertEquals("five0", t.get(5));
+        for (int i = 0; i < 19; i++) {
+            assertTrue(t.remove(5));
+        }
+        assertEquals("five19", t.get(5));
+        t.range(4, 7) //
+                .test() //
+                .assertValues("four", "five19", "six") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testExpireBefore() {
+        for (int maxChildren : new int[] { 4, 5, 16 }) {
+            int n = 10000;
+            BTree<Integer, String> t = createBigTree(n, maxChildren);
+            int height = t.height();
+            assertEquals(4999, t.expireBefore(5000));
+            checkNoUnderfullNodes(t, maxChildren);
+            assertEquals(n - 4999, t.size());
+            assertNull(t.get(4999));
+            assertEquals("5000", t.get(5000));
+            t.range(0, n + 1) //
+                    .test() //
+                    .assertValueCount(n - 4999) //
+                    .assertValueAt(0, "5000") //
+                    .assertComplete();
+            assertEquals(0, t.expireBefore(5000));
+            assertEquals(n - 5000, t.expireBefore(n));
+            assertEquals(1, t.size());
+            assertEquals(0, t.height());
+            assertTrue(height > 0);
+            t.range(0, n + 1).test().assertValues(n + "").assertComplete();
+        }
+    }
+
+    @Test
+    public void testExpireBeforeLeavesNoEmptyLeaf() {
+        for (int n = 20; n < 200; n++) {
+            BTree<Integer, String> t = createBigTree(n, 4);
+            for (int upper = 2; upper < n; upper += 3) {
+                t.expireBefore(upper);
+                checkNoUnderfullNodes(t, 4);
+                t.range(0, n + 1) //
+                        .test() //
+                        .assertValueCount(n - upper + 1) //
+                        .assertValueAt(0, upper + "") //
+                        .assertComplete();
+            }
+        }
+        BTree<Integer, String> t = createBigTree(100, 4);
+        t.expireBefore(17);
+        checkNoUnderfullNodes(t, 4);
+        assertEquals("17", t.get(17));
+    }
+
+    @Test
+    public void testRemoveRange() {
+        BTree<Integer, String> t = createBigTree(10000, 4);
+        assertEquals(6000, t.removeRange(2000, 8000));
+        checkNoUnderfullNodes(t, 4);
+        assertEquals(0, t.removeRange(2000, 8000));
+        assertEquals(0, t.removeRange(9000, 9000));
+        assertEquals(4000, t.size());
+        assertNull(t.get(2000));
+        assertEquals("1999", t.get(1999));
+        assertEquals("8000", t.get(8000));
+        t.range(1998, 8002) //
+                .test() //
+                .assertValues("1998", "1999", "8000", "8001") //
+                .assertComplete();
+        t.range(0, 20000).test().assertValueCount(4000).assertComplete();
+    }
+
+    @Test
+    public void testRandomOperationsMatchSortedList() {
+        Random random = new Random(3);
+        for (int maxChildren : new int[] { 4, 5, 8 }) {
+            BTree<Integer, String> t = emptyTree(maxChildren);
+            // expected entries in key order, duplicates in insertion order
+            List<Entry<Integer, String>> expected = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(1000);
+                int op = random.nextInt(100);
+                if (op < 60) {
+                    t.put(key, i + "");
+                    int j = 0;
+                    while (j < expected.size() && expected.get(j).key() <= key) {
+                        j++;
+                    }
+                    expected.add(j, new Entry<Integer, String>(key, i + ""));
+                } else if (op < 95) {
+                    boolean removed = false;
+                    for (int j = 0; j < expected.size(); j++) {
+                        if (expected.get(j).key() == key) {
+                            expected.remove(j);
+                            removed = true;
+                            break;
+                        }
+                    }
+                    assertEquals(removed, t.remove(key));
+                } else if (op < 99) {
+                    int upper = key + random.nextInt(50);
+                    long count = expected.stream().filter(e -> e.key() >= key && e.key() < upper).count();
+                    expected.removeIf(e -> e.key() >= key && e.key() < upper);
+                    assertEquals(count, t.removeRange(key, upper));
+                } else {
+                    int upper = random.nextInt(100);
+                    long count = expected.stream().filter(e -> e.key() < upper).count();
+                    expected.removeIf(e -> e.key() < upper);
+                    assertEquals(count, t.expireBefore(upper));
+                }
+                assertEquals(expected.size(), t.size());
+                checkNoUnderfullNodes(t, maxChildren);
+            }
+            List<Entry<Integer, String>> list = t.rangeEntries(0, 1000).toList().blockingGet();
+            assertEquals(expected.size(), list.size());
+            for (int j = 0; j < list.size(); j++) {
+                assertEquals(expected.get(j).key(), list.get(j).key());
+                assertEquals(expected.get(j).value(), list.get(j).value());
+            }
+            for (int key = 0; key < 1000; key++) {
+                String value = null;
+                for (Entry<Integer, String> e : expected) {
+                    if (e.key() == key) {
+                        value = e.value();
+                        break;
+                    }
+                }
+                assertEquals(value, t.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testRemovalsKeepTreeShallow() {
+        int n = 100000;
+        BTree<Integer, String> t = createBigTree(n, 4);
+        for (int i = 1; i <= n; i++) {
+            if (i % 100 != 0) {
+                t.remove(i);
+            }
+        }
+        assertEquals(1000, t.size());
+        // no more than a tree built from the 1000 remaining entries
+        assertTrue(t.height() <= createBigTree(1000, 4).height());
+    }
+
+    @Test
+    public void testRankCountAndSelect() {
+        BTree<Integer, String> t = createBigTree(10000, 5);
+        assertEquals(0, t.rank(0));
+        assertEquals(0, t.rank(1));
+        assertEquals(99, t.rank(100));
+        assertEquals(10000, t.rank(20000));
+        assertEquals(100, t.count(1000, 1100));
+        assertEquals(0, t.count(1100, 1000));
+        assertEquals(10000, t.count(0, 20000));
+        assertEquals(1, (int) t.select(0).key());
+        assertEquals("5001", t.select(5000).value());
+        assertEquals(10000, (int) t.select(9999).key());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectOutOfRangeThrows() {
+        createBigTree(10).select(10);
+    }
+
+    @Test
+    public void testOrderStatisticsMatchSortedListAfterRandomOperations() {
+        Random random = new Random(5);
+        for (int maxChildren : new int[] { 4, 5, 8 }) {
+            BTree<Integer, String> t = emptyTree(maxChildren);
+            // expected keys in order, duplicates allowed
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                int key = random.nextInt(500);
+                int op = random.nextInt(100);
+                if (op < 65) {
+                    t.put(key, key + "");
+                    expected.add(upperIndex(expected, key), key);
+                } else if (op < 95) {
+                    if (t.remove(key)) {
+                        expected.remove(lowerIndex(expected, key));
+                    }
+                } else {
+                    int upper = key + random.nextInt(30);
+                    t.removeRange(key, upper);
+                    expected.subList(lowerIndex(expected, key), lowerIndex(expected, upper)).clear();
+                }
+                if (i % 100 == 0) {
+                    checkOrderStatistics(t, expected, 500);
+                }
+            }
+            checkOrderStatistics(t, expected, 500);
+        }
+    }
+
+    @Test
+    public void testOrderStatisticsAfterBulkLoadAndExpire() {
+        BTree<Integer, String> t = emptyTree(6);
+        t.bulkLoad(entries(5000), 0.7);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            expected.add(i);
+        }
+        checkOrderStatistics(t, expected, 5000);
+        t.expireBefore(1234);
+        expected.subList(0, 1234).clear();
+        for (int i = 0; i < 300; i++) {
+            t.put(4000 + i, "x");
+            expected.add(upperIndex(expected, 4000 + i), 4000 + i);
+        }
+        checkOrderStatistics(t, expected, 5000);
+    }
+
+    private static void checkOrderStatistics(BTree<Integer, String> t, List<Integer> expected, int maxKey) {
+        assertEquals(expected.size(), t.size());
+        for (int key = 0; key <= maxKey; key++) {
+            assertEquals(lowerIndex(expected, key), t.rank(key));
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), t.select(i).key());
+        }
+    }
+
+    // index of the first key >= key
+    private static int lowerIndex(List<Integer> keys, int key) {
+        int j = 0;
+        while (j < keys.size() && keys.get(j) < key) {
+            j++;
+        }
+        return j;
+    }
+
+    // index of the first key > key
+    private static int upperIndex(List<Integer> keys, int key) {
+        int j = 0;
+        while (j < keys.size() && keys.get(j) <= key) {
+            j++;
+        }
+        return j;
+    }
+
+    @Test
+    public void testRangesCoalescesAndSortsRanges() {
+        BTree<Integer, String> t = createTree();
+        t.ranges(Arrays.asList(Range.create(8, 10), Range.create(2, 4), Range.create(3, 5), Range.create(5, 6),
+                Range.create(7, 7))) //
+                .test() //
+                .assertValues("two", "three", "four", "five", "eight", "nine") //
+                .assertComplete();
+        t.ranges(Collections.emptyList()).test().assertNoValues().assertComplete();
+        t.ranges(Arrays.asList(Range.create(20, 30))).test().assertNoValues().assertComplete();
+        emptyTree(4).ranges(Arrays.asList(Range.create(1, 3))).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void testRangesMatchesRangeForManyRanges() {
+        Random random = new Random(1);
+        for (int maxChildren : new int[] { 4, 5, 16 }) {
+            BTree<Integer, String> t = emptyTree(maxChildren);
+            // duplicates so that runs of equal keys straddle leaves
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(5000);
+                t.put(key, i + "");
+            }
+            for (int query = 0; query < 50; query++) {
+                List<Range<Integer>> ranges = new ArrayList<>();
+                int numRanges = 1 + random.nextInt(200);
+                for (int i = 0; i < numRanges; i++) {
+                    int lower = random.nextInt(5100) - 50;
+                    ranges.add(Range.create(lower, lower + random.nextInt(30)));
+                }
+                List<Entry<Integer, String>> expected = t.rangeEntries(-100, 6000) //
+                        .filter(e -> contains(ranges, e.key())) //
+                        .toList() //
+                        .blockingGet();
+                List<Entry<Integer, String>> found = t.rangesEntries(ranges).toList().blockingGet();
+                assertEquals(expected.size(), found.size());
+                for (int i = 0; i < found.size(); i++) {
+                    assertEquals(expected.get(i).key(), found.get(i).key());
+                    assertEquals(expected.get(i).value(), found.get(i).value());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRangesAfterRemoves() {
+        Random random = new Random(7);
+        for (int maxChildren : new int[] { 4, 5 }) {
+            for (int trial = 0; trial < 20; trial++) {
+                BTree<Integer, String> t = emptyTree(maxChildren);
+                int n = 50 + random.nextInt(2000);
+                for (int i = 0; i < 400; i++) {
+                    int key = random.nextInt(n);
+                    int op = random.nextInt(100);
+                    if (op < 60) {
+                        t.put(key, i + "");
+                    } else if (op < 90) {
+                        t.remove(key);
+                    } else if (op < 95) {
+                        t.removeRange(key, key + random.nextInt(n / 5));
+                    } else {
+                        t.expireBefore(random.nextInt(n / 2));
+                    }
+                    List<Range<Integer>> ranges = new ArrayList<>();
+                    for (int j = 0; j < 20; j++) {
+                        int lower = random.nextInt(n);
+                        ranges.add(Range.create(lower, lower + random.nextInt(10)));
+                    }
+                    List<String> expected = t.rangeEntries(0, n) //
+                            .filter(e -> contains(ranges, e.key())) //
+                            .map(e -> e.value()) //
+                            .toList() //
+                            .blockingGet();
+                    assertEquals(expected, t.ranges(ranges).toList().blockingGet());
+                    assertEquals(t.size(), (long) t.ranges(Arrays.asList(Range.create(-1, n))).count().blockingGet());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRangesTagged() {
+        BTree<Integer, String> t = createTree();
+        List<Range<Integer>> ranges = Arrays.asList(Range.create(6, 9), Range.create(1, 3), Range.create(2, 7));
+        t.rangesTagged(ranges) //
+                .map(e -> e.key() + ":" + e.value()) //
+                .test() //
+                .assertValues("1:one", "1:two", "2:three", "2:four", "2:five", "0:six", "0:seven", "0:eight") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangesBackpressure() {
+        BTree<Integer, String> t = createTree();
+        TestSubscriber<String> ts = t.ranges(Arrays.asList(Range.create(1, 3), Range.create(5, 7))).test(0);
+        ts.assertNoValues();
+        ts.requestMore(3);
+        ts.assertValues("one", "two", "five").assertNotComplete();
+        ts.requestMore(10);
+        ts.assertValues("one", "two", "five", "six").assertComplete();
+    }
+
+    @Test
+    public void testSplit() {
+        BTree<Integer, String> t = createBigTree(100000, 16);
+        List<Range<Integer>> ranges = t.split(1000, 90000, 8);
+        assertEquals(8, ranges.size());
+        assertEquals(1000, (int) ranges.get(0).lowerInclusive());
+        assertEquals(90000, (int) ranges.get(7).upperExclusive());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertTrue(ranges.get(i).lowerInclusive() < ranges.get(i).upperExclusive());
+            if (i > 0) {
+                assertEquals(ranges.get(i - 1).upperExclusive(), ranges.get(i).lowerInclusive());
+            }
+        }
+        assertEquals(1, t.split(1000, 90000, 1).size());
+        assertEquals(1, t.split(1000, 1001, 8).size());
+        assertEquals(1, createTree().split(1, 3, 8).size());
+    }
+
+    @Test
+    public void testRangeParallelOrderedMatchesRange() {
+        Random random = new Random(1);
+        BTree<Integer, String> t = emptyTree(8);
+        for (int i = 0; i < 50000; i++) {
+            t.put(random.nextInt(10000), i + "");
+        }
+        for (int parallelism : new int[] { 1, 3, 8 }) {
+            List<String> expected = t.range(100, 9000).toList().blockingGet();
+            List<String> found = t.rangeParallel(100, 9000, parallelism, Schedulers.computation()) //
+                    .toList() //
+                    .blockingGet();
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void testRangeParallelUnordered() {
+        BTree<Integer, String> t = createBigTree(50000, 8);
+        List<Integer> found = t.rangeParallelUnordered(1, 40001, 4, Schedulers.computation()) //
+                .sequential() //
+                .map(Integer::parseInt) //
+                .toSortedList() //
+                .blockingGet();
+        assertEquals(40000, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals(i + 1, (int) found.get(i));
+        }
+    }
+
+    private static void checkNoUnderfullNodes(BTree<Integer, String> t, int maxChildren) {
+        assertTrue(t.minEntriesBelowRoot() >= maxChildren / 2);
+    }
+
+    private static boolean contains(List<Range<Integer>> ranges, int key) {
+        for (Range<Integer> r : ranges) {
+            if (key >= r.lowerInclusive() && key < r.upperExclusive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Integer> shuffled(int n, long seed) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(seed));
+        return keys;
+    }
+
+    private static Iterator<Entry<Integer, String>> entries(int n) {
+        return IntStream.range(0, n) //
+                .mapToObj(i -> new Entry<Integer, String>(i, i + "")) //
+                .iterator();
+    }
+
+    private static BTree<Integer, String> emptyTree(int maxChildren) {
+        return new BTree<Integer, String>(Context.<Integer, String> create(Comparator.naturalOrder(),
+                maxChildren, new NodeFactoryMemory<>()));
+    }
+
     private static BTree<Integer, String> createTree() {
         BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
                 Comparator.naturalOrder(), 4, new NodeFactoryMemory<>()));
@@ -102,8 +799,12 @@ public class BTreeTest {
     }
 
     private static BTree<Integer, String> createBigTree(int size) {
+        return createBigTree(size, 4);
+    }
+
+    private static BTree<Integer, String> createBigTree(int size, int maxChildren) {
         BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
-                Comparator.naturalOrder(), 4, new NodeFactoryMemory<>()));
+                Comparator.naturalOrder(), maxChildren, new NodeFactoryMemory<>()));
         for (int i = 1; i <= size; i++) {
             t.put(i, i + "");
         }
@@ -0,0 +1,247 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+public class ConcurrentBTreeTest {
+
+    @Test
+    public void testGetAndRange() {
+        ConcurrentBTree<Integer, String> t = createTree();
+        assertEquals("three", t.get(3));
+        assertNull(t.get(0));
+        assertNull(t.get(11));
+        t.range(5, 8) //
+                .test() //
+                .assertValues("five", "six", "seven") //
+                .assertComplete();
+        t.rangeEntries(9, 100) //
+                .map(Entry::key) //
+                .test() //
+                .assertValues(9, 10) //
+                .assertComplete();
+    }
+
+    @Test
+    public void testEntries() {
+        ConcurrentBTree<Integer, String> t = createTree();
+        t.put(3, "three2");
+        t.entries() //
+                .map(Entry::value) //
+                .test() //
+                .assertValues("one", "two", "three", "three2", "four", "five", "six", "seven", "eight", "nine",
+                        "ten") //
+                .assertComplete();
+        new ConcurrentBTree<Integer, String>(Comparator.naturalOrder(), 4).entries() //
+                .test() //
+                .assertNoValues() //
+                .assertComplete();
+    }
+
+    @Test
+    public void testEmpty() {
+        ConcurrentBTree<Integer, String> t = new ConcurrentBTree<Integer, String>(Comparator.naturalOrder(), 4);
+        assertTrue(t.isEmpty());
+        assertNull(t.get(1));
+        t.range(0, 10).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void testRandomOrderVariousFanouts() {
+        int n = 10000;
+        List<Integer> keys = shuffledKeys(n);
+        for (int maxChildren : new int[] { 4, 5, 16, 256 }) {
+            ConcurrentBTree<Integer, String> t = new ConcurrentBTree<Integer, String>(Comparator.naturalOrder(),
+                    maxChildren);
+            for (int key : keys) {
+                t.put(key, key + "");
+            }
+            assertEquals(n, t.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i + "", t.get(i));
+            }
+            assertNull(t.get(-1));
+            assertNull(t.get(n));
+            t.range(0, n).test().assertValueCount(n).assertComplete();
+        }
+    }
+
+    @Test
+    public void testHeight() {
+        ConcurrentBTree<Integer, String> t = new ConcurrentBTree<Integer, String>(Comparator.naturalOrder(), 256);
+        for (int i = 0; i < 100000; i++) {
+            t.put(i, "");
+        }
+        assertEquals(2, t.height());
+    }
+
+    @Test
+    public void testDuplicateKeysStraddlingLeaves() {
+        ConcurrentBTree<Integer, String> t = createTree();
+        for (int i = 0; i < 20; i++) {
+            t.put(5, "five" + i);
+        }
+        assertEquals("five", t.get(5));
+        t.range(5, 6) //
+                .test() //
+                .assertValueCount(21) //
+                .assertValueAt(0, "five") //
+                .assertValueAt(20, "five19") //
+                .assertComplete();
+        t.range(4, 7) //
+                .test() //
+                .assertValueCount(23) //
+                .assertValueAt(0, "four") //
+                .assertValueAt(22, "six") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        ConcurrentBTree<Integer, String> t = createTree();
+        TestSubscriber<String> ts = t.range(2, 9).test(0);
+        ts.assertNoValues();
+        ts.requestMore(2);
+        ts.assertValues("two", "three").assertNotComplete();
+        ts.requestMore(10);
+        ts.assertValues("two", "three", "four", "five", "six", "seven", "eight").assertComplete();
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentPuts() throws Exception {
+        int threads = 8;
+        int perThread = 50000;
+        for (int maxChildren : new int[] { 4, 64 }) {
+            ConcurrentBTree<Integer, Integer> t = new ConcurrentBTree<Integer, Integer>(Comparator.naturalOrder(),
+                    maxChildren);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    int thread = i;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        // interleave the keys of the threads
+                        for (int j = 0; j < perThread; j++) {
+                            int key = j * threads + thread;
+                            t.put(key, key);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            int n = threads * perThread;
+            assertEquals(n, t.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, (int) t.get(i));
+            }
+            List<Integer> list = t.range(0, n).toList().blockingGet();
+            assertEquals(n, list.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, (int) list.get(i));
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadersDuringWrites() throws Exception {
+        int n = 200000;
+        ConcurrentBTree<Integer, Integer> t = new ConcurrentBTree<Integer, Integer>(Comparator.naturalOrder(), 16);
+        // even keys are present before the readers start, odd keys are added
+        // while they run
+        for (int i = 0; i < n; i += 2) {
+            t.put(i, i);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    Random random = new Random();
+                    while (!done.get()) {
+                        int key = random.nextInt(n / 2) * 2;
+                        assertEquals(key, (int) t.get(key));
+                        List<Integer> list = t.range(key, key + 100).toList().blockingGet();
+                        int previous = -1;
+                        int evens = 0;
+                        for (int k : list) {
+                            assertTrue(k > previous);
+                            previous = k;
+                            if (k % 2 == 0) {
+                                evens++;
+                            }
+                        }
+                        assertEquals(Math.min(50, (n - key) / 2), evens);
+                    }
+                    return null;
+                }));
+            }
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i < n; i += 2) {
+                    t.put(i, i);
+                }
+                done.set(true);
+                return null;
+            });
+            writer.get();
+            for (Future<?> f : readers) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(n, t.size());
+        t.range(0, n).test().assertValueCount(n).assertComplete();
+    }
+
+    private static List<Integer> shuffledKeys(int n) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        return keys;
+    }
+
+    private static ConcurrentBTree<Integer, String> createTree() {
+        ConcurrentBTree<Integer, String> t = new ConcurrentBTree<Integer, String>(Comparator.naturalOrder(), 4);
+        t.put(1, "one");
+        t.put(2, "two");
+        t.put(3, "three");
+        t.put(4, "four");
+        t.put(5, "five");
+        t.put(6, "six");
+        t.put(7, "seven");
+        t.put(8, "eight");
+        t.put(9, "nine");
+        t.put(10, "ten");
+        return t;
+    }
+
+}
@@ -0,0 +1,107 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.junit.Test;
+
+public class DurableBTreeTest {
+
+    @Test
+    public void testRecoverFileBackedTreeFromLog() {
+        File log = file("log");
+        // not closed, as after a crash
+        DurableBTree<Integer, String> t = create(log, SyncPolicy.everyWrite());
+        for (int i = 0; i < 2000; i++) {
+            t.put(i % 1000, "v" + i);
+        }
+        assertTrue(t.remove(5));
+        assertFalse(t.remove(-1));
+        assertEquals(100, t.removeRange(100, 150));
+        assertEquals(19, t.expireBefore(10));
+        assertEquals(1880, t.size());
+
+        DurableBTree<Integer, String> t2 = create(log, SyncPolicy.everyWrite());
+        assertEquals(1880, t2.size());
+        assertNull(t2.get(3));
+        assertNull(t2.get(5));
+        assertNull(t2.get(120));
+        assertEquals("v10", t2.get(10));
+        List<Entry<Integer, String>> list = t2.rangeEntries(999, 1000).toList().blockingGet();
+        assertEquals(2, list.size());
+        assertEquals("v999", list.get(0).value());
+        assertEquals("v1999", list.get(1).value());
+        t.close();
+        t2.close();
+    }
+
+    @Test
+    public void testCheckpointShrinksLog() {
+        File log = file("log");
+        try (DurableBTree<Integer, String> t = create(log, SyncPolicy.os())) {
+            for (int i = 0; i < 1000; i++) {
+                t.put(i, "v" + i);
+            }
+            t.expireBefore(900);
+            long before = t.logSize();
+            t.checkpoint();
+            assertTrue(t.logSize() < before / 5);
+            t.put(2000, "last");
+        }
+        try (DurableBTree<Integer, String> t = create(log, SyncPolicy.os())) {
+            assertEquals(101, t.size());
+            assertEquals("v950", t.get(950));
+            assertEquals("last", t.get(2000));
+            assertNull(t.get(5));
+        }
+    }
+
+    @Test
+    public void testConcurrentPutsAreAllRecovered() throws InterruptedException {
+        File log = file("log");
+        int threads = 4;
+        int perThread = 1000;
+        try (DurableBTree<Integer, String> t = create(log, SyncPolicy.everyWrite())) {
+            CountDownLatch latch = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                int id = i;
+                new Thread(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        t.put(j * threads + id, "v");
+                    }
+                    latch.countDown();
+                }).start();
+            }
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+            assertEquals(threads * perThread, t.size());
+        }
+        try (DurableBTree<Integer, String> t = create(log, SyncPolicy.everyWrite())) {
+            assertEquals(threads * perThread, t.size());
+            t.rangeEntries(0, threads * perThread).test().assertValueCount(threads * perThread);
+        }
+    }
+
+    private static DurableBTree<Integer, String> create(File log, SyncPolicy policy) {
+        // a new page file each time, the tree is rebuilt from the log
+        NodeFactoryFile<Integer, String> factory = new NodeFactoryFile<>(
+                new Storage(file("pages"), 4096, 1024), Serializers.intKey(), Serializers.utf8(), 64);
+        return new DurableBTree<Integer, String>(Comparator.naturalOrder(), 16, factory, Serializers.intKey(),
+                Serializers.utf8(), log, policy);
+    }
+
+    private static File file(String suffix) {
+        File directory = new File("target/DurableBTreeTest");
+        directory.mkdirs();
+        return new File(directory, System.nanoTime() + "." + suffix);
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+public class LongBTreeTest {
+
+    @Test
+    public void testGet() {
+        LongBTree<String> t = createTree();
+        assertEquals("three", t.get(3));
+        assertNull(t.get(0));
+        assertNull(t.get(11));
+    }
+
+    @Test
+    public void testRange() {
+        createTree().range(5, 8) //
+                .test() //
+                .assertValues("five", "six", "seven") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeEntries() {
+        createTree().rangeEntries(9, 100) //
+                .map(Entry::key) //
+                .test() //
+                .assertValues(9L, 10L) //
+                .assertComplete();
+    }
+
+    @Test
+    public void testEmpty() {
+        LongBTree<String> t = new LongBTree<String>(4);
+        assertTrue(t.isEmpty());
+        assertNull(t.get(1));
+        t.range(Long.MIN_VALUE, Long.MAX_VALUE) //
+                .test() //
+                .assertNoValues() //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRandomOrderVariousFanouts() {
+        for (int maxChildren : new int[] { 4, 5, 16, 256 }) {
+            List<Long> keys = shuffledKeys(10000);
+            LongBTree<Long> t = new LongBTree<Long>(maxChildren);
+            for (long k : keys) {
+                t.put(k, k * 10);
+            }
+            assertEquals(10000, t.size());
+            for (long k = 0; k < 10000; k++) {
+                assertEquals(k * 10, (long) t.get(k));
+            }
+            assertNull(t.get(-1));
+            assertNull(t.get(10000));
+            assertEquals(10000, (long) t.range(Long.MIN_VALUE, Long.MAX_VALUE).count().blockingGet());
+            t.rangeEntries(1234, 1240) //
+                    .map(Entry::key) //
+                    .test() //
+                    .assertValues(1234L, 1235L, 1236L, 1237L, 1238L, 1239L) //
+                    .assertComplete();
+        }
+    }
+
+    @Test
+    public void testDuplicatesKeepInsertionOrder() {
+        LongBTree<Integer> t = new LongBTree<Integer>(4);
+        for (int i = 0; i < 20; i++) {
+            t.put(1, i);
+            t.put(2, i);
+        }
+        assertEquals(0, (int) t.get(1));
+        assertEquals(0, (int) t.get(2));
+        t.range(2, 3) //
+                .test() //
+                .assertValueCount(20) //
+                .assertValueAt(0, 0) //
+                .assertValueAt(19, 19) //
+                .assertComplete();
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        LongBTree<Long> t = new LongBTree<Long>(4);
+        for (long i = 0; i < 100; i++) {
+            t.put(i, i);
+        }
+        TestSubscriber<Long> ts = t.range(0, 100).test(0);
+        ts.assertNoValues();
+        ts.requestMore(3);
+        ts.assertValues(0L, 1L, 2L).assertNotComplete();
+        ts.requestMore(100);
+        ts.assertValueCount(100).assertComplete();
+    }
+
+    @Test
+    public void testHeightAtLargeFanout() {
+        LongBTree<Long> t = new LongBTree<Long>(256);
+        for (long i = 0; i < 100000; i++) {
+            t.put(i, i);
+        }
+        assertEquals(2, t.height());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxChildrenTooSmall() {
+        new LongBTree<String>(3);
+    }
+
+    @Test
+    public void testLongLongRandomOrder() {
+        for (int maxChildren : new int[] { 4, 5, 64 }) {
+            List<Long> keys = shuffledKeys(10000);
+            LongLongBTree t = new LongLongBTree(maxChildren);
+            for (long k : keys) {
+                t.put(k * 2, k);
+            }
+            assertEquals(10000, t.size());
+            for (long k = 0; k < 10000; k++) {
+                assertEquals(k, t.get(k * 2, -1));
+                assertTrue(t.contains(k * 2));
+                assertFalse(t.contains(k * 2 + 1));
+                assertEquals(-1, t.get(k * 2 + 1, -1));
+            }
+            t.range(11, 19) //
+                    .test() //
+                    .assertValues(6L, 7L, 8L, 9L) //
+                    .assertComplete();
+        }
+    }
+
+    @Test
+    public void testLongLongDuplicatesAndBackpressure() {
+        LongLongBTree t = new LongLongBTree(4);
+        for (long i = 0; i < 30; i++) {
+            t.put(5, i);
+        }
+        t.put(4, -1);
+        t.put(6, -2);
+        assertEquals(0, t.get(5, -100));
+        TestSubscriber<Entry<Long, Long>> ts = t.rangeEntries(5, 6).test(1);
+        ts.assertValueCount(1);
+        assertEquals(0L, (long) ts.values().get(0).value());
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(30).assertComplete();
+    }
+
+    private static LongBTree<String> createTree() {
+        LongBTree<String> t = new LongBTree<String>(4);
+        String[] names = { "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten" };
+        for (int i = names.length; i >= 1; i--) {
+            t.put(i, names[i - 1]);
+        }
+        return t;
+    }
+
+    private static List<Long> shuffledKeys(int n) {
+        List<Long> keys = new ArrayList<Long>();
+        for (long i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(123));
+        return keys;
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.junit.Test;
+
+public class NodeFileTest {
+
+    @Test
+    public void testGetAndRange() {
+        BTree<Integer, String> t = createTree(4);
+        for (int i = 1; i <= 10; i++) {
+            t.put(i, "v" + i);
+        }
+        assertEquals("v3", t.get(3));
+        assertNull(t.get(0));
+        assertNull(t.get(11));
+        t.range(5, 8) //
+                .test() //
+                .assertValues("v5", "v6", "v7") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testManyRandomInsertsVariableLengthValues() {
+        int n = 5000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        BTree<Integer, String> t = createTree(16);
+        for (int key : keys) {
+            t.put(key, value(key));
+        }
+        assertEquals(n, t.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(value(i), t.get(i));
+        }
+        t.range(100, 110) //
+                .test() //
+                .assertValueCount(10) //
+                .assertValueAt(0, value(100)) //
+                .assertValueAt(9, value(109)) //
+                .assertComplete();
+        t.range(0, n).test().assertValueCount(n).assertComplete();
+    }
+
+    @Test
+    public void testLeafFullByBytesBeforeCount() {
+        // heap holds roughly 6 max length values so leaves split before
+        // reaching maxChildren entries
+        int maxChildren = 16;
+        int pageSize = NodeFile.HEADER_SIZE + maxChildren * (4 + NodeFile.SLOT_SIZE) + 6 * 20;
+        BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                Comparator.naturalOrder(), maxChildren, factory(storage(pageSize), 20)));
+        for (int i = 0; i < 1000; i++) {
+            t.put(i, "01234567890123456789");
+        }
+        t.range(0, 1000).test().assertValueCount(1000).assertComplete();
+    }
+
+    @Test
+    public void testSplitByBytesWithMixedValueLengths() {
+        // long values are clustered by key so a leaf split at its middle
+        // entry could leave a half with too little heap for another long value
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                    Comparator.naturalOrder(), 64, new NodeFactoryOffHeap<>(new Arena(2048, 16),
+                            Serializers.intKey(), Serializers.utf8(), 100)));
+            Map<Integer, String> map = new TreeMap<>();
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(100000);
+                String value = (key / 500) % 2 == 0 ? longValue(i) : "a";
+                if (!map.containsKey(key)) {
+                    t.put(key, value);
+                    map.put(key, value);
+                }
+            }
+            assertEquals(new ArrayList<>(map.values()), t.range(0, 100000).toList().blockingGet());
+        }
+    }
+
+    private static String longValue(int i) {
+        StringBuilder s = new StringBuilder();
+        while (s.length() < 100) {
+            s.append((char) ('a' + i % 26));
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testBulkLoadLeavesFullByBytesBeforeCount() {
+        int maxChildren = 16;
+        int pageSize = NodeFile.HEADER_SIZE + maxChildren * (4 + NodeFile.SLOT_SIZE) + 6 * 20;
+        BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                Comparator.naturalOrder(), maxChildren, factory(storage(pageSize), 20)));
+        List<Entry<Integer, String>> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(new Entry<Integer, String>(i, "01234567890123456789"));
+        }
+        t.bulkLoad(list.iterator(), 1.0);
+        assertEquals("01234567890123456789", t.get(999));
+        t.range(0, 1000).test().assertValueCount(1000).assertComplete();
+        t.put(500, "a");
+        t.range(500, 501).test().assertValueCount(2).assertComplete();
+    }
+
+    @Test
+    public void testBulkLoad() {
+        BTree<Integer, String> t = createTree(16);
+        List<Entry<Integer, String>> list = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            list.add(new Entry<Integer, String>(i, value(i)));
+        }
+        t.bulkLoad(list.iterator(), 0.8);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(value(i), t.get(i));
+        }
+        t.range(0, 5000).test().assertValueCount(5000).assertComplete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueTooLong() {
+        BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                Comparator.naturalOrder(), 4, factory(storage(4096), 4)));
+        t.put(1, "hello");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageSizeTooSmall() {
+        new BTree<Integer, String>(Context.<Integer, String> create(Comparator.naturalOrder(), 512,
+                factory(storage(4096), 32)));
+    }
+
+    @Test
+    public void testRemoveAndExpireVariableLengthValues() {
+        int n = 5000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        BTree<Integer, String> t = createTree(16);
+        for (int key : keys) {
+            t.put(key, value(key));
+        }
+        for (int i = 0; i < n; i += 3) {
+            assertTrue(t.remove(i));
+        }
+        assertEquals(2000, t.expireBefore(3000));
+        assertEquals(667, t.removeRange(4000, 5000));
+        assertEquals(666, t.size());
+        for (int i = 3000; i < 4000; i++) {
+            assertEquals(i % 3 == 0 ? null : value(i), t.get(i));
+        }
+        t.range(0, n).test().assertValueCount(666).assertComplete();
+    }
+
+    @Test
+    public void testRankCountAndSelectAfterRemovals() {
+        int n = 5000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(2));
+        BTree<Integer, String> t = createTree(16);
+        for (int key : keys) {
+            t.put(key, value(key));
+        }
+        for (int i = 0; i < n; i += 2) {
+            assertTrue(t.remove(i));
+        }
+        t.expireBefore(1000);
+        // odd keys from 1001 to 4999 remain
+        assertEquals(2000, t.size());
+        assertEquals(0, t.rank(1001));
+        assertEquals(500, t.rank(2001));
+        assertEquals(50, t.count(3000, 3100));
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(1001 + 2 * i, (int) t.select(i).key());
+        }
+        assertEquals(value(4999), t.select(1999).value());
+    }
+
+    @Test
+    public void testExpireFreesPages() {
+        int n = 100000;
+        Arena arena = new Arena(4096, 64);
+        BTree<Integer, Integer> t = new BTree<Integer, Integer>(Context.<Integer, Integer> create(
+                Comparator.naturalOrder(), 64, new NodeFactoryOffHeap<>(arena, Serializers.intKey(),
+                        Serializers.intValue())));
+        for (int i = 0; i < n; i++) {
+            t.put(i, i);
+        }
+        long pages = arena.pagesInUse();
+        assertEquals(n / 2, t.expireBefore(n / 2));
+        assertTrue(arena.pagesInUse() <= pages / 2 + 2);
+        // freed pages are reused by later inserts
+        long reserved = arena.bytesReserved();
+        for (int i = n; i < n + n / 4; i++) {
+            t.put(i, i);
+        }
+        assertEquals(reserved, arena.bytesReserved());
+        t.removeRange(0, n + n / 4);
+        assertTrue(t.isEmpty());
+        assertEquals(1, arena.pagesInUse());
+    }
+
+    private static String value(int i) {
+        StringBuilder s = new StringBuilder();
+        for (int j = 0; j < i % 7; j++) {
+            s.append(i);
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testManyRandomInsertsThroughSmallPageCache() {
+        int n = 5000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(1));
+        PageCache cache = new PageCache(storage(1024), 8 * 1024);
+        BTree<Integer, String> t = new BTree<Integer, String>(Context.<Integer, String> create(
+                Comparator.naturalOrder(), 16, factory(cache, 32)));
+        for (int key : keys) {
+            t.put(key, value(key));
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(value(i), t.get(i));
+        }
+        t.range(0, n).test().assertValueCount(n).assertComplete();
+        assertTrue(cache.evictions() > 0);
+    }
+
+    private static BTree<Integer, String> createTree(int maxChildren) {
+        return new BTree<Integer, String>(Context.<Integer, String> create(Comparator.naturalOrder(),
+                maxChildren, factory(storage(4096), 64)));
+    }
+
+    private static NodeFactoryFile<Integer, String> factory(PageStore pages, int maxValueBytes) {
+        return new NodeFactoryFile<>(pages, Serializers.intKey(), Serializers.utf8(), maxValueBytes);
+    }
+
+    private static Storage storage(int pageSize) {
+        return new Storage(file(), pageSize, 1024);
+    }
+
+    private static File file() {
+        return new File("target/NodeFileTest/" + System.nanoTime());
+    }
+
+}
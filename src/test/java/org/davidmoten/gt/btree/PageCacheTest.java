@@ -0,0 +1,118 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.junit.Test;
+
+public class PageCacheTest {
+
+    @Test
+    public void testHitsMissesAndWriteBackOnEviction() {
+        Storage store = storage(64);
+        PageCache cache = new PageCache(store, 4 * 64);
+        long[] ids = new long[8];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cache.allocate();
+            ByteBuffer b = cache.pin(ids[i]);
+            b.putInt(0, i);
+            cache.unpin(ids[i], true);
+        }
+        assertEquals(0, cache.hits());
+        assertEquals(8, cache.misses());
+        assertEquals(4, cache.evictions());
+        // evicted pages were written back to the store
+        assertEquals(0, store.pin(ids[0]).getInt(0));
+        for (int i = 0; i < ids.length; i++) {
+            ByteBuffer b = cache.pin(ids[i]);
+            assertEquals(i, b.getInt(0));
+            cache.unpin(ids[i], false);
+        }
+        cache.flush();
+        assertEquals(7, store.pin(ids[7]).getInt(0));
+    }
+
+    @Test
+    public void testRepeatedPinIsHit() {
+        PageCache cache = new PageCache(storage(64), 4 * 64);
+        long id = cache.allocate();
+        cache.pin(id);
+        cache.unpin(id, false);
+        cache.pin(id);
+        cache.unpin(id, false);
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testFreeDropsCachedPage() {
+        PageCache cache = new PageCache(storage(64), 4 * 64);
+        long id = cache.allocate();
+        cache.pin(id).putInt(0, 123);
+        cache.unpin(id, true);
+        cache.free(id);
+        assertEquals(id, cache.allocate());
+        cache.pin(id);
+        assertEquals(2, cache.misses());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAllPinnedThrows() {
+        PageCache cache = new PageCache(storage(64), 4 * 64);
+        for (int i = 0; i < 5; i++) {
+            cache.pin(cache.allocate());
+        }
+    }
+
+    @Test
+    public void testPinnedPageIsNotEvicted() {
+        PageCache cache = new PageCache(storage(64), 4 * 64);
+        long pinned = cache.allocate();
+        cache.pin(pinned).putInt(0, 123);
+        for (int i = 0; i < 20; i++) {
+            long id = cache.allocate();
+            cache.pin(id);
+            cache.unpin(id, false);
+        }
+        assertEquals(123, cache.pin(pinned).getInt(0));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testPointLookupsCostAtMostOneMissOnceInternalPagesAreHot() {
+        int n = 20000;
+        PageCache cache = new PageCache(storage(512), 1024 * 512);
+        BTree<Integer, Integer> t = new BTree<Integer, Integer>(Context.<Integer, Integer> create(
+                Comparator.naturalOrder(), 16,
+                new NodeFactoryFile<>(cache, Serializers.intKey(), Serializers.intValue())));
+        for (int i = 0; i < n; i++) {
+            t.put(i, i);
+        }
+        Random random = new Random(1);
+        int lookups = 10000;
+        for (int i = 0; i < lookups; i++) {
+            t.get(random.nextInt(n));
+        }
+        long misses = cache.misses();
+        for (int i = 0; i < lookups; i++) {
+            int key = random.nextInt(n);
+            assertEquals(key, (int) t.get(key));
+        }
+        assertTrue(cache.misses() - misses <= lookups);
+    }
+
+    private static Storage storage(int pageSize) {
+        return new Storage(file(), pageSize, 1024);
+    }
+
+    private static File file() {
+        return new File("target/PageCacheTest/" + System.nanoTime());
+    }
+
+}
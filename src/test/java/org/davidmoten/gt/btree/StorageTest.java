@@ -0,0 +1,108 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class StorageTest {
+
+    @Test
+    public void testAllocateIsSequentialAfterHeader() {
+        try (Storage s = new Storage(file(), 64, 4)) {
+            assertEquals(1, s.allocate());
+            assertEquals(2, s.allocate());
+            assertEquals(3, s.allocate(5));
+            assertEquals(8, s.allocate());
+            assertEquals(9, s.numPages());
+        }
+    }
+
+    @Test
+    public void testFreedPagesAreReusedLastInFirstOut() {
+        try (Storage s = new Storage(file(), 64, 4)) {
+            long a = s.allocate();
+            long b = s.allocate();
+            s.allocate();
+            s.free(a);
+            s.free(b);
+            assertEquals(b, s.allocate());
+            assertEquals(a, s.allocate());
+            assertEquals(4, s.allocate());
+        }
+    }
+
+    @Test
+    public void testReadWriteAcrossPagesAndSegments() {
+        try (Storage s = new Storage(file(), 64, 4)) {
+            byte[] bytes = new byte[1000];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            long pageId = s.allocate(16);
+            s.write(pageId, 10, bytes);
+            byte[] read = new byte[bytes.length];
+            s.read(pageId, 10, read);
+            assertArrayEquals(bytes, read);
+            assertEquals((byte) 100, s.pin(pageId + 1).get(46));
+        }
+    }
+
+    @Test
+    public void testReopen() {
+        File file = file();
+        long pageId;
+        try (Storage s = new Storage(file, 64, 4)) {
+            pageId = s.allocate(7);
+            s.pin(pageId + 6).putLong(8, 1234L);
+            s.free(s.allocate());
+            s.setRoot(pageId);
+        }
+        try (Storage s = new Storage(file, 64, 4)) {
+            assertEquals(pageId, s.root());
+            assertEquals(1234L, s.pin(pageId + 6).getLong(8));
+            assertEquals(9, s.numPages());
+            assertEquals(8, s.allocate());
+        }
+    }
+
+    @Test
+    public void testFileOnlyAsLongAsItsPages() {
+        File file = file();
+        long pageId;
+        // default segment of 64MB
+        try (Storage s = new Storage(file)) {
+            pageId = s.allocate(10);
+            s.write(pageId, 0, new byte[] { 1, 2, 3 });
+            assertTrue(file.length() < 64 * Storage.DEFAULT_PAGE_SIZE);
+        }
+        // pages allocated but never written need not be in the file yet
+        assertTrue(file.length() <= 11 * Storage.DEFAULT_PAGE_SIZE);
+        try (Storage s = new Storage(file)) {
+            byte[] bytes = new byte[3];
+            s.read(pageId, 0, bytes);
+            assertArrayEquals(new byte[] { 1, 2, 3 }, bytes);
+            assertEquals(11 * Storage.DEFAULT_PAGE_SIZE, file.length());
+            // grows across segments as before
+            long last = s.allocate(Storage.DEFAULT_PAGES_PER_SEGMENT);
+            s.pin(last + Storage.DEFAULT_PAGES_PER_SEGMENT - 1).putLong(0, 1234L);
+        }
+        assertEquals((11 + Storage.DEFAULT_PAGES_PER_SEGMENT) * (long) Storage.DEFAULT_PAGE_SIZE, file.length());
+        file.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReopenWithDifferentPageSizeFails() {
+        File file = file();
+        new Storage(file, 64, 4).close();
+        new Storage(file, 128, 4);
+    }
+
+    private static File file() {
+        return new File("target/StorageTest/" + System.nanoTime());
+    }
+
+}
@@ -0,0 +1,195 @@
+package org.davidmoten.gt.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class WriteAheadLogTest {
+
+    @Test
+    public void testAppendCommitAndReplay() {
+        File file = file();
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            long a = log.append(bytes("a"));
+            long b = log.append(bytes("bb"));
+            assertEquals(a + 1, b);
+            assertEquals(0, log.size());
+            log.commit(a);
+            // both records were in the batch
+            assertEquals(2 * 8 + 3, log.size());
+            log.commit(b);
+            log.append(bytes(""));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.os())) {
+            assertEquals(Arrays.asList("a", "bb", ""), replay(log));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws IOException {
+        File file = file();
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            log.commit(log.append(bytes("first")));
+            log.commit(log.append(bytes("second")));
+        }
+        long length = file.length();
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            // lose the end of the last record
+            f.setLength(length - 2);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            assertEquals(Arrays.asList("first"), replay(log));
+            assertEquals(8 + 5, log.size());
+            log.commit(log.append(bytes("third")));
+        }
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            // corrupt the last byte of the last record
+            f.seek(f.length() - 1);
+            f.write('X');
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            assertEquals(Arrays.asList("first"), replay(log));
+        }
+    }
+
+    @Test
+    public void testConcurrentCommitsAreGrouped() throws InterruptedException {
+        File file = file();
+        int threads = 4;
+        int perThread = 500;
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            CountDownLatch latch = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        log.commit(log.append(bytes(id + ":" + i)));
+                    }
+                    latch.countDown();
+                }).start();
+            }
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            List<String> list = replay(log);
+            assertEquals(threads * perThread, list.size());
+            // records of each thread are in order
+            int[] next = new int[threads];
+            for (String s : list) {
+                String[] parts = s.split(":");
+                int id = Integer.parseInt(parts[0]);
+                assertEquals(next[id]++, Integer.parseInt(parts[1]));
+            }
+        }
+    }
+
+    @Test
+    public void testIntervalPolicy() {
+        File file = file();
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.interval(10, TimeUnit.MILLISECONDS))) {
+            for (int i = 0; i < 100; i++) {
+                log.commit(log.append(bytes(i + "")));
+            }
+            log.sync();
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.os())) {
+            assertEquals(100, replay(log).size());
+        }
+    }
+
+    @Test
+    public void testRewrite() {
+        File file = file();
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            for (int i = 0; i < 100; i++) {
+                log.commit(log.append(bytes(i + "")));
+            }
+            long pending = log.append(bytes("pending"));
+            log.rewrite(Arrays.asList(bytes("snapshot")).iterator());
+            // already covered by the snapshot
+            log.commit(pending);
+            log.commit(log.append(bytes("after")));
+        }
+        assertTrue(!new File(file.getPath() + ".tmp").exists());
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyWrite())) {
+            assertEquals(Arrays.asList("snapshot", "after"), replay(log));
+        }
+    }
+
+    @Test
+    public void testSyncDuringRewriteDoesNotFailLog() throws InterruptedException {
+        File file = file();
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.os())) {
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> syncers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread t = new Thread(() -> {
+                    while (!stop.get()) {
+                        log.sync();
+                    }
+                });
+                t.start();
+                syncers.add(t);
+            }
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    log.rewrite(Arrays.asList(bytes("a" + i)).iterator());
+                    // a force of a channel closed by the rewrite must not
+                    // fail later commits
+                    log.commit(log.append(bytes("b" + i)));
+                }
+            } finally {
+                stop.set(true);
+                for (Thread t : syncers) {
+                    t.join();
+                }
+            }
+            assertEquals(Arrays.asList("a1999", "b1999"), replay(log));
+        }
+    }
+
+    @Test
+    public void testReplayBinaryRecord() {
+        File file = file();
+        byte[] record = { 0, 1, 2, (byte) 255 };
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.os())) {
+            log.commit(log.append(record));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.os())) {
+            List<byte[]> list = new ArrayList<>();
+            log.replay(list::add);
+            assertEquals(1, list.size());
+            assertArrayEquals(record, list.get(0));
+        }
+    }
+
+    private static List<String> replay(WriteAheadLog log) {
+        List<String> list = new ArrayList<>();
+        log.replay(b -> list.add(new String(b, StandardCharsets.UTF_8)));
+        return list;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static File file() {
+        File directory = new File("target/WriteAheadLogTest");
+        directory.mkdirs();
+        return new File(directory, System.nanoTime() + ".log");
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.davidmoten.gt.btree.immutable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class AtomicBTreeTest {
+
+    @Test
+    public void testAddGetDelete() {
+        AtomicBTree<Integer, String> t = new AtomicBTree<Integer, String>(context());
+        assertTrue(t.isEmpty());
+        t.add(1, "one");
+        t.add(2, "two");
+        assertEquals("one", t.get(1));
+        assertEquals(2, t.size());
+        assertTrue(t.delete(1));
+        assertFalse(t.delete(1));
+        assertNull(t.get(1));
+        t.range(0, 10).test().assertValues("two").assertComplete();
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByLaterWrites() {
+        AtomicBTree<Integer, String> t = new AtomicBTree<Integer, String>(context());
+        for (int i = 0; i < 100; i++) {
+            t.add(i, i + "");
+        }
+        BTree<Integer, String> snapshot = t.snapshot();
+        for (int i = 100; i < 200; i++) {
+            t.add(i, i + "");
+        }
+        t.delete(0);
+        assertEquals(100, snapshot.size());
+        assertEquals("0", snapshot.get(0));
+        snapshot.range(0, 1000).test().assertValueCount(100).assertComplete();
+        t.range(0, 1000).test().assertValueCount(199).assertComplete();
+    }
+
+    @Test(timeout = 60000)
+    public void testReadersSeeConsistentSnapshotsWhileWriting() throws Exception {
+        AtomicBTree<Integer, Integer> t = new AtomicBTree<Integer, Integer>(context());
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        // keys are added in order so a snapshot of size n
+                        // holds exactly the keys 0..n-1
+                        BTree<Integer, Integer> snapshot = t.snapshot();
+                        int n = snapshot.size();
+                        List<Integer> list = snapshot.range(0, Integer.MAX_VALUE).toList().blockingGet();
+                        assertEquals(n, list.size());
+                        for (int i = 0; i < n; i++) {
+                            assertEquals(i, (int) list.get(i));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 20000; i++) {
+                t.add(i, i);
+            }
+            done.set(true);
+            for (Future<?> f : readers) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(20000, t.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentWritersLoseNoUpdates() throws Exception {
+        AtomicBTree<Integer, Integer> t = new AtomicBTree<Integer, Integer>(context());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        int key = i * 4 + writer;
+                        t.add(key, key);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : writers) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(20000, t.size());
+        t.range(0, 20000).test().assertValueCount(20000).assertComplete();
+    }
+
+    private static Context<Integer> context() {
+        return new Context<Integer>(Comparator.naturalOrder(), 16);
+    }
+
+}
@@ -0,0 +1,257 @@
+package org.davidmoten.gt.btree.immutable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+public class BTreeTest {
+
+    @Test
+    public void testGetAndRange() {
+        BTree<Integer, String> t = createTree();
+        assertEquals(10, t.size());
+        assertEquals("three", t.get(3));
+        assertNull(t.get(0));
+        assertNull(t.get(11));
+        t.range(5, 8) //
+                .test() //
+                .assertValues("five", "six", "seven") //
+                .assertComplete();
+        t.range(0, 2) //
+                .test() //
+                .assertValue("one") //
+                .assertComplete();
+        t.range(20, 30) //
+                .test() //
+                .assertNoValues() //
+                .assertComplete();
+        t.rangeEntries(9, 100) //
+                .map(Entry::key) //
+                .test() //
+                .assertValues(9, 10) //
+                .assertComplete();
+    }
+
+    @Test
+    public void testEmpty() {
+        BTree<Integer, String> t = new BTree<Integer, String>(context(4));
+        assertTrue(t.isEmpty());
+        assertNull(t.get(1));
+        assertSame(t, t.delete(1));
+        t.range(0, 10).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void testRandomOrderVariousFanouts() {
+        int n = 10000;
+        List<Integer> keys = shuffledKeys(n, 1);
+        for (int maxChildren : new int[] { 4, 5, 16, 256 }) {
+            BTree<Integer, String> t = new BTree<Integer, String>(context(maxChildren));
+            for (int key : keys) {
+                t = t.add(key, key + "");
+            }
+            assertEquals(n, t.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i + "", t.get(i));
+            }
+            assertNull(t.get(-1));
+            assertNull(t.get(n));
+            t.range(0, n).test().assertValueCount(n).assertComplete();
+        }
+    }
+
+    @Test
+    public void testHighFanoutReducesHeight() {
+        BTree<Integer, String> t = new BTree<Integer, String>(context(256));
+        for (int i = 0; i < 100000; i++) {
+            t = t.add(i, "");
+        }
+        assertEquals(2, t.height());
+    }
+
+    @Test
+    public void testDuplicateKeysStraddlingLeaves() {
+        BTree<Integer, String> t = createTree();
+        for (int i = 0; i < 20; i++) {
+            t = t.add(5, "five" + i);
+        }
+        assertEquals("five", t.get(5));
+        t.range(5, 6) //
+                .test() //
+                .assertValueCount(21) //
+                .assertValueAt(0, "five") //
+                .assertValueAt(20, "five19") //
+                .assertComplete();
+        t.range(4, 7) //
+                .test() //
+                .assertValueCount(23) //
+                .assertValueAt(0, "four") //
+                .assertValueAt(22, "six") //
+                .assertComplete();
+        // deletes remove the first entry with the key
+        for (int i = 0; i < 20; i++) {
+            t = t.delete(5);
+        }
+        assertEquals("five19", t.get(5));
+        t.range(4, 7) //
+                .test() //
+                .assertValues("four", "five19", "six") //
+                .assertComplete();
+    }
+
+    @Test
+    public void testOldVersionsAreUnchanged() {
+        BTree<Integer, String> t = createTree();
+        BTree<Integer, String> t2 = t.add(11, "eleven").delete(3);
+        assertEquals(10, t.size());
+        assertEquals("three", t.get(3));
+        assertNull(t.get(11));
+        t.range(0, 100).test().assertValueCount(10).assertComplete();
+        assertEquals(10, t2.size());
+        assertNull(t2.get(3));
+        assertEquals("eleven", t2.get(11));
+    }
+
+    @Test
+    public void testDeleteEverythingInRandomOrderVariousFanouts() {
+        int n = 5000;
+        for (int maxChildren : new int[] { 4, 5, 16 }) {
+            BTree<Integer, String> t = new BTree<Integer, String>(context(maxChildren));
+            for (int key : shuffledKeys(n, 1)) {
+                t = t.add(key, key + "");
+            }
+            List<Integer> deletes = shuffledKeys(n, 2);
+            for (int i = 0; i < n; i++) {
+                int key = deletes.get(i);
+                assertSame(t, t.delete(-1));
+                t = t.delete(key);
+                assertNull(t.get(key));
+                assertEquals(n - i - 1, t.size());
+                if (i % 500 == 0) {
+                    checkStructure(t, maxChildren);
+                    t.range(0, n).test().assertValueCount(n - i - 1).assertComplete();
+                }
+            }
+            assertTrue(t.isEmpty());
+            assertEquals(0, t.height());
+        }
+    }
+
+    @Test
+    public void testRandomAddsAndDeletesMatchSortedList() {
+        Random random = new Random(3);
+        BTree<Integer, Integer> t = new BTree<Integer, Integer>(context(5));
+        // expected entries in key order, duplicates in insertion order
+        List<int[]> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                t = t.delete(key);
+                for (int j = 0; j < expected.size(); j++) {
+                    if (expected.get(j)[0] == key) {
+                        expected.remove(j);
+                        break;
+                    }
+                }
+            } else {
+                t = t.add(key, i);
+                int j = 0;
+                while (j < expected.size() && expected.get(j)[0] <= key) {
+                    j++;
+                }
+                expected.add(j, new int[] { key, i });
+            }
+        }
+        checkStructure(t, 5);
+        assertEquals(expected.size(), t.size());
+        List<Entry<Integer, Integer>> list = t.rangeEntries(0, 500).toList().blockingGet();
+        assertEquals(expected.size(), list.size());
+        for (int j = 0; j < list.size(); j++) {
+            assertEquals(expected.get(j)[0], (int) list.get(j).key());
+            assertEquals(expected.get(j)[1], (int) list.get(j).value());
+        }
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        BTree<Integer, String> t = createTree();
+        TestSubscriber<String> ts = t.range(2, 9).test(0);
+        ts.assertNoValues();
+        ts.requestMore(2);
+        ts.assertValues("two", "three").assertNotComplete();
+        ts.requestMore(10);
+        ts.assertValues("two", "three", "four", "five", "six", "seven", "eight").assertComplete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxChildrenTooSmall() {
+        context(3);
+    }
+
+    /**
+     * Checks that all leaves are at the same depth, that nodes other than the
+     * root hold between minChildren and maxChildren entries and that each
+     * non-leaf key is the first key of its child.
+     */
+    private static void checkStructure(BTree<Integer, ?> t, int maxChildren) {
+        if (t.isEmpty()) {
+            return;
+        }
+        checkStructure(t.root(), t.height(), maxChildren, true);
+    }
+
+    private static <T> void checkStructure(Node<Integer, T> node, int height, int maxChildren, boolean isRoot) {
+        assertTrue(node.count() <= maxChildren);
+        if (!isRoot) {
+            assertTrue(node.count() >= maxChildren / 2);
+        }
+        if (height == 0) {
+            assertTrue(node instanceof Leaf);
+        } else {
+            NonLeaf<Integer, T> t = (NonLeaf<Integer, T>) node;
+            for (int i = 0; i < t.count(); i++) {
+                assertEquals(t.child(i).firstKey(), t.key(i));
+                checkStructure(t.child(i), height - 1, maxChildren, false);
+            }
+        }
+    }
+
+    private static Context<Integer> context(int maxChildren) {
+        return new Context<Integer>(Comparator.naturalOrder(), maxChildren);
+    }
+
+    private static List<Integer> shuffledKeys(int n, long seed) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(seed));
+        return keys;
+    }
+
+    private static BTree<Integer, String> createTree() {
+        return new BTree<Integer, String>(context(4)) //
+                .add(1, "one") //
+                .add(2, "two") //
+                .add(3, "three") //
+                .add(4, "four") //
+                .add(5, "five") //
+                .add(6, "six") //
+                .add(7, "seven") //
+                .add(8, "eight") //
+                .add(9, "nine") //
+                .add(10, "ten");
+    }
+
+}
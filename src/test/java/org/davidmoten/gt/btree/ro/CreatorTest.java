@@ -0,0 +1,109 @@
+package org.davidmoten.gt.btree.ro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.davidmoten.gt.btree.Storage;
+import org.junit.Test;
+
+import io.reactivex.Flowable;
+
+public class CreatorTest {
+
+    @Test
+    public void testPersistWritesSingleStorageFile() {
+        File directory = new File("target/CreatorTest/" + System.nanoTime());
+        directory.mkdirs();
+        Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256,
+                0, x -> x, directory, "tree");
+        List<Long> indexPages = creator.persist(Flowable.rangeLong(0, 10000));
+        assertTrue(indexPages.size() > 1);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void testPersistIsDeterministic() throws IOException {
+        File directory = new File("target/CreatorTest/" + System.nanoTime());
+        directory.mkdirs();
+        Creator<Long, Long> a = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0,
+                x -> x, directory, "a");
+        Creator<Long, Long> b = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0,
+                x -> x, directory, "b");
+        assertEquals(a.persist(Flowable.rangeLong(0, 100000)), b.persist(Flowable.rangeLong(0, 100000)));
+        assertArrayEquals(Files.readAllBytes(new File(directory, "a").toPath()),
+                Files.readAllBytes(new File(directory, "b").toPath()));
+    }
+
+    @Test
+    public void testEntriesAreGroupedIntoPagesInOrder() {
+        File file = new File("target/CreatorTest/" + System.nanoTime());
+        try (Storage storage = new Storage(file, 128, 1024)) {
+            // keys 0..9 with entries of 100 bytes except key 5 which is larger
+            // than a page, a full index block of 4 children takes 400 bytes
+            Creator<byte[], Long> creator = new Creator<byte[], Long>(Serializers.longKey(), Serializers.bytes(),
+                    400, 0, bytes -> ByteBuffer.wrap(bytes).getLong(), storage);
+            List<Long> indexPages = creator.persist(Flowable.range(0, 10) //
+                    .map(i -> {
+                        byte[] bytes = new byte[i == 5 ? 400 : 100];
+                        ByteBuffer.wrap(bytes).putLong(i);
+                        return bytes;
+                    }));
+            assertEquals(1, indexPages.size());
+            // 3 header records (4 children each) then 10 key records of 20
+            // bytes
+            long pageId = indexPages.get(0);
+            ByteBuffer index = read(storage, pageId, 13 * 20);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(4 * j, index.getLong(20 * j));
+                assertEquals(pageId, index.getLong(20 * j + 8));
+                assertEquals(20 * (3 + 4 * j), index.getInt(20 * j + 16));
+            }
+            long previousPage = -1;
+            int pages = 0;
+            for (int i = 0; i < 10; i++) {
+                int record = 20 * (i + 3);
+                assertEquals(i, index.getLong(record));
+                long entryPage = index.getLong(record + 8);
+                int position = index.getInt(record + 16);
+                if (entryPage != previousPage) {
+                    pages++;
+                    previousPage = entryPage;
+                    assertEquals(Creator.PAGE_HEADER_SIZE, position);
+                }
+                assertEquals(i, read(storage, entryPage, position + 8).getLong(position));
+            }
+            // pages hold keys [0,1,2], [3,4], [5], [6,7,8], [9]
+            assertEquals(5, pages);
+        }
+    }
+
+    @Test
+    public void testPagesAndIndexBlocksFitInOneStoragePage() {
+        File file = new File("target/CreatorTest/" + System.nanoTime());
+        try (Storage storage = new Storage(file)) {
+            int pageSize = storage.pageSize();
+            Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                    pageSize, 0, x -> x, storage).bloomFilter(10);
+            // 200 pages of entries filled to the page size less the header
+            int entriesPerPage = (pageSize - Creator.PAGE_HEADER_SIZE) / 8;
+            List<Long> indexPages = creator.persist(Flowable.rangeLong(0, 200 * entriesPerPage));
+            // the header page, then one storage page for each entry page and
+            // index block, then the manifest
+            assertEquals(1 + 200 + indexPages.size(), storage.root());
+        }
+    }
+
+    private static ByteBuffer read(Storage storage, long pageId, int length) {
+        byte[] bytes = new byte[length];
+        storage.read(pageId, 0, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+}
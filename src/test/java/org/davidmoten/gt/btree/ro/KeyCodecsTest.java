@@ -0,0 +1,148 @@
+package org.davidmoten.gt.btree.ro;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.reactivex.Flowable;
+
+public class KeyCodecsTest {
+
+    @Test
+    public void testLongOrderAndRoundTrip() {
+        Random r = new Random(1);
+        List<Long> list = new ArrayList<>();
+        list.add(Long.MIN_VALUE);
+        list.add(Long.MAX_VALUE);
+        list.add(-1L);
+        list.add(0L);
+        list.add(1L);
+        for (int i = 0; i < 1000; i++) {
+            list.add(r.nextLong());
+        }
+        checkOrderAndRoundTrip(KeyCodecs.longKey(), list, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void testIntOrderAndRoundTrip() {
+        Random r = new Random(1);
+        List<Integer> list = new ArrayList<>();
+        list.add(Integer.MIN_VALUE);
+        list.add(Integer.MAX_VALUE);
+        list.add(-1);
+        list.add(0);
+        for (int i = 0; i < 1000; i++) {
+            list.add(r.nextInt());
+        }
+        checkOrderAndRoundTrip(KeyCodecs.intKey(), list, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void testDoubleOrderAndRoundTrip() {
+        Random r = new Random(1);
+        List<Double> list = new ArrayList<>();
+        list.add(Double.NEGATIVE_INFINITY);
+        list.add(Double.POSITIVE_INFINITY);
+        list.add(-Double.MAX_VALUE);
+        list.add(Double.MIN_VALUE);
+        list.add(-0.0);
+        list.add(0.0);
+        list.add(Double.NaN);
+        for (int i = 0; i < 1000; i++) {
+            list.add((r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(40) - 20));
+        }
+        checkOrderAndRoundTrip(KeyCodecs.doubleKey(), list, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void testUtf8OrderAndRoundTrip() {
+        List<String> list = new ArrayList<>();
+        list.add("");
+        list.add("a");
+        list.add("ab");
+        list.add("abc");
+        list.add("b");
+        list.add("Z");
+        list.add("\u00e9t\u00e9");
+        list.add("\u4e2d\u6587");
+        checkOrderAndRoundTrip(KeyCodecs.utf8(8), list, Comparator.naturalOrder());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf8TooLong() {
+        KeyCodecs.utf8(2).serialize("abc");
+    }
+
+    @Test
+    public void testPairOrderAndRoundTrip() {
+        Random r = new Random(1);
+        List<TimeCell> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(new TimeCell(r.nextInt(10) - 5, r.nextInt(10) - 5));
+        }
+        checkOrderAndRoundTrip(timeCell(), list, TimeCell.COMPARATOR);
+    }
+
+    @Test
+    public void testReadOnlyBTreeComparesEncodedKeys() {
+        File directory = new File("target/KeyCodecsTest/" + System.nanoTime());
+        directory.mkdirs();
+        // includes negative keys which would be out of order if compared as
+        // plain two's complement bytes
+        new Creator<Long, Long>(KeyCodecs.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.rangeLong(0, 10000).map(x -> x - 5000));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(KeyCodecs.longKey(),
+                Serializers.longValue(), directory, "tree")) {
+            for (long i = -5000; i < 5000; i++) {
+                assertEquals(i, (long) t.get(i));
+            }
+            t.range(-2L, 2L) //
+                    .test() //
+                    .assertValues(-2L, -1L, 0L, 1L) //
+                    .assertComplete();
+        }
+    }
+
+    private static <T> void checkOrderAndRoundTrip(KeyCodec<T> codec, List<T> list, Comparator<T> comparator) {
+        for (T a : list) {
+            byte[] x = codec.serialize(a);
+            assertEquals(codec.size(), x.length);
+            assertEquals(0, comparator.compare(a, codec.deserialize(x)));
+            for (T b : list.subList(0, Math.min(list.size(), 50))) {
+                byte[] y = codec.serialize(b);
+                assertEquals(a + " vs " + b, Integer.signum(comparator.compare(a, b)),
+                        Integer.signum(KeyCodecs.compare(x, 0, y, 0, codec.size())));
+            }
+        }
+    }
+
+    private static KeyCodec<TimeCell> timeCell() {
+        return KeyCodecs.pair(KeyCodecs.longKey(), KeyCodecs.intKey(), t -> t.time, t -> t.cell, TimeCell::new);
+    }
+
+    private static final class TimeCell {
+
+        static final Comparator<TimeCell> COMPARATOR = Comparator.<TimeCell> comparingLong(t -> t.time)
+                .thenComparingInt(t -> t.cell);
+
+        final long time;
+        final int cell;
+
+        TimeCell(long time, int cell) {
+            this.time = time;
+            this.cell = cell;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + time + ", " + cell + ")";
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+package org.davidmoten.gt.btree.ro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.davidmoten.gt.btree.Storage;
+import org.davidmoten.gt.btree.SyncPolicy;
+import org.junit.Test;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+
+public class LsmIndexTest {
+
+    @Test
+    public void testFlushWhenMemtableFull() {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 0; i < 25; i++) {
+                index.add(i + ":a");
+            }
+            // two full memtables written to runs, 5 entries in the memtable
+            assertEquals(Arrays.asList(1L, 1L), index.runSpans());
+            assertTrue(new File(directory, "index.0-0").exists());
+            assertTrue(new File(directory, "index.1-1").exists());
+            // a run file is only as long as its pages
+            assertTrue(new File(directory, "index.0-0").length() <= 16 * Storage.DEFAULT_PAGE_SIZE);
+            assertFalse(new File(directory, "index.0.log").exists());
+            assertTrue(new File(directory, "index.2.log").exists());
+            assertEquals(25, index.size());
+            assertEquals("3:a", index.get(3));
+            assertEquals("22:a", index.get(22));
+            assertNull(index.get(25));
+            index.range(8, 12) //
+                    .test() //
+                    .assertValues("8:a", "9:a", "10:a", "11:a") //
+                    .assertComplete();
+            index.range(0, 100).test().assertValueCount(25).assertComplete();
+            index.range(12, 12).test().assertNoValues().assertComplete();
+        }
+    }
+
+    @Test
+    public void testDuplicateKeysInOrderAddedAcrossRunsAndMemtable() {
+        try (LsmIndex<String, Integer> index = createIndex(directory())) {
+            for (String tag : new String[] { "a", "b", "c" }) {
+                for (int i = 0; i < 10; i++) {
+                    index.add(i + ":" + tag);
+                }
+            }
+            index.add("4:d");
+            assertEquals(Arrays.asList(1L, 1L, 1L), index.runSpans());
+            assertEquals("4:a", index.get(4));
+            index.range(4, 6) //
+                    .test() //
+                    .assertValues("4:a", "4:b", "4:c", "4:d", "5:a", "5:b", "5:c") //
+                    .assertComplete();
+        }
+    }
+
+    @Test
+    public void testCompactionMergesTiers() {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 0; i < 40; i++) {
+                index.add(i + ":a");
+            }
+            // the 4 runs of tier 0 were merged into a run of tier 1
+            assertEquals(Arrays.asList(4L), index.runSpans());
+            assertTrue(new File(directory, "index.0-3").exists());
+            assertFalse(new File(directory, "index.0-0").exists());
+            assertFalse(new File(directory, "index.3-3").exists());
+            for (int i = 40; i < 180; i++) {
+                index.add(i + ":a");
+            }
+            // 18 memtables flushed in all, 16 merged to one run of tier 2 then 2
+            // more runs of tier 0
+            assertEquals(Arrays.asList(16L, 1L, 1L), index.runSpans());
+            assertEquals(180, index.size());
+            checkRange(index, 180);
+            index.compact();
+            assertEquals(Arrays.asList(18L), index.runSpans());
+            assertTrue(new File(directory, "index.0-17").exists());
+            assertEquals(180, index.size());
+            checkRange(index, 180);
+        }
+    }
+
+    @Test
+    public void testRunsStayOpenWhileReadDuringCompaction() {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 0; i < 30; i++) {
+                index.add(i + ":a");
+            }
+            TestSubscriber<String> ts = index.range(0, 100).test(1);
+            ts.assertValues("0:a");
+            // the 4th run triggers a compaction that replaces the runs read
+            for (int i = 30; i < 40; i++) {
+                index.add(i + ":a");
+            }
+            assertEquals(Arrays.asList(4L), index.runSpans());
+            assertTrue(new File(directory, "index.0-0").exists());
+            ts.requestMore(Long.MAX_VALUE);
+            ts.assertValueCount(30).assertComplete();
+            assertFalse(new File(directory, "index.0-0").exists());
+        }
+    }
+
+    @Test
+    public void testFlush() {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            index.add("1:a");
+            index.flush();
+            assertEquals(Arrays.asList(1L), index.runSpans());
+            assertFalse(new File(directory, "index.0.log").exists());
+            // nothing to flush
+            index.flush();
+            assertEquals(Arrays.asList(1L), index.runSpans());
+            assertEquals("1:a", index.get(1));
+        }
+    }
+
+    @Test
+    public void testReopenReplaysLogs() {
+        File directory = directory();
+        LsmIndex<String, Integer> index = createIndex(directory);
+        for (int i = 0; i < 25; i++) {
+            index.add(i + ":a");
+        }
+        // not closed so as if the process had failed
+        try (LsmIndex<String, Integer> index2 = createIndex(directory)) {
+            // the memtable with 5 entries was replayed and written to a run
+            assertEquals(Arrays.asList(1L, 1L, 1L), index2.runSpans());
+            assertEquals(25, index2.size());
+            assertEquals("24:a", index2.get(24));
+            checkRange(index2, 25);
+            index2.add("25:a");
+            assertTrue(new File(directory, "index.3.log").exists());
+        }
+        index.close();
+    }
+
+    @Test
+    public void testReopenAfterClose() {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 0; i < 15; i++) {
+                index.add(i + ":a");
+            }
+        }
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            assertEquals(15, index.size());
+            checkRange(index, 15);
+        }
+    }
+
+    @Test
+    public void testReopenDeletesLeftoverFiles() throws IOException {
+        File directory = directory();
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 0; i < 40; i++) {
+                index.add(i + ":a");
+            }
+        }
+        // as if a compaction wrote its run but failed before deleting its
+        // inputs and a flush failed while writing its run
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            for (int i = 40; i < 50; i++) {
+                index.add(i + ":a");
+            }
+        }
+        assertTrue(new File(directory, "index.5-5").exists());
+        assertTrue(new File(directory, "index.5-5").renameTo(new File(directory, "index.2-2")));
+        assertTrue(new File(directory, "index.6-6.tmp").createNewFile());
+        try (LsmIndex<String, Integer> index = createIndex(directory)) {
+            assertFalse(new File(directory, "index.2-2").exists());
+            assertFalse(new File(directory, "index.6-6.tmp").exists());
+            assertEquals(Arrays.asList(4L), index.runSpans());
+            assertEquals(40, index.size());
+        }
+    }
+
+    @Test
+    public void testMatchesSortedListAfterRandomAdds() {
+        Random r = new Random(123);
+        List<String> list = new ArrayList<>();
+        try (LsmIndex<String, Integer> index = createIndex(directory())) {
+            for (int i = 0; i < 500; i++) {
+                String entry = r.nextInt(100) + ":" + i;
+                index.add(entry);
+                list.add(entry);
+            }
+            // stable sort keeps equal keys in the order added
+            Collections.sort(list, Comparator.comparing(LsmIndexTest::key));
+            assertEquals(list, index.range(0, 100).toList().blockingGet());
+            assertEquals(500, index.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentAddsFlushedInSequenceOrder() throws Exception {
+        File directory = directory();
+        int threads = 8;
+        int n = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (LsmIndex<String, Integer> index = createIndex(directory, 3, Schedulers.io())) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < n; i++) {
+                        // few keys so each key has many duplicates
+                        index.add(i % 20 + ":" + thread + ":" + i);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            index.flush();
+            for (long span : index.runSpans()) {
+                assertTrue(span > 0);
+            }
+            checkConcurrentAdds(index, threads, n);
+        } finally {
+            executor.shutdown();
+        }
+        try (LsmIndex<String, Integer> index = createIndex(directory, 3, Schedulers.io())) {
+            checkConcurrentAdds(index, threads, n);
+        }
+    }
+
+    private static void checkConcurrentAdds(LsmIndex<String, Integer> index, int threads, int n) {
+        assertEquals(threads * n, index.size());
+        for (int k = 0; k < 20; k++) {
+            List<String> list = index.range(k, k + 1).toList().blockingGet();
+            assertEquals(threads * n / 20, list.size());
+            assertEquals(list.get(0), index.get(k));
+            // the duplicates added by each thread are in the order added
+            int[] last = new int[threads];
+            Arrays.fill(last, -1);
+            for (String entry : list) {
+                String[] parts = entry.split(":");
+                int thread = Integer.parseInt(parts[1]);
+                int i = Integer.parseInt(parts[2]);
+                assertTrue(entry, i > last[thread]);
+                last[thread] = i;
+            }
+        }
+    }
+
+    private static void checkRange(LsmIndex<String, Integer> index, int n) {
+        List<String> list = index.range(0, n).toList().blockingGet();
+        assertEquals(n, list.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i + ":a", list.get(i));
+        }
+    }
+
+    private static Integer key(String entry) {
+        return Integer.parseInt(entry.substring(0, entry.indexOf(':')));
+    }
+
+    private static LsmIndex<String, Integer> createIndex(File directory) {
+        return createIndex(directory, 10, Schedulers.trampoline());
+    }
+
+    private static LsmIndex<String, Integer> createIndex(File directory, int memtableMaxEntries,
+            Scheduler scheduler) {
+        return new LsmIndex<String, Integer>(Serializers.intKey(), Serializers.utf8(), Comparator.naturalOrder(),
+                LsmIndexTest::key, memtableMaxEntries, 256, SyncPolicy.os(), scheduler, directory, "index");
+    }
+
+    private static File directory() {
+        File directory = new File("target/LsmIndexTest/" + System.nanoTime());
+        directory.mkdirs();
+        return directory;
+    }
+
+}
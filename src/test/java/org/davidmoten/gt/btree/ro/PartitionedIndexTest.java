@@ -0,0 +1,123 @@
+package org.davidmoten.gt.btree.ro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+public class PartitionedIndexTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testAddGetAndRangeAcrossPartitions() {
+        try (PartitionedIndex<Long, Long> index = createIndex(directory())) {
+            // every minute for 10 hours, added out of order
+            for (long t = 599 * 60000; t >= 0; t -= 60000) {
+                index.add(t);
+            }
+            assertEquals(600, index.size());
+            assertEquals(10, index.partitionStarts().size());
+            assertEquals(120000L, (long) index.get(120000L));
+            assertNull(index.get(120001L));
+            index.range(HOUR - 120000, HOUR + 120000) //
+                    .test() //
+                    .assertValues(HOUR - 120000, HOUR - 60000, HOUR, HOUR + 60000) //
+                    .assertComplete();
+            index.range(0L, 10 * HOUR).test().assertValueCount(600).assertComplete();
+            index.range(5 * HOUR, 5 * HOUR).test().assertNoValues().assertComplete();
+            index.range(6 * HOUR, 5 * HOUR).test().assertNoValues().assertComplete();
+        }
+    }
+
+    @Test
+    public void testSealAndReopen() {
+        File directory = directory();
+        try (PartitionedIndex<Long, Long> index = createIndex(directory)) {
+            for (long t = 0; t < 10 * HOUR; t += 60000) {
+                index.add(t);
+            }
+            // the partition ending at 3 hours is sealed, the next is not
+            assertEquals(3, index.sealBefore(3 * HOUR + 1));
+            assertTrue(index.isSealed(2 * HOUR));
+            assertFalse(index.isSealed(3 * HOUR));
+            assertEquals(0, index.sealBefore(3 * HOUR + 1));
+            assertEquals(600, index.size());
+            assertEquals(HOUR, (long) index.get(HOUR));
+            List<Long> list = index.range(0L, 10 * HOUR).toList().blockingGet();
+            assertEquals(600, list.size());
+            for (int i = 0; i < 600; i++) {
+                assertEquals(i * 60000L, (long) list.get(i));
+            }
+            try {
+                index.add(HOUR);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertTrue(new File(directory, "index.0").exists());
+        assertFalse(new File(directory, "index.0.tmp").exists());
+        try (PartitionedIndex<Long, Long> index = createIndex(directory)) {
+            assertEquals(Arrays.asList(0L, HOUR, 2 * HOUR), index.partitionStarts());
+            assertEquals(180, index.size());
+            index.range(HOUR, 2 * HOUR).test().assertValueCount(60).assertComplete();
+        }
+    }
+
+    @Test
+    public void testDropDeletesFiles() {
+        File directory = directory();
+        try (PartitionedIndex<Long, Long> index = createIndex(directory)) {
+            for (long t = 0; t < 4 * HOUR; t += 60000) {
+                index.add(t);
+            }
+            index.sealBefore(2 * HOUR);
+            assertEquals(3, index.dropBefore(3 * HOUR));
+            assertEquals(Arrays.asList(3 * HOUR), index.partitionStarts());
+            assertFalse(new File(directory, "index.0").exists());
+            assertFalse(new File(directory, "index." + HOUR).exists());
+            assertNull(index.get(0L));
+            index.range(0L, 4 * HOUR).test().assertValueCount(60).assertComplete();
+        }
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        try (PartitionedIndex<Long, Long> index = createIndex(directory())) {
+            for (long t = 0; t < 3 * HOUR; t += 60000) {
+                index.add(t);
+            }
+            index.sealBefore(HOUR);
+            TestSubscriber<Long> ts = index.range(HOUR - 60000, 2 * HOUR).test(0);
+            ts.assertNoValues();
+            ts.requestMore(2);
+            ts.assertValues(HOUR - 60000, HOUR).assertNotComplete();
+            ts.requestMore(Long.MAX_VALUE);
+            ts.assertValueCount(61).assertComplete();
+        }
+    }
+
+    private static PartitionedIndex<Long, Long> createIndex(File directory) {
+        return new PartitionedIndex<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                Comparator.naturalOrder(), x -> x, x -> x, HOUR, 256, directory, "index");
+    }
+
+    private static File directory() {
+        File directory = new File("target/PartitionedIndexTest/" + System.nanoTime());
+        directory.mkdirs();
+        return directory;
+    }
+
+}
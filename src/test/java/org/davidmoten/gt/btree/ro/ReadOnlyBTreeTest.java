@@ -0,0 +1,350 @@
+package org.davidmoten.gt.btree.ro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.davidmoten.gt.btree.Range;
+import org.davidmoten.gt.btree.Storage;
+import org.junit.Test;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+
+public class ReadOnlyBTreeTest {
+
+    @Test
+    public void testGetAndRange() {
+        for (int maxPageSizeBytes : new int[] { 64, 256, 4096 }) {
+            File directory = directory();
+            new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), maxPageSizeBytes, 0, x -> x,
+                    directory, "tree").persist(Flowable.rangeLong(0, 10000).map(x -> x * 2));
+            try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                    Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+                assertEquals(10000, t.size());
+                for (long i = 0; i < 10000; i++) {
+                    assertEquals(i * 2, (long) t.get(i * 2));
+                    assertNull(t.get(i * 2 + 1));
+                }
+                assertNull(t.get(-1L));
+                t.range(11L, 19L) //
+                        .test() //
+                        .assertValues(12L, 14L, 16L, 18L) //
+                        .assertComplete();
+                t.range(-100L, 100000L).test().assertValueCount(10000).assertComplete();
+                t.range(19998L, 100000L).test().assertValue(19998L).assertComplete();
+                t.range(20000L, 100000L).test().assertNoValues().assertComplete();
+            }
+        }
+    }
+
+    @Test
+    public void testVariableLengthEntriesAndDuplicates() {
+        File file = new File(directory(), "tree");
+        try (Storage storage = new Storage(file, 128, 1024)) {
+            // entry is key (int) then a string whose length depends on the key
+            Creator<byte[], Integer> creator = new Creator<byte[], Integer>(Serializers.intKey(),
+                    Serializers.bytes(), 100, 0, bytes -> ByteBuffer.wrap(bytes).getInt(), storage);
+            creator.persist(Flowable.range(0, 3000).map(i -> entry(i / 3, i)));
+            ReadOnlyBTree<byte[], Integer> t = new ReadOnlyBTree<byte[], Integer>(Serializers.intKey(),
+                    Serializers.bytes(), Comparator.naturalOrder(), storage);
+            for (int i = 0; i < 1000; i++) {
+                assertArrayEquals(entry(i, i * 3), t.get(i));
+            }
+            TestSubscriber<byte[]> ts = t.range(500, 502).test();
+            ts.assertValueCount(6).assertComplete();
+            for (int j = 0; j < 6; j++) {
+                assertArrayEquals(entry(500 + j / 3, 1500 + j), ts.values().get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testRangeBackpressure() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.rangeLong(0, 1000));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            TestSubscriber<Long> ts = t.range(0L, 1000L).test(0);
+            ts.assertNoValues();
+            ts.requestMore(2);
+            ts.assertValues(0L, 1L).assertNotComplete();
+            ts.requestMore(Long.MAX_VALUE);
+            ts.assertValueCount(1000).assertComplete();
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.<Long> empty());
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            assertTrue(t.isEmpty());
+            assertNull(t.get(1L));
+            t.range(0L, 10L).test().assertNoValues().assertComplete();
+        }
+    }
+
+    @Test
+    public void testCompressedGetAndRange() {
+        for (int maxPageSizeBytes : new int[] { 64, 256, 4096 }) {
+            File directory = directory();
+            new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), maxPageSizeBytes, 0, x -> x,
+                    directory, "tree").compressed().persist(Flowable.rangeLong(0, 10000).map(x -> x * 2));
+            try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                    Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+                assertEquals(10000, t.size());
+                for (long i = 0; i < 10000; i++) {
+                    assertEquals(i * 2, (long) t.get(i * 2));
+                    assertNull(t.get(i * 2 + 1));
+                }
+                assertNull(t.get(-1L));
+                t.range(11L, 19L) //
+                        .test() //
+                        .assertValues(12L, 14L, 16L, 18L) //
+                        .assertComplete();
+                t.range(-100L, 100000L).test().assertValueCount(10000).assertComplete();
+                t.range(19998L, 100000L).test().assertValue(19998L).assertComplete();
+                t.range(20000L, 100000L).test().assertNoValues().assertComplete();
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedVariableLengthEntriesAndDuplicates() {
+        File file = new File(directory(), "tree");
+        try (Storage storage = new Storage(file, 128, 1024)) {
+            Creator<byte[], Integer> creator = new Creator<byte[], Integer>(Serializers.intKey(),
+                    Serializers.bytes(), 100, 0, bytes -> ByteBuffer.wrap(bytes).getInt(), storage).compressed();
+            creator.persist(Flowable.range(0, 3000).map(i -> entry(i / 3, i)));
+            ReadOnlyBTree<byte[], Integer> t = new ReadOnlyBTree<byte[], Integer>(Serializers.intKey(),
+                    Serializers.bytes(), Comparator.naturalOrder(), storage);
+            for (int i = 0; i < 1000; i++) {
+                assertArrayEquals(entry(i, i * 3), t.get(i));
+            }
+            TestSubscriber<byte[]> ts = t.range(500, 502).test();
+            ts.assertValueCount(6).assertComplete();
+            for (int j = 0; j < 6; j++) {
+                assertArrayEquals(entry(500 + j / 3, 1500 + j), ts.values().get(j));
+            }
+            t.range(0, 1000).test().assertValueCount(3000).assertComplete();
+        }
+    }
+
+    @Test
+    public void testCompressedRangeBackpressure() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .compressed().persist(Flowable.rangeLong(0, 1000));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            TestSubscriber<Long> ts = t.range(0L, 1000L).test(0);
+            ts.assertNoValues();
+            ts.requestMore(2);
+            ts.assertValues(0L, 1L).assertNotComplete();
+            ts.requestMore(Long.MAX_VALUE);
+            ts.assertValueCount(1000).assertComplete();
+        }
+    }
+
+    @Test
+    public void testCompressedEmpty() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .compressed().persist(Flowable.<Long> empty());
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            assertTrue(t.isEmpty());
+            assertNull(t.get(1L));
+            t.range(0L, 10L).test().assertNoValues().assertComplete();
+        }
+    }
+
+    @Test
+    public void testCompressedUsesFewerPagesForMonotonicKeys() {
+        File directory = directory();
+        long plainPages;
+        try (Storage storage = new Storage(new File(directory, "plain"), 4096, 1024)) {
+            new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 4096, 0, x -> x, storage)
+                    .persist(Flowable.rangeLong(1500000000000L, 100000));
+            plainPages = storage.numPages();
+        }
+        try (Storage storage = new Storage(new File(directory, "compressed"), 4096, 1024)) {
+            new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 4096, 0, x -> x, storage)
+                    .compressed().persist(Flowable.rangeLong(1500000000000L, 100000));
+            assertTrue(storage.numPages() * 4 < plainPages * 3);
+        }
+    }
+
+    private static byte[] entry(int key, int i) {
+        byte[] s = ("x" + i + "abcdefgh").substring(0, 1 + i % 7).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + s.length).putInt(key).put(s).array();
+    }
+
+    @Test
+    public void testSplitAndRangeParallel() {
+        for (boolean compressed : new boolean[] { false, true }) {
+            File directory = directory();
+            Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                    256, 0, x -> x, directory, "tree");
+            (compressed ? creator.compressed() : creator).persist(Flowable.rangeLong(0, 100000).map(x -> x / 2));
+            try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                    Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+                List<Range<Long>> ranges = t.split(1000L, 40000L, 16);
+                assertEquals(16, ranges.size());
+                assertEquals(1000L, (long) ranges.get(0).lowerInclusive());
+                assertEquals(40000L, (long) ranges.get(15).upperExclusive());
+                for (int i = 1; i < ranges.size(); i++) {
+                    assertEquals(ranges.get(i - 1).upperExclusive(), ranges.get(i).lowerInclusive());
+                    assertTrue(ranges.get(i).lowerInclusive() < ranges.get(i).upperExclusive());
+                }
+                assertEquals(1, t.split(1000L, 1001L, 16).size());
+                List<Long> expected = t.range(1000L, 40000L).toList().blockingGet();
+                assertEquals(78000, expected.size());
+                assertEquals(expected,
+                        t.rangeParallel(1000L, 40000L, 4, Schedulers.computation()).toList().blockingGet());
+                assertEquals(expected, t.rangeParallelUnordered(1000L, 40000L, 4, Schedulers.computation()) //
+                        .sequential() //
+                        .toSortedList() //
+                        .blockingGet());
+            }
+        }
+    }
+
+    @Test
+    public void testRankCountAndSelect() {
+        for (boolean compressed : new boolean[] { false, true }) {
+            File directory = directory();
+            Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                    256, 0, x -> x, directory, "tree");
+            // each key three times
+            (compressed ? creator.compressed() : creator).persist(Flowable.rangeLong(0, 30000).map(x -> x / 3));
+            try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                    Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+                for (long key = -1; key <= 10001; key++) {
+                    assertEquals(Math.max(0, Math.min(30000, key * 3)), t.rank(key));
+                }
+                assertEquals(300, t.count(1000L, 1100L));
+                assertEquals(0, t.count(1100L, 1000L));
+                assertEquals(30000, t.count(-5L, 20000L));
+                for (int i = 0; i < 30000; i++) {
+                    assertEquals(i / 3, (long) t.select(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRankOfEmpty() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.<Long> empty());
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            assertEquals(0, t.rank(5L));
+            assertEquals(0, t.count(0L, 10L));
+            t.entries().test().assertNoValues().assertComplete();
+        }
+    }
+
+    @Test
+    public void testEntries() {
+        File directory = directory();
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.rangeLong(0, 10000));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+            assertEquals(Flowable.rangeLong(0, 10000).toList().blockingGet(), t.entries().toList().blockingGet());
+            t.entries().test(2).assertValues(0L, 1L).assertNotComplete();
+        }
+    }
+
+    @Test
+    public void testBloomFilter() {
+        for (boolean compressed : new boolean[] { false, true }) {
+            File directory = directory();
+            Creator<Long, Long> creator = new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(),
+                    256, 0, x -> x, directory, "tree").bloomFilter(10);
+            // even keys each three times so duplicates straddle blocks
+            (compressed ? creator.compressed() : creator)
+                    .persist(Flowable.rangeLong(0, 30000).map(x -> x / 3 * 2));
+            try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(Serializers.longKey(),
+                    Serializers.longValue(), Comparator.naturalOrder(), directory, "tree")) {
+                int falsePositives = 0;
+                for (long key = 0; key < 20000; key += 2) {
+                    assertEquals(key, (long) t.get(key));
+                    assertNull(t.get(key + 1));
+                    if (t.mightContain(key + 1)) {
+                        falsePositives++;
+                    }
+                }
+                assertTrue(falsePositives < 300);
+                assertFalse(t.mightContain(-1L));
+                assertNull(t.get(20000L));
+                t.range(0L, 20000L).test().assertValueCount(30000).assertComplete();
+            }
+        }
+    }
+
+    @Test
+    public void testBloomFilterKeyCodec() {
+        File directory = directory();
+        new Creator<Long, Long>(KeyCodecs.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .bloomFilter(8) //
+                .persist(Flowable.rangeLong(0, 10000).map(x -> x * 10));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(KeyCodecs.longKey(),
+                Serializers.longValue(), directory, "tree")) {
+            int falsePositives = 0;
+            for (long i = 0; i < 10000; i++) {
+                assertEquals(i * 10, (long) t.get(i * 10));
+                assertNull(t.get(i * 10 + 5));
+                if (t.mightContain(i * 10 + 5)) {
+                    falsePositives++;
+                }
+            }
+            assertTrue(falsePositives < 500);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBloomFilterBitsPerKeyMustBePositive() {
+        new Creator<Long, Long>(Serializers.longKey(), Serializers.longValue(), 256, 0, x -> x, directory(), "tree")
+                .bloomFilter(0);
+    }
+
+    @Test
+    public void testRangeParallelKeyCodec() {
+        File directory = directory();
+        new Creator<Long, Long>(KeyCodecs.longKey(), Serializers.longValue(), 256, 0, x -> x, directory, "tree")
+                .persist(Flowable.rangeLong(0, 10000));
+        try (ReadOnlyBTree<Long, Long> t = new ReadOnlyBTree<Long, Long>(KeyCodecs.longKey(),
+                Serializers.longValue(), directory, "tree")) {
+            assertTrue(t.split(0L, 10000L, 8).size() > 1);
+            t.rangeParallel(10L, 9990L, 3, Schedulers.computation()) //
+                    .test() //
+                    .awaitDone(10, TimeUnit.SECONDS) //
+                    .assertValueCount(9980) //
+                    .assertComplete();
+        }
+    }
+
+    private static File directory() {
+        File directory = new File("target/ReadOnlyBTreeTest/" + System.nanoTime());
+        directory.mkdirs();
+        return directory;
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.davidmoten.gt.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.davidmoten.gt.btree.ConcurrentBTree;
+import org.davidmoten.gt.btree.ro.Creator;
+import org.davidmoten.gt.btree.ro.KeyCodecs;
+import org.davidmoten.gt.btree.ro.ReadOnlyBTree;
+import org.davidmoten.gt.btree.ro.Serializers;
+import org.junit.Test;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.BiFunction;
+
+public class GeoTemporalTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    // a point is lat, lon (doubles) and time (long)
+    private static final GeoTemporal<byte[]> GT = new GeoTemporal<byte[]>( //
+            p -> ByteBuffer.wrap(p).getDouble(0), //
+            p -> ByteBuffer.wrap(p).getDouble(8), //
+            p -> ByteBuffer.wrap(p).getLong(16), //
+            0, DAY);
+
+    @Test
+    public void testKeyOrdersByCell() {
+        assertEquals(0, GT.key(-90, -180, 0));
+        assertEquals((1L << 60) - 1, GT.key(90, 180, DAY - 1));
+        assertTrue(GT.key(-90, -180, 1000) > GT.key(-90, -180, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyOutsideTimeWindow() {
+        GT.key(0, 0, DAY);
+    }
+
+    @Test
+    public void testRangesOutsideTimeWindowIsEmpty() {
+        assertTrue(GT.ranges(-10, -10, 10, 10, DAY, 2 * DAY, 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchMemoryMatchesBruteForce() {
+        List<byte[]> points = points(100000);
+        ConcurrentBTree<Long, byte[]> tree = new ConcurrentBTree<Long, byte[]>(Comparator.naturalOrder(), 64);
+        for (byte[] p : points) {
+            tree.put(GT.key(p), p);
+        }
+        checkSearches(points, (a, b) -> tree.range(a, b));
+    }
+
+    @Test
+    public void testSearchCreatorMatchesBruteForce() {
+        List<byte[]> points = points(100000);
+        File directory = new File("target/GeoTemporalTest/" + System.nanoTime());
+        directory.mkdirs();
+        List<byte[]> sorted = new ArrayList<>(points);
+        Collections.sort(sorted, (a, b) -> Long.compare(GT.key(a), GT.key(b)));
+        new Creator<byte[], Long>(KeyCodecs.longKey(), Serializers.bytes(), 4096, 0, GT::key, directory,
+                "points").persist(Flowable.fromIterable(sorted));
+        try (ReadOnlyBTree<byte[], Long> tree = new ReadOnlyBTree<byte[], Long>(KeyCodecs.longKey(),
+                Serializers.bytes(), directory, "points")) {
+            checkSearches(points, (a, b) -> tree.range(a, b));
+        }
+    }
+
+    @Test
+    public void testMoreRangesReadFewerPoints() {
+        List<byte[]> points = points(100000);
+        ConcurrentBTree<Long, byte[]> tree = new ConcurrentBTree<Long, byte[]>(Comparator.naturalOrder(), 64);
+        for (byte[] p : points) {
+            tree.put(GT.key(p), p);
+        }
+        long previous = Long.MAX_VALUE;
+        for (int maxRanges : new int[] { 1, 16, 256 }) {
+            long read = Flowable
+                    .fromIterable(GT.ranges(-20, 130, -10, 150, DAY / 4, DAY / 2, maxRanges)) //
+                    .concatMap(r -> tree.range(r.lowerInclusive(), r.upperExclusive())) //
+                    .count() //
+                    .blockingGet();
+            assertTrue(read < previous);
+            previous = read;
+        }
+    }
+
+    private static void checkSearches(List<byte[]> points,
+            BiFunction<Long, Long, Flowable<byte[]>> range) {
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            double minLat = -40 + random.nextDouble() * 20;
+            double minLon = 100 + random.nextDouble() * 40;
+            double maxLat = minLat + random.nextDouble() * 10;
+            double maxLon = minLon + random.nextDouble() * 10;
+            long startTime = (long) (random.nextDouble() * DAY);
+            long finishTime = startTime + (long) (random.nextDouble() * DAY / 4);
+            List<Long> expected = points.stream() //
+                    .filter(p -> {
+                        double lat = ByteBuffer.wrap(p).getDouble(0);
+                        double lon = ByteBuffer.wrap(p).getDouble(8);
+                        long t = ByteBuffer.wrap(p).getLong(16);
+                        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon && t >= startTime
+                                && t < finishTime;
+                    }) //
+                    .map(p -> ByteBuffer.wrap(p).getLong(24)) //
+                    .sorted() //
+                    .collect(Collectors.toList());
+            for (int maxRanges : new int[] { 1, 8, 100 }) {
+                List<Long> found = GT
+                        .search(minLat, minLon, maxLat, maxLon, startTime, finishTime, maxRanges, range) //
+                        .map(p -> ByteBuffer.wrap(p).getLong(24)) //
+                        .toSortedList() //
+                        .blockingGet();
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    // points around Australia over a day, each with a unique id
+    private static List<byte[]> points(int n) {
+        Random random = new Random(1);
+        List<byte[]> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(ByteBuffer.allocate(32) //
+                    .putDouble(-45 + random.nextDouble() * 35) //
+                    .putDouble(110 + random.nextDouble() * 45) //
+                    .putLong((long) (random.nextDouble() * DAY)) //
+                    .putLong(i) //
+                    .array());
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.davidmoten.gt.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.davidmoten.gt.btree.Range;
+import org.junit.Test;
+
+public class ZOrderTest {
+
+    @Test
+    public void testIndexInterleavesBits() {
+        assertEquals(0, ZOrder.index(0, 0, 0));
+        assertEquals(1, ZOrder.index(1, 0, 0));
+        assertEquals(2, ZOrder.index(0, 1, 0));
+        assertEquals(4, ZOrder.index(0, 0, 1));
+        assertEquals(8, ZOrder.index(2, 0, 0));
+        long max = ZOrder.MAX_COORDINATE;
+        assertEquals((1L << 60) - 1, ZOrder.index(max, max, max));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long x = random.nextInt(1 << ZOrder.BITS);
+            long y = random.nextInt(1 << ZOrder.BITS);
+            long z = random.nextInt(1 << ZOrder.BITS);
+            long index = ZOrder.index(x, y, z);
+            assertEquals(x, ZOrder.x(index));
+            assertEquals(y, ZOrder.y(index));
+            assertEquals(z, ZOrder.z(index));
+        }
+    }
+
+    @Test
+    public void testRangesOfAlignedCubeIsOneRange() {
+        List<Range<Long>> ranges = ZOrder.ranges(new long[] { 8, 8, 8 }, new long[] { 15, 15, 15 }, 1);
+        assertEquals(1, ranges.size());
+        assertEquals(ZOrder.index(8, 8, 8), (long) ranges.get(0).lowerInclusive());
+        assertEquals(ZOrder.index(15, 15, 15) + 1, (long) ranges.get(0).upperExclusive());
+    }
+
+    @Test
+    public void testRangesCoverBoxAndRespectMaxRanges() {
+        Random random = new Random(2);
+        long[] min = { 100, 2000, 30 };
+        long[] max = { 140, 2030, 70 };
+        for (int maxRanges : new int[] { 1, 2, 8, 64, 1000, 100000 }) {
+            List<Range<Long>> ranges = ZOrder.ranges(min, max, maxRanges);
+            assertTrue(ranges.size() <= maxRanges);
+            for (int i = 1; i < ranges.size(); i++) {
+                assertTrue(ranges.get(i - 1).upperExclusive() < ranges.get(i).lowerInclusive());
+            }
+            for (int i = 0; i < 1000; i++) {
+                long x = min[0] + random.nextInt((int) (max[0] - min[0] + 1));
+                long y = min[1] + random.nextInt((int) (max[1] - min[1] + 1));
+                long z = min[2] + random.nextInt((int) (max[2] - min[2] + 1));
+                assertTrue(contains(ranges, ZOrder.index(x, y, z)));
+            }
+        }
+    }
+
+    @Test
+    public void testExactRangesWhenUnlimited() {
+        long[] min = { 3, 5, 6 };
+        long[] max = { 9, 6, 13 };
+        List<Range<Long>> ranges = ZOrder.ranges(min, max, Integer.MAX_VALUE);
+        long covered = 0;
+        for (Range<Long> r : ranges) {
+            covered += r.upperExclusive() - r.lowerInclusive();
+            for (long index = r.lowerInclusive(); index < r.upperExclusive(); index++) {
+                long x = ZOrder.x(index);
+                long y = ZOrder.y(index);
+                long z = ZOrder.z(index);
+                assertTrue(x >= min[0] && x <= max[0] && y >= min[1] && y <= max[1] && z >= min[2]
+                        && z <= max[2]);
+            }
+        }
+        assertEquals(7 * 2 * 8, covered);
+    }
+
+    private static boolean contains(List<Range<Long>> ranges, long index) {
+        for (Range<Long> r : ranges) {
+            if (index >= r.lowerInclusive() && index < r.upperExclusive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}